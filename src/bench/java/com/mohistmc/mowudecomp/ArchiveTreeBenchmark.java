@@ -0,0 +1,113 @@
+package com.mohistmc.mowudecomp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Build time of the archive tree against entry count, in the directory and
+ * the package explorer layout: creating the {@link ArchiveTreeModel} and
+ * expanding every node of it. Run with {@code gradlew archiveTreeBenchmark}.
+ * <p>
+ * The entries are generated like those of a server jar: about thirty classes
+ * and their inner classes per package, packages two to five levels deep, and
+ * some resources. Prints, per entry count, the fastest of several runs and
+ * the nanoseconds per entry, which stay flat if building is linear.
+ */
+public final class ArchiveTreeBenchmark {
+
+    private static final int[] ENTRY_COUNTS = {7_500, 15_000, 30_000, 60_000, 120_000, 240_000};
+    private static final int RUNS = 7;
+
+    private ArchiveTreeBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%8s  %-16s %8s %8s %11s%n", "entries", "layout", "model ms", "all ms", "ns/entry");
+        // let the JIT compile the tree code before the first measurement
+        List<String> warmUpEntries = generateEntries(ENTRY_COUNTS[ENTRY_COUNTS.length - 1]);
+        for (int i = 0; i < 3; i++) {
+            measure(warmUpEntries, false);
+            measure(warmUpEntries, true);
+        }
+        for (int entryCount : ENTRY_COUNTS) {
+            List<String> entries = generateEntries(entryCount);
+            report(entries, false);
+            report(entries, true);
+        }
+    }
+
+    private static void report(List<String> entries, boolean packageExplorerStyle) {
+        long bestModelNanos = Long.MAX_VALUE;
+        long bestTotalNanos = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long[] nanos = measure(entries, packageExplorerStyle);
+            bestModelNanos = Math.min(bestModelNanos, nanos[0]);
+            bestTotalNanos = Math.min(bestTotalNanos, nanos[1]);
+        }
+        System.out.printf("%8d  %-16s %8.1f %8.1f %11.1f%n", entries.size(),
+                packageExplorerStyle ? "package explorer" : "directory", bestModelNanos / 1e6, bestTotalNanos / 1e6,
+                (double) bestTotalNanos / entries.size());
+    }
+
+    /**
+     * @return the nanoseconds to create the model, and to create it and expand every node
+     */
+    private static long[] measure(List<String> entries, boolean packageExplorerStyle) {
+        long start = System.nanoTime();
+        ArchiveTreeModel model = new ArchiveTreeModel("server.jar", entries, packageExplorerStyle, null);
+        long modelNanos = System.nanoTime() - start;
+        int nodes = expandAll(model, model.getRoot());
+        long totalNanos = System.nanoTime() - start;
+        if (nodes < entries.size()) {
+            throw new IllegalStateException(nodes + " nodes for " + entries.size() + " entries");
+        }
+        return new long[]{modelNanos, totalNanos};
+    }
+
+    private static int expandAll(ArchiveTreeModel model, Object node) {
+        int nodes = 1;
+        if (model.isLeaf(node)) {
+            return nodes;
+        }
+        int childCount = model.getChildCount(node);
+        for (int i = 0; i < childCount; i++) {
+            nodes += expandAll(model, model.getChild(node, i));
+        }
+        return nodes;
+    }
+
+    private static List<String> generateEntries(int entryCount) {
+        Random random = new Random(entryCount);
+        List<String> entries = new ArrayList<>(entryCount);
+        entries.add("META-INF/MANIFEST.MF");
+        List<String> packages = new ArrayList<>();
+        while (entries.size() < entryCount) {
+            String packagePath;
+            if (packages.isEmpty() || random.nextInt(4) == 0) {
+                StringBuilder path = new StringBuilder(random.nextBoolean() ? "net/minecraft" : "org/bukkit");
+                int depth = random.nextInt(4);
+                for (int i = 0; i < depth; i++) {
+                    path.append("/p").append(random.nextInt(12));
+                }
+                packagePath = path + "/g" + packages.size();
+                packages.add(packagePath);
+            } else {
+                packagePath = packages.get(random.nextInt(packages.size()));
+            }
+            int classCount = 10 + random.nextInt(40);
+            for (int i = 0; i < classCount && entries.size() < entryCount; i++) {
+                String className = packagePath + "/Class" + entries.size();
+                entries.add(className + ".class");
+                if (random.nextInt(3) == 0 && entries.size() < entryCount) {
+                    entries.add(className + "$Inner.class");
+                }
+                if (random.nextInt(20) == 0 && entries.size() < entryCount) {
+                    entries.add(packagePath + "/resource" + entries.size() + ".properties");
+                }
+            }
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.mohistmc.mowudecomp;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Hover latency against link count: finding the link under the mouse in a
+ * {@link LinkIndex} and, for comparison, in the {@code TreeMap<Selection, String>}
+ * that {@link OpenFile} used before. Run with {@code gradlew hoverBenchmark}.
+ * <p>
+ * The links are generated like those of a decompiled class: one distinct
+ * id per twenty links, about every eighth character the start of a link.
+ * Prints, per link count, the time to build the index, its heap, and the
+ * nanoseconds and bytes allocated per lookup.
+ */
+public final class HoverBenchmark {
+
+    private static final int[] LINK_COUNTS = {1_000, 10_000, 50_000, 200_000};
+    private static final int LOOKUPS = 2_000_000;
+
+    private HoverBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%8s  %-9s %8s %9s %11s %13s%n", "links", "index", "build ms", "heap KB", "ns/lookup",
+                "bytes/lookup");
+        // collect the garbage of the startup before the first heap measurement
+        usedHeap();
+        for (int linkCount : LINK_COUNTS) {
+            Map<String, Selection> definitions = new HashMap<>();
+            Map<String, Set<Selection>> references = new HashMap<>();
+            int textLength = generateLinks(linkCount, definitions, references);
+            int[] offsets = new Random(linkCount).ints(LOOKUPS, 0, textLength).toArray();
+
+            long heapBefore = usedHeap();
+            long buildStart = System.nanoTime();
+            TreeMap<Selection, String> treeMap = buildTreeMap(definitions, references);
+            long buildNanos = System.nanoTime() - buildStart;
+            long heap = usedHeap() - heapBefore;
+            report(linkCount, "TreeMap", buildNanos, heap, offsets, offset -> {
+                Selection floor = treeMap.floorKey(new Selection(offset, offset));
+                return floor != null && floor.to() > offset ? treeMap.get(floor) : null;
+            });
+
+            heapBefore = usedHeap();
+            buildStart = System.nanoTime();
+            LinkIndex linkIndex = LinkIndex.build(definitions, references);
+            buildNanos = System.nanoTime() - buildStart;
+            heap = usedHeap() - heapBefore;
+            report(linkCount, "LinkIndex", buildNanos, heap, offsets, offset -> {
+                int link = linkIndex.find(offset);
+                return link >= 0 ? linkIndex.getUniqueStr(link) : null;
+            });
+            // keep both reachable until both were measured
+            if (treeMap.size() + linkIndex.size() < 0) {
+                System.out.println();
+            }
+        }
+    }
+
+    private interface Lookup {
+        String find(int offset);
+    }
+
+    private static int generateLinks(int linkCount, Map<String, Selection> definitions,
+                                     Map<String, Set<Selection>> references) {
+        Random random = new Random(42);
+        int idCount = Math.max(1, linkCount / 20);
+        int offset = 0;
+        for (int i = 0; i < linkCount; i++) {
+            int gap = 2 + random.nextInt(12);
+            Selection selection = new Selection(offset, offset + 1 + random.nextInt(gap - 1));
+            offset += gap;
+            int id = random.nextInt(idCount);
+            String uniqueStr = "method|com/example/Generated" + (id % 50) + "|member" + id + "|()V";
+            if (i < idCount && !definitions.containsKey(uniqueStr)) {
+                definitions.put(uniqueStr, selection);
+            } else {
+                references.computeIfAbsent(uniqueStr, key -> new HashSet<>()).add(selection);
+            }
+        }
+        return offset + 1;
+    }
+
+    private static TreeMap<Selection, String> buildTreeMap(Map<String, Selection> definitions,
+                                                          Map<String, Set<Selection>> references) {
+        TreeMap<Selection, String> treeMap = new TreeMap<>();
+        definitions.forEach((uniqueStr, selection) -> treeMap.put(selection, uniqueStr));
+        references.forEach((uniqueStr, selections) -> {
+            for (Selection selection : selections) {
+                treeMap.put(selection, uniqueStr);
+            }
+        });
+        return treeMap;
+    }
+
+    private static void report(int linkCount, String name, long buildNanos, long heap, int[] offsets, Lookup lookup) {
+        // warm up, then measure
+        int found = 0;
+        for (int i = 0; i < offsets.length / 4; i++) {
+            found += lookup.find(offsets[i]) != null ? 1 : 0;
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int offset : offsets) {
+            found += lookup.find(offset) != null ? 1 : 0;
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.printf("%8d  %-9s %8.1f %9d %11.1f %13.1f%s%n", linkCount, name, buildNanos / 1e6, heap / 1024,
+                (double) nanos / offsets.length, (double) allocated / offsets.length, found < 0 ? "!" : "");
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean) {
+            return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return 0;
+    }
+
+}
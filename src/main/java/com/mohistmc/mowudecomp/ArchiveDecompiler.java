@@ -0,0 +1,26 @@
+package com.mohistmc.mowudecomp;
+
+import java.util.Collection;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decompiles many classes of one archive in a single decompiler context,
+ * so that the decompiler loads the type information of the archive once
+ * and shares it between all of them.
+ */
+public interface ArchiveDecompiler {
+
+    /**
+     * @param classBytesSource bytes of the classes of the archive
+     * @param classNames       internal names of every class in the archive
+     * @param targets          internal names of the top level classes to decompile
+     * @param threads          number of threads the decompiler may use internally
+     * @param cancelled        polled between classes, stops the run once it returns {@code true}
+     * @param sink             receives the internal name and source of every decompiled
+     *                         class, on the calling thread, in the order they complete
+     */
+    void decompile(ClassBytesSource classBytesSource, Collection<String> classNames, Collection<String> targets,
+                   int threads, BooleanSupplier cancelled, BiConsumer<String, String> sink) throws Exception;
+
+}
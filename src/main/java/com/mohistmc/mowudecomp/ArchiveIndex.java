@@ -0,0 +1,197 @@
+package com.mohistmc.mowudecomp;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * The entries of an archive in central directory order, enumerated once per
+ * opened file and shared through {@link SharedArchive#getIndex()} by the
+ * tree, Save All and Find All.
+ * <p>
+ * Everything is kept in parallel primitive arrays indexed by entry
+ * position, with an open addressing hash table from name to position.
+ * Nested classes are grouped with their outer class: {@code a/B$C.class}
+ * belongs to {@code a/B.class} if that entry exists, otherwise, like a
+ * badly named class, it counts as a class of its own.
+ */
+public final class ArchiveIndex {
+
+    private static final byte DIRECTORY = 1;
+    private static final byte CLASS = 2;
+    private static final byte INNER_CLASS = 4;
+
+    private final String[] names;
+    private final long[] sizes;
+    private final int[] crcs;
+    private final short[] methods;
+    private final byte[] flags;
+    private final int[] outerClasses;
+    // position + 1 of the last entry with a name hashing there, 0 for empty slots
+    private final int[] table;
+    private int fileCount;
+
+    private ArchiveIndex(int count) {
+        names = new String[count];
+        sizes = new long[count];
+        crcs = new int[count];
+        methods = new short[count];
+        flags = new byte[count];
+        outerClasses = new int[count];
+        table = new int[Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1];
+    }
+
+    static ArchiveIndex of(MappedArchive archive) {
+        ArchiveIndex index = new ArchiveIndex(archive.size());
+        for (int i = 0; i < archive.size(); i++) {
+            index.set(i, archive.getEntryName(i), archive.getEntrySize(i), archive.getEntryCrc(i),
+                    archive.getEntryMethod(i));
+        }
+        index.groupClasses();
+        return index;
+    }
+
+    static ArchiveIndex of(JarFile jarFile) {
+        ArchiveIndex index = new ArchiveIndex(jarFile.size());
+        Enumeration<JarEntry> entries = jarFile.entries();
+        for (int i = 0; i < index.names.length && entries.hasMoreElements(); i++) {
+            JarEntry entry = entries.nextElement();
+            index.set(i, entry.getName(), entry.getSize(), (int) entry.getCrc(), entry.getMethod());
+        }
+        index.groupClasses();
+        return index;
+    }
+
+    private void set(int i, String name, long size, int crc, int method) {
+        names[i] = name;
+        sizes[i] = size;
+        crcs[i] = crc;
+        methods[i] = (short) method;
+        outerClasses[i] = -1;
+        if (name.endsWith("/")) {
+            flags[i] = DIRECTORY;
+        } else {
+            fileCount++;
+            if (name.endsWith(".class")) {
+                flags[i] = CLASS;
+            }
+        }
+        // like ZipFile, the last of duplicate names wins
+        int slot = findSlot(name);
+        table[slot] = i + 1;
+    }
+
+    private void groupClasses() {
+        for (int i = 0; i < names.length; i++) {
+            if (flags[i] != CLASS) {
+                continue;
+            }
+            // com/acme/Connection$Conn$1.class -> com/acme/Connection.class
+            String name = names[i];
+            int simpleNameStart = name.lastIndexOf('/') + 1;
+            int dollar = name.indexOf('$', simpleNameStart);
+            if (dollar <= simpleNameStart || dollar + 1 >= name.length() - ".class".length()) {
+                continue;
+            }
+            int outer = indexOf(name.substring(0, dollar) + ".class");
+            if (outer >= 0) {
+                flags[i] |= INNER_CLASS;
+                outerClasses[i] = outer;
+            }
+        }
+    }
+
+    private int findSlot(String name) {
+        int mask = table.length - 1;
+        int slot = name.hashCode() * 0x9E3779B9 >>> 1 & mask;
+        while (table[slot] != 0 && !names[table[slot] - 1].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return number of entries, directories included
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return number of entries that are no directories
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return the position of the entry, or -1 if there is no such entry
+     */
+    public int indexOf(String entryName) {
+        return table[findSlot(entryName)] - 1;
+    }
+
+    public boolean contains(String entryName) {
+        return indexOf(entryName) >= 0;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return the uncompressed size, -1 if unknown
+     */
+    public long getSize(int index) {
+        return sizes[index];
+    }
+
+    public int getCrc(int index) {
+        return crcs[index];
+    }
+
+    /**
+     * @return the compression method, e.g. {@link java.util.zip.ZipEntry#STORED}
+     */
+    public int getMethod(int index) {
+        return methods[index];
+    }
+
+    public boolean isDirectory(int index) {
+        return (flags[index] & DIRECTORY) != 0;
+    }
+
+    public boolean isClass(int index) {
+        return (flags[index] & CLASS) != 0;
+    }
+
+    /**
+     * @return {@code true} for a nested class whose outer class is in the archive
+     */
+    public boolean isInnerClass(int index) {
+        return (flags[index] & INNER_CLASS) != 0;
+    }
+
+    /**
+     * @return the position of the top-level class a nested class belongs to, or -1
+     */
+    public int getOuterClass(int index) {
+        return outerClasses[index];
+    }
+
+    /**
+     * @return the names of all entries that are no directories, in archive order
+     */
+    public List<String> getFileNames(boolean withoutInnerClasses) {
+        List<String> fileNames = new ArrayList<>(fileCount);
+        for (int i = 0; i < names.length; i++) {
+            if (!isDirectory(i) && !(withoutInnerClasses && isInnerClass(i))) {
+                fileNames.add(names[i]);
+            }
+        }
+        return fileNames;
+    }
+
+}
@@ -0,0 +1,493 @@
+package com.mohistmc.mowudecomp;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tree of archive entries that creates nodes only when a directory or
+ * package is expanded.
+ * <p>
+ * The only thing kept for the whole archive is the sorted array of entry
+ * names, in which every directory is a contiguous range. A node knows its
+ * range and lists its children by walking it, jumping over subdirectories
+ * with a binary search. Nodes are still {@link DefaultMutableTreeNode}s
+ * holding a {@link TreeNodeUserObject}; ask the model, not the node, for
+ * children and leaves, since unexpanded nodes have none yet.
+ * <p>
+ * Archives inside the archive (fat jar libraries, WAR/EAR modules) are
+ * expandable too: their entries are listed through a {@link NestedArchiveSource}
+ * by the {@link DecompilationScheduler} when the node is first expanded, a
+ * deflated one has to be inflated first; until then the node holds a
+ * {@linkplain #isPlaceholder placeholder}. {@link #getEntryPath(TreePath)}
+ * joins the names of such a path with {@value #NESTED_SEPARATOR}.
+ * <p>
+ * Like any {@link TreeModel}, it is to be used on the event dispatch thread.
+ */
+final class ArchiveTreeModel implements TreeModel {
+
+    /**
+     * Separates the path of a nested archive from the path of an entry inside it.
+     */
+    static final String NESTED_SEPARATOR = "!/";
+
+    private static final String META_INF = "META-INF/";
+    private static final String LOADING = "正在加载…";
+
+    // directory layout: directories before files, then by name
+    private static final Comparator<DefaultMutableTreeNode> DIRECTORY_ORDER = Comparator
+            .comparing((DefaultMutableTreeNode node) -> isDirectory(node) ? 0 : 1)
+            .thenComparing(ArchiveTreeModel::getOriginalName, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(ArchiveTreeModel::getOriginalName);
+
+    // package explorer layout: files by extension, then by name, before directories by name
+    private static final Comparator<DefaultMutableTreeNode> PACKAGE_ORDER = Comparator
+            .comparing((DefaultMutableTreeNode node) -> isDirectory(node) ? 1 : 0)
+            .thenComparing(node -> isDirectory(node) ? "" : getExtension(getOriginalName(node)))
+            .thenComparing(ArchiveTreeModel::getOriginalName);
+
+    /**
+     * Lists the entries of an archive nested in the opened one.
+     */
+    interface NestedArchiveSource {
+
+        /**
+         * @param path path of the nested archive, e.g. {@code BOOT-INF/lib/a.jar}
+         *             or {@code a.war!/WEB-INF/lib/b.jar}
+         * @return the names of its entries, directories excluded
+         */
+        List<String> listEntries(String path) throws Exception;
+
+    }
+
+    private final boolean packageExplorerStyle;
+    private final NestedArchiveSource nestedArchiveSource;
+    private final RangeNode root;
+    private final EventListenerList listenerList = new EventListenerList();
+
+    /**
+     * @param nestedArchiveSource lists nested archives, {@code null} to show them as plain files
+     */
+    ArchiveTreeModel(String rootName, Collection<String> entryNames, boolean packageExplorerStyle,
+                     NestedArchiveSource nestedArchiveSource) {
+        this.packageExplorerStyle = packageExplorerStyle;
+        this.nestedArchiveSource = nestedArchiveSource;
+        this.root = new RangeNode(new TreeNodeUserObject(rootName), null);
+        root.setListing(new Listing(entryNames, "", packageExplorerStyle));
+    }
+
+    /**
+     * @return the entry path {@code path} points to, with {@value #NESTED_SEPARATOR}
+     * after each nested archive; empty for the root
+     */
+    static String getEntryPath(TreePath path) {
+        StringBuilder entryPath = new StringBuilder();
+        for (int i = 1; i < path.getPathCount(); i++) {
+            DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getPathComponent(i);
+            entryPath.append(getOriginalName(node));
+            if (i < path.getPathCount() - 1) {
+                entryPath.append(node instanceof RangeNode rangeNode && rangeNode.nestedArchivePath != null
+                        ? NESTED_SEPARATOR : "/");
+            }
+        }
+        return entryPath.toString();
+    }
+
+    /**
+     * @return whether {@code node} only stands in for the entries of a nested archive still being read
+     */
+    static boolean isPlaceholder(Object node) {
+        return node instanceof PlaceholderNode;
+    }
+
+    static boolean isArchive(String entryName) {
+        String name = entryName.toLowerCase(Locale.ROOT);
+        return name.endsWith(".jar") || name.endsWith(".zip") || name.endsWith(".war") || name.endsWith(".ear");
+    }
+
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        return getChildren(parent).getChildAt(index);
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        return getChildren(parent).getChildCount();
+    }
+
+    @Override
+    public boolean isLeaf(Object node) {
+        return !((DefaultMutableTreeNode) node).getAllowsChildren();
+    }
+
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+        // entries can't be renamed
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        if (parent == null || child == null) {
+            return -1;
+        }
+        return getChildren(parent).getIndex((DefaultMutableTreeNode) child);
+    }
+
+    @Override
+    public void addTreeModelListener(TreeModelListener l) {
+        listenerList.add(TreeModelListener.class, l);
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener l) {
+        listenerList.remove(TreeModelListener.class, l);
+    }
+
+    private DefaultMutableTreeNode getChildren(Object parent) {
+        if (parent instanceof RangeNode node && !node.loaded) {
+            node.loaded = true;
+            if (node.listing == null) {
+                openNestedArchive(node);
+                return node;
+            }
+            addChildren(node);
+        }
+        return (DefaultMutableTreeNode) parent;
+    }
+
+    private void addChildren(RangeNode node) {
+        Listing listing = node.listing;
+        List<DefaultMutableTreeNode> children = node.prefix.isEmpty() && packageExplorerStyle
+                ? listing.listPackageExplorerRoot() : listing.listRange(node);
+        for (DefaultMutableTreeNode child : children) {
+            node.add(child);
+        }
+    }
+
+    /**
+     * Shows a placeholder in {@code node} and lists the nested archive in
+     * the background, then replaces the placeholder with its entries.
+     */
+    private void openNestedArchive(RangeNode node) {
+        PlaceholderNode placeholder = new PlaceholderNode();
+        node.add(placeholder);
+        DecompilationScheduler.getInstance().submit(DecompilationScheduler.Priority.FOREGROUND, node, () -> {
+            Listing listing;
+            try {
+                listing = new Listing(nestedArchiveSource.listEntries(node.nestedArchivePath),
+                        node.nestedArchivePath + NESTED_SEPARATOR, packageExplorerStyle);
+            } catch (Exception e) {
+                // not readable as an archive: show it as the plain file it is
+                System.err.println("[ArchiveTreeModel]: cannot open " + node.nestedArchivePath + ": " + e);
+                SwingUtilities.invokeLater(() -> {
+                    node.removeAllChildren();
+                    node.setAllowsChildren(false);
+                    fireTreeStructureChanged(node);
+                });
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                node.remove(placeholder);
+                fireTreeNodesRemoved(node, placeholder);
+                node.setListing(listing);
+                addChildren(node);
+                fireTreeNodesInserted(node);
+            });
+        });
+    }
+
+    private void fireTreeNodesRemoved(RangeNode parent, DefaultMutableTreeNode child) {
+        TreeModelEvent event = new TreeModelEvent(this, parent.getPath(), new int[]{0}, new Object[]{child});
+        for (TreeModelListener listener : listenerList.getListeners(TreeModelListener.class)) {
+            listener.treeNodesRemoved(event);
+        }
+    }
+
+    private void fireTreeNodesInserted(RangeNode parent) {
+        int[] indices = new int[parent.getChildCount()];
+        Object[] children = new Object[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+            children[i] = parent.getChildAt(i);
+        }
+        TreeModelEvent event = new TreeModelEvent(this, parent.getPath(), indices, children);
+        for (TreeModelListener listener : listenerList.getListeners(TreeModelListener.class)) {
+            listener.treeNodesInserted(event);
+        }
+    }
+
+    private void fireTreeStructureChanged(RangeNode node) {
+        TreeModelEvent event = new TreeModelEvent(this, node.getPath());
+        for (TreeModelListener listener : listenerList.getListeners(TreeModelListener.class)) {
+            listener.treeStructureChanged(event);
+        }
+    }
+
+    private DefaultMutableTreeNode newFileNode(Listing listing, String name, String entryName) {
+        if (nestedArchiveSource != null && isArchive(name)) {
+            return new RangeNode(new TreeNodeUserObject(name), listing.archivePath + entryName);
+        }
+        return new DefaultMutableTreeNode(new TreeNodeUserObject(name), false);
+    }
+
+    private static boolean isDirectory(DefaultMutableTreeNode node) {
+        return node instanceof RangeNode rangeNode && rangeNode.nestedArchivePath == null;
+    }
+
+    private static boolean isPackageContent(String entry) {
+        return entry.endsWith(".class") || entry.endsWith(".java")
+                || entry.endsWith(".prop") || entry.endsWith(".properties");
+    }
+
+    private static String getPackageRoot(String packagePath) {
+        int slash = packagePath.indexOf('/');
+        return slash < 0 ? packagePath : packagePath.substring(0, slash);
+    }
+
+    private static String getOriginalName(DefaultMutableTreeNode node) {
+        return ((TreeNodeUserObject) node.getUserObject()).getOriginalName();
+    }
+
+    private static String getExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(dot + 1);
+    }
+
+    /**
+     * The sorted entry names of the opened archive or of one nested in it;
+     * every directory is a contiguous range.
+     */
+    private final class Listing {
+
+        // path of the nested archive plus separator, empty for the opened one
+        private final String archivePath;
+        private final String[] entries;
+
+        // package explorer layout only
+        private String[] packages;
+        private Set<String> classContainingPackageRoots;
+
+        private Listing(Collection<String> entryNames, String archivePath, boolean packageExplorerStyle) {
+            this.archivePath = archivePath;
+            this.entries = entryNames.toArray(new String[0]);
+            Arrays.sort(entries);
+            if (packageExplorerStyle) {
+                indexPackages();
+            }
+        }
+
+        private void indexPackages() {
+            Set<String> packageSet = new HashSet<>();
+            classContainingPackageRoots = new HashSet<>();
+            for (String entry : entries) {
+                int slash = entry.lastIndexOf('/');
+                if (slash < 0) {
+                    continue;
+                }
+                packageSet.add(entry.substring(0, slash));
+                if (slash > 0 && !entry.startsWith(META_INF) && isPackageContent(entry)) {
+                    String packageRoot = entry.substring(0, entry.indexOf('/'));
+                    if (!packageRoot.isBlank()) {
+                        classContainingPackageRoots.add(packageRoot);
+                    }
+                }
+            }
+            packages = packageSet.toArray(new String[0]);
+            Arrays.sort(packages);
+        }
+
+        private List<DefaultMutableTreeNode> listRange(RangeNode node) {
+            List<DefaultMutableTreeNode> children = new ArrayList<>();
+            String prefix = node.prefix;
+            int i = node.from;
+            while (i < node.to) {
+                String entry = entries[i];
+                int slash = entry.indexOf('/', prefix.length());
+                if (slash < 0) {
+                    children.add(newFileNode(this, entry.substring(prefix.length()), entry));
+                    i++;
+                    continue;
+                }
+                String name = entry.substring(prefix.length(), slash);
+                String childPrefix = entry.substring(0, slash + 1);
+                int end = endOfPrefix(childPrefix, i, node.to);
+                if (!node.flatPackage) {
+                    children.add(new RangeNode(new TreeNodeUserObject(name), this, childPrefix, i, end, false));
+                }
+                i = end;
+            }
+            if (packageExplorerStyle) {
+                children.sort(PACKAGE_ORDER);
+            } else {
+                children.sort(DIRECTORY_ORDER);
+                if (prefix.isEmpty()) {
+                    moveMetaInfFirst(children);
+                }
+            }
+            return children;
+        }
+
+        private void moveMetaInfFirst(List<DefaultMutableTreeNode> children) {
+            for (int i = 0; i < children.size(); i++) {
+                DefaultMutableTreeNode child = children.get(i);
+                if (isDirectory(child) && (getOriginalName(child) + "/").equals(META_INF)) {
+                    children.remove(i);
+                    children.add(0, child);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * META-INF, then one flat node per package below a root that holds
+         * classes, then the other directories, then the default package.
+         */
+        private List<DefaultMutableTreeNode> listPackageExplorerRoot() {
+            List<DefaultMutableTreeNode> children = new ArrayList<>();
+            RangeNode metaInf = newDirectoryNode(META_INF, false);
+            if (metaInf != null) {
+                children.add(metaInf);
+            }
+            for (String packagePath : packages) {
+                if (classContainingPackageRoots.contains(getPackageRoot(packagePath))) {
+                    RangeNode packageNode = newDirectoryNode(packagePath + "/", true);
+                    if (packageNode != null) {
+                        children.add(packageNode);
+                    }
+                }
+            }
+            Set<String> directoryRoots = new HashSet<>();
+            for (String packagePath : packages) {
+                String packageRoot = getPackageRoot(packagePath);
+                if (packageRoot.isEmpty() || (packageRoot + "/").equals(META_INF)
+                        || classContainingPackageRoots.contains(packageRoot) || !directoryRoots.add(packageRoot)) {
+                    continue;
+                }
+                RangeNode directoryNode = newDirectoryNode(packageRoot + "/", false);
+                if (directoryNode != null) {
+                    children.add(directoryNode);
+                }
+            }
+            List<DefaultMutableTreeNode> defaultPackage = new ArrayList<>();
+            for (String entry : entries) {
+                if (entry.indexOf('/') < 0) {
+                    defaultPackage.add(newFileNode(this, entry, entry));
+                }
+            }
+            defaultPackage.sort(PACKAGE_ORDER);
+            children.addAll(defaultPackage);
+            return children;
+        }
+
+        private RangeNode newDirectoryNode(String prefix, boolean flatPackage) {
+            int from = startOfPrefix(prefix);
+            int to = endOfPrefix(prefix, from, entries.length);
+            if (from == to) {
+                return null;
+            }
+            String path = prefix.substring(0, prefix.length() - 1);
+            TreeNodeUserObject userObject = flatPackage
+                    ? new TreeNodeUserObject(path, path.replace('/', '.'))
+                    : new TreeNodeUserObject(path.substring(path.lastIndexOf('/') + 1));
+            return new RangeNode(userObject, this, prefix, from, to, flatPackage);
+        }
+
+        private int startOfPrefix(String prefix) {
+            int index = Arrays.binarySearch(entries, prefix);
+            return index < 0 ? -index - 1 : index;
+        }
+
+        /**
+         * @return the first index in {@code [from, to)} whose entry doesn't start with {@code prefix},
+         * given that the one at {@code from} does
+         */
+        private int endOfPrefix(String prefix, int from, int to) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (entries[mid].startsWith(prefix)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+    }
+
+    /**
+     * A directory, a flat package in the package explorer layout, or a
+     * nested archive, whose entries are {@code listing.entries[from, to)};
+     * children are added on first access.
+     */
+    private static final class RangeNode extends DefaultMutableTreeNode {
+        private static final long serialVersionUID = 1L;
+
+        // set for nested archives, whose listing is only read on first access
+        private final String nestedArchivePath;
+        private Listing listing;
+        private String prefix;
+        private int from;
+        private int to;
+        private final boolean flatPackage;
+        private boolean loaded;
+
+        private RangeNode(TreeNodeUserObject userObject, Listing listing, String prefix, int from, int to,
+                          boolean flatPackage) {
+            super(userObject, true);
+            this.nestedArchivePath = null;
+            this.listing = listing;
+            this.prefix = prefix;
+            this.from = from;
+            this.to = to;
+            this.flatPackage = flatPackage;
+        }
+
+        /**
+         * The root of an archive, listed later with {@link #setListing(Listing)}.
+         */
+        private RangeNode(TreeNodeUserObject userObject, String nestedArchivePath) {
+            super(userObject, true);
+            this.nestedArchivePath = nestedArchivePath;
+            this.flatPackage = false;
+        }
+
+        private void setListing(Listing listing) {
+            this.listing = listing;
+            this.prefix = "";
+            this.from = 0;
+            this.to = listing.entries.length;
+        }
+    }
+
+    /**
+     * The only child of a nested archive while its entries are being read.
+     */
+    private static final class PlaceholderNode extends DefaultMutableTreeNode {
+        private static final long serialVersionUID = 1L;
+
+        private PlaceholderNode() {
+            super(new TreeNodeUserObject(LOADING), false);
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.Buffer;
+import com.strobel.assembler.metadata.BuiltinTypes;
+import com.strobel.assembler.metadata.ClassFileReader;
+import com.strobel.assembler.metadata.ITypeLoader;
+import com.strobel.assembler.metadata.MetadataSystem;
+import com.strobel.assembler.metadata.TypeDefinition;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link MetadataSystem} whose resolved types are kept least recently used
+ * first within a memory budget, instead of for the lifetime of the system.
+ * <p>
+ * The size of a {@link TypeDefinition} is estimated from its class file.
+ * Types pinned with {@link #pin(String)}, e.g. those shown in open tabs, are
+ * never evicted; an evicted type is simply read again on its next lookup.
+ * The {@linkplain #getLinkTarget link memo} counts against the same budget.
+ * <p>
+ * Over a {@link MoWuDecompTypeLoader}, JDK types come from the process-wide
+ * {@link PlatformTypes} instead, unless an archive has the same package.
+ */
+public class BoundedMetadataSystem extends MetadataSystem {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    // measured after decompiling: a resolved type with its members and code takes ~20x its class file
+    private static final int BYTES_PER_CLASS_FILE_BYTE = 20;
+    private static final int BYTES_PER_TYPE = 1024;
+    // map entry and two strings, plus two bytes per character
+    private static final int BYTES_PER_LINK_TARGET = 96;
+    // the link memo is cheap to rebuild, it never takes more than this share of the budget from the types
+    private static final int LINK_TARGETS_BUDGET_DIVISOR = 16;
+
+    private static final Map<String, TypeDefinition> PRIMITIVE_TYPES = new HashMap<>();
+    // package-private in Procyon; without a type loader, method bodies cannot be read
+    private static final MethodHandle SET_TYPE_LOADER;
+
+    static {
+        try {
+            Method setTypeLoader = TypeDefinition.class.getDeclaredMethod("setTypeLoader", ITypeLoader.class);
+            setTypeLoader.setAccessible(true);
+            SET_TYPE_LOADER = MethodHandles.lookup().unreflect(setTypeLoader);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        for (TypeDefinition type : new TypeDefinition[]{BuiltinTypes.Boolean, BuiltinTypes.Byte,
+                BuiltinTypes.Character, BuiltinTypes.Short, BuiltinTypes.Integer, BuiltinTypes.Long,
+                BuiltinTypes.Float, BuiltinTypes.Double, BuiltinTypes.Void}) {
+            PRIMITIVE_TYPES.put(type.getInternalName(), type);
+            PRIMITIVE_TYPES.put(type.getName(), type);
+        }
+    }
+
+    /**
+     * Counters since the system was created or last cleared.
+     */
+    public record Statistics(long hits, long platformHits, long misses, long evictions, int types,
+                             long estimatedBytes, long maxBytes) {
+
+        public static final Statistics EMPTY = new Statistics(0, 0, 0, 0, 0, 0, 0);
+
+        /**
+         * @return the sum of both, e.g. for the contexts of several worker threads
+         */
+        public Statistics plus(Statistics other) {
+            return new Statistics(hits + other.hits, platformHits + other.platformHits, misses + other.misses,
+                    evictions + other.evictions, types + other.types, estimatedBytes + other.estimatedBytes,
+                    maxBytes + other.maxBytes);
+        }
+
+        @Override
+        public String toString() {
+            return types + " types, ~" + (estimatedBytes >> 20) + " of " + (maxBytes >> 20) + " MiB, "
+                    + hits + " hits, " + platformHits + " shared JDK hits, " + misses + " misses, "
+                    + evictions + " evictions";
+        }
+
+    }
+
+    private record CachedType(TypeDefinition type, long estimatedBytes) {
+    }
+
+    private final ITypeLoader typeLoader;
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedType> types = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Integer> pinCounts = new HashMap<>();
+    private final Map<String, String> linkTargets = new ConcurrentHashMap<>();
+    private long linkTargetBytes;
+    private long estimatedBytes;
+    private long hits;
+    private long platformHits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxBytes estimated heap the resolved types may take before the least recently used are evicted
+     */
+    public BoundedMetadataSystem(ITypeLoader typeLoader, long maxBytes) {
+        super(typeLoader);
+        this.typeLoader = typeLoader;
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Keeps the type, once resolved, until it is unpinned as often as pinned.
+     */
+    public synchronized void pin(String internalName) {
+        pinCounts.merge(internalName, 1, Integer::sum);
+    }
+
+    public synchronized void unpin(String internalName) {
+        pinCounts.computeIfPresent(internalName, (name, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Drops all resolved types that are not pinned and resets the counters,
+     * e.g. when the type loaders change and cached types may be stale.
+     */
+    public synchronized void clear() {
+        types.values().removeIf(cachedType -> !pinCounts.containsKey(cachedType.type().getInternalName()));
+        estimatedBytes = 0;
+        for (CachedType cachedType : types.values()) {
+            estimatedBytes += cachedType.estimatedBytes();
+        }
+        linkTargets.clear();
+        linkTargetBytes = 0;
+        hits = 0;
+        platformHits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    /**
+     * Memo of {@link ProcyonLinkProvider}: what links to a type point to,
+     * by internal name, so the tabs of a decompilation context resolve
+     * outer types once.
+     *
+     * @return {@code null} if not memoized
+     */
+    public String getLinkTarget(String internalName) {
+        return linkTargets.get(internalName);
+    }
+
+    /**
+     * Memoizes what links to a type point to. The memo starts over once
+     * it would take more than a sixteenth of the budget.
+     */
+    public synchronized void putLinkTarget(String internalName, String linkTarget) {
+        long bytes = BYTES_PER_LINK_TARGET + 2L * (internalName.length() + linkTarget.length());
+        if (linkTargetBytes + bytes > maxBytes / LINK_TARGETS_BUDGET_DIVISOR) {
+            linkTargets.clear();
+            estimatedBytes -= linkTargetBytes;
+            linkTargetBytes = 0;
+        }
+        if (linkTargets.put(internalName, linkTarget) == null) {
+            linkTargetBytes += bytes;
+            estimatedBytes += bytes;
+            evict();
+        }
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hits, platformHits, misses, evictions, types.size(), estimatedBytes, maxBytes);
+    }
+
+    @Override
+    public void addTypeDefinition(TypeDefinition type) {
+        synchronized (this) {
+            if (types.containsKey(type.getInternalName())) {
+                return;
+            }
+        }
+        cache(type.getInternalName(), type, BYTES_PER_TYPE);
+    }
+
+    @Override
+    protected TypeDefinition resolveType(String descriptor, boolean mightBePrimitive) {
+        if (mightBePrimitive) {
+            TypeDefinition primitiveType = PRIMITIVE_TYPES.get(descriptor);
+            if (primitiveType != null) {
+                return primitiveType;
+            }
+        }
+        if (typeLoader instanceof MoWuDecompTypeLoader chain && !chain.isArchivePackage(descriptor)) {
+            TypeDefinition platformType = PlatformTypes.resolve(descriptor);
+            if (platformType != null) {
+                synchronized (this) {
+                    platformHits++;
+                }
+                return platformType;
+            }
+        }
+        synchronized (this) {
+            CachedType cachedType = types.get(descriptor);
+            if (cachedType != null) {
+                hits++;
+                return cachedType.type();
+            }
+            misses++;
+        }
+
+        // read outside the lock, reading may resolve other types
+        Buffer buffer = new Buffer(0);
+        if (!typeLoader.tryLoadType(descriptor, buffer)) {
+            return null;
+        }
+        TypeDefinition type = ClassFileReader.readClass(
+                isEagerMethodLoadingEnabled() ? ClassFileReader.OPTIONS_DEFAULT | ClassFileReader.OPTION_PROCESS_CODE
+                        : ClassFileReader.OPTIONS_DEFAULT, this, buffer);
+        try {
+            SET_TYPE_LOADER.invoke(type, typeLoader);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return cache(descriptor, type, BYTES_PER_TYPE + (long) buffer.size() * BYTES_PER_CLASS_FILE_BYTE);
+    }
+
+    private synchronized TypeDefinition cache(String descriptor, TypeDefinition type, long typeBytes) {
+        CachedType cachedType = types.get(descriptor);
+        if (cachedType != null) {
+            // resolved concurrently, keep the first so everyone shares one definition
+            return cachedType.type();
+        }
+        types.put(descriptor, new CachedType(type, typeBytes));
+        estimatedBytes += typeBytes;
+        evict();
+        return type;
+    }
+
+    private void evict() {
+        Iterator<CachedType> iterator = types.values().iterator();
+        while (estimatedBytes > maxBytes && iterator.hasNext()) {
+            CachedType cachedType = iterator.next();
+            if (pinCounts.containsKey(cachedType.type().getInternalName())) {
+                continue;
+            }
+            iterator.remove();
+            estimatedBytes -= cachedType.estimatedBytes();
+            evictions++;
+        }
+    }
+
+}
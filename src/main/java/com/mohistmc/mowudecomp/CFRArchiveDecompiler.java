@@ -0,0 +1,101 @@
+package com.mohistmc.mowudecomp;
+
+import org.benf.cfr.reader.api.CfrDriver;
+import org.benf.cfr.reader.api.OutputSinkFactory;
+import org.benf.cfr.reader.api.SinkReturns.Decompiled;
+import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
+import org.benf.cfr.reader.state.ClassFileSourceImpl;
+import org.benf.cfr.reader.util.getopt.Options;
+import org.benf.cfr.reader.util.getopt.OptionsImpl;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs one {@link CfrDriver} over all targets. Classes of the archive are
+ * served from memory, everything else (the JDK) is found by CFR itself.
+ * CFR has no internal parallelism, so {@code threads} is ignored.
+ */
+public class CFRArchiveDecompiler implements ArchiveDecompiler {
+
+    private static final Options OPTIONS = new OptionsImpl(Collections.emptyMap());
+
+    @Override
+    public void decompile(ClassBytesSource classBytesSource, Collection<String> classNames, Collection<String> targets,
+                          int threads, BooleanSupplier cancelled, BiConsumer<String, String> sink) {
+        CfrDriver driver = new CfrDriver.Builder()
+                .withClassFileSource(new ArchiveClassFileSource(classBytesSource, cancelled))
+                .withBuiltOptions(OPTIONS)
+                .withOutputSink(new ArchiveOutputSinkFactory(sink))
+                .build();
+        driver.analyse(targets.stream().map(internalName -> internalName + ".class").toList());
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    private static class ArchiveOutputSinkFactory implements OutputSinkFactory {
+
+        private final BiConsumer<String, String> sink;
+
+        public ArchiveOutputSinkFactory(BiConsumer<String, String> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public List<SinkClass> getSupportedSinks(SinkType sinkType, Collection<SinkClass> collection) {
+            return Collections.singletonList(SinkClass.DECOMPILED);
+        }
+
+        @Override
+        public <T> Sink<T> getSink(SinkType sinkType, SinkClass sinkClass) {
+            if (sinkType == SinkType.JAVA && sinkClass == SinkClass.DECOMPILED) {
+                return res -> {
+                    Decompiled decompiled = (Decompiled) res;
+                    String packageName = decompiled.getPackageName();
+                    String internalName = packageName == null || packageName.isEmpty() ? decompiled.getClassName()
+                            : packageName.replace('.', '/') + '/' + decompiled.getClassName();
+                    sink.accept(internalName, decompiled.getJava());
+                };
+            }
+
+            // Anything that isn't the finished decompiled java code can be ignored.
+            return res -> {
+            };
+        }
+
+    }
+
+    private static class ArchiveClassFileSource extends ClassFileSourceImpl {
+
+        private final ClassBytesSource classBytesSource;
+        private final BooleanSupplier cancelled;
+
+        public ArchiveClassFileSource(ClassBytesSource classBytesSource, BooleanSupplier cancelled) {
+            super(OPTIONS);
+            this.classBytesSource = classBytesSource;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public Pair<byte[], String> getClassFileContent(String path) throws IOException {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            if (path.endsWith(".class")) {
+                byte[] bytes = classBytesSource.getClassBytes(path.substring(0, path.length() - ".class".length()));
+                if (bytes != null) {
+                    return Pair.make(bytes, path);
+                }
+            }
+            return super.getClassFileContent(path);
+        }
+
+    }
+
+}
@@ -1,18 +1,8 @@
 package com.mohistmc.mowudecomp;
 
 import com.strobel.assembler.metadata.TypeDefinition;
-import org.benf.cfr.reader.api.CfrDriver;
-import org.benf.cfr.reader.api.OutputSinkFactory;
-import org.benf.cfr.reader.api.SinkReturns.Decompiled;
-import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
-import org.benf.cfr.reader.state.ClassFileSourceImpl;
-import org.benf.cfr.reader.util.getopt.Options;
-import org.benf.cfr.reader.util.getopt.OptionsImpl;
 
-import java.io.IOException;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -23,84 +13,47 @@ import java.util.function.Consumer;
  */
 public class CFRLinkProvider implements LinkProvider {
 
-    private static final Options OPTIONS = new OptionsImpl(Collections.emptyMap());
-
     private TypeDefinition type;
-    private RuntimeClassFileSource classFileSource;
+    private CFRSession session;
 
     private String content;
+    private Consumer<String> contentListener;
 
     @Override
     public String getTextContent() {
         return content;
     }
 
+    /**
+     * @param session session of the model the class is opened from; set before {@link #setType}
+     */
+    public void setSession(CFRSession session) {
+        this.session = session;
+    }
+
     @Override
-    public void setType(TypeDefinition type, Model model) {
+    public void setType(TypeDefinition type, ClassBytesSource classBytesSource) {
         this.type = type;
-        classFileSource = new RuntimeClassFileSource(OPTIONS, ProcyonUtils.getContent(type, model), type.getInternalName() + ".class");
+        if (session == null) {
+            session = new CFRSession(classBytesSource);
+        }
     }
 
     @Override
-    public void generateContent() {
-
-        CfrDriver driver = new CfrDriver.Builder()
-                .withClassFileSource(classFileSource)
-                .withBuiltOptions(OPTIONS)
-                .withOutputSink(new DecompilerOutputSinkFactory(dec -> content = dec))
-                .build();
-        driver.analyse(Collections.singletonList(type.getInternalName()));
+    public void setContentListener(Consumer<String> contentListener) {
+        this.contentListener = contentListener;
     }
 
-    private static class DecompilerOutputSinkFactory implements OutputSinkFactory {
-
-
-        private Consumer<String> decompiledConsumer;
-
-        public DecompilerOutputSinkFactory(Consumer<String> decompiledConsumer) {
-            this.decompiledConsumer = decompiledConsumer;
-        }
-
-        @Override
-        public List<SinkClass> getSupportedSinks(SinkType sinkType, Collection<SinkClass> collection) {
-            return Collections.singletonList(SinkClass.DECOMPILED);
-        }
-
-        @Override
-        public <T> Sink<T> getSink(SinkType sinkType, SinkClass sinkClass) {
-            if (sinkType == SinkType.JAVA && sinkClass == SinkClass.DECOMPILED) {
-                return res -> decompiledConsumer.accept(((Decompiled) res).getJava());
-            }
-
-            // Anything that isn't the finished decompiled java code can be ignored.
-            return res -> {
-            };
-        }
-
-
+    @Override
+    public void setContent(String textContent, Map<String, Selection> definitionToSelectionMap,
+                           Map<String, Set<Selection>> referenceToSelectionsMap) {
+        this.content = textContent;
     }
 
-    private static class RuntimeClassFileSource extends ClassFileSourceImpl {
-
-        private final byte[] content;
-
-        private final String path;
-
-        public RuntimeClassFileSource(Options options, byte[] content, String path) {
-            super(options);
-            this.content = content;
-            this.path = path;
-        }
-
-        @Override
-        public Pair<byte[], String> getClassFileContent(String path) throws IOException {
-            if (path.equals(this.path))
-                return Pair.make(content, path);
-            return super.getClassFileContent(path);
-        }
-
+    @Override
+    public void generateContent() {
+        content = session.decompile(type.getInternalName(), contentListener);
     }
-
     @Override
     public void processLinks() {
         // TODO
@@ -0,0 +1,158 @@
+package com.mohistmc.mowudecomp;
+
+import org.benf.cfr.reader.api.CfrDriver;
+import org.benf.cfr.reader.api.OutputSinkFactory;
+import org.benf.cfr.reader.api.SinkReturns.Decompiled;
+import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
+import org.benf.cfr.reader.state.ClassFileSourceImpl;
+import org.benf.cfr.reader.util.getopt.Options;
+import org.benf.cfr.reader.util.getopt.OptionsImpl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * CFR state shared by every class opened from one {@link Model}.
+ * <p>
+ * CFR re-parses class files for each {@link CfrDriver}, but the class
+ * sources outlive them: each builds its index of the JDK and class path
+ * once, and the bytes of recently used classes, from the archive or the
+ * JDK, stay in a size-bounded LRU cache shared by all of them, so related
+ * classes of the same archive get faster to open as the session warms up.
+ * <p>
+ * A {@link ClassFileSourceImpl} keeps unsynchronized state of its own, so
+ * every running driver gets a source that no other driver uses meanwhile;
+ * tabs decompiling in parallel take turns with a few sources instead of
+ * sharing one.
+ */
+public class CFRSession {
+
+    private static final Options OPTIONS = new OptionsImpl(Collections.emptyMap());
+
+    private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+
+    private final ClassBytesSource classBytesSource;
+    // guarded by itself
+    private final Map<String, Pair<byte[], String>> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+    // not used by a running driver, guarded by itself
+    private final Deque<SessionClassFileSource> idleClassFileSources = new ArrayDeque<>();
+
+    public CFRSession(ClassBytesSource classBytesSource) {
+        this.classBytesSource = classBytesSource;
+    }
+
+    /**
+     * @return the decompiled source, or {@code null} if CFR produced none
+     */
+    public String decompile(String internalName) {
+        return decompile(internalName, null);
+    }
+
+    /**
+     * @param contentListener receives the source as soon as CFR dumped the class, may be {@code null}
+     * @return the decompiled source, or {@code null} if CFR produced none
+     */
+    public String decompile(String internalName, Consumer<String> contentListener) {
+        SessionClassFileSource classFileSource;
+        synchronized (idleClassFileSources) {
+            classFileSource = idleClassFileSources.poll();
+        }
+        if (classFileSource == null) {
+            classFileSource = new SessionClassFileSource();
+        }
+        try {
+            return decompile(classFileSource, internalName, contentListener);
+        } finally {
+            synchronized (idleClassFileSources) {
+                idleClassFileSources.push(classFileSource);
+            }
+        }
+    }
+
+    private static String decompile(SessionClassFileSource classFileSource, String internalName,
+                                    Consumer<String> contentListener) {
+        String[] content = new String[1];
+        CfrDriver driver = new CfrDriver.Builder()
+                .withClassFileSource(classFileSource)
+                .withBuiltOptions(OPTIONS)
+                .withOutputSink(new DecompilerOutputSinkFactory(dec -> {
+                    content[0] = dec;
+                    if (contentListener != null) {
+                        contentListener.accept(dec);
+                    }
+                }))
+                .build();
+        driver.analyse(Collections.singletonList(internalName + ".class"));
+        return content[0];
+    }
+
+    private static class DecompilerOutputSinkFactory implements OutputSinkFactory {
+
+        private final Consumer<String> decompiledConsumer;
+
+        public DecompilerOutputSinkFactory(Consumer<String> decompiledConsumer) {
+            this.decompiledConsumer = decompiledConsumer;
+        }
+
+        @Override
+        public List<SinkClass> getSupportedSinks(SinkType sinkType, Collection<SinkClass> collection) {
+            return Collections.singletonList(SinkClass.DECOMPILED);
+        }
+
+        @Override
+        public <T> Sink<T> getSink(SinkType sinkType, SinkClass sinkClass) {
+            if (sinkType == SinkType.JAVA && sinkClass == SinkClass.DECOMPILED) {
+                return res -> decompiledConsumer.accept(((Decompiled) res).getJava());
+            }
+
+            // Anything that isn't the finished decompiled java code can be ignored.
+            return res -> {
+            };
+        }
+
+    }
+
+    /**
+     * Classes of the archive first, then whatever CFR finds itself (the JDK).
+     */
+    private class SessionClassFileSource extends ClassFileSourceImpl {
+
+        public SessionClassFileSource() {
+            super(OPTIONS);
+        }
+
+        @Override
+        public Pair<byte[], String> getClassFileContent(String path) throws IOException {
+            synchronized (cache) {
+                Pair<byte[], String> content = cache.get(path);
+                if (content != null) {
+                    return content;
+                }
+            }
+            byte[] bytes = path.endsWith(".class")
+                    ? classBytesSource.getClassBytes(path.substring(0, path.length() - ".class".length())) : null;
+            Pair<byte[], String> content = bytes != null ? Pair.make(bytes, path) : super.getClassFileContent(path);
+            synchronized (cache) {
+                // another driver may have read the same class meanwhile
+                Pair<byte[], String> replaced = cache.put(path, content);
+                cachedBytes += content.getFirst().length - (replaced == null ? 0 : replaced.getFirst().length);
+                for (Iterator<Pair<byte[], String>> it = cache.values().iterator(); cachedBytes > MAX_CACHED_BYTES && it.hasNext(); ) {
+                    cachedBytes -= it.next().getFirst().length;
+                    it.remove();
+                }
+            }
+            return content;
+        }
+
+    }
+
+}
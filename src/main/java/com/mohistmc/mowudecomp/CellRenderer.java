@@ -40,7 +40,7 @@ public class CellRenderer extends DefaultTreeCellRenderer {
                                                   int row, boolean hasFocus) {
         super.getTreeCellRendererComponent(tree, value, sel, expanded, leaf, row, hasFocus);
         DefaultMutableTreeNode node = (DefaultMutableTreeNode) value;
-        if (node.getChildCount() > 0) {
+        if (!leaf) {
             setIcon(this.pack);
         } else if (getFileName(node).endsWith(".class") || getFileName(node).endsWith(".java")) {
             setIcon(this.classIcon);
@@ -0,0 +1,15 @@
+package com.mohistmc.mowudecomp;
+
+/**
+ * Supplies raw class file bytes to the decompiler backends that do not work
+ * on Procyon's metadata (CFR, Vineflower, Kotlinp).
+ */
+public interface ClassBytesSource {
+
+    /**
+     * @param internalName e.g. {@code com/acme/Model$1}
+     * @return the class file content, or {@code null} if the class is not available
+     */
+    byte[] getClassBytes(String internalName);
+
+}
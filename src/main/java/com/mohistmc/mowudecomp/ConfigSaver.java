@@ -33,6 +33,7 @@ public class ConfigSaver {
     private WindowPosition mainWindowPosition;
     private WindowPosition findWindowPosition;
     private MoWuDecompPreferences luytenPreferences;
+    private DecompilationCache decompilationCache;
 
     private static volatile ConfigSaver theLoadedInstance;
 
@@ -226,4 +227,18 @@ public class ConfigSaver {
     public MoWuDecompPreferences getMoWuDecompPreferences() {
         return luytenPreferences;
     }
+
+    /**
+     * @return the decompilation cache, or {@code null} if it is disabled
+     */
+    public synchronized DecompilationCache getDecompilationCache() {
+        if (!luytenPreferences.isDecompilationCacheEnabled()) {
+            return null;
+        }
+        long maxSizeBytes = Math.max(1, luytenPreferences.getDecompilationCacheSizeMb()) * 1024L * 1024L;
+        if (decompilationCache == null || decompilationCache.getMaxSizeBytes() != maxSizeBytes) {
+            decompilationCache = new DecompilationCache(DecompilationCache.DEFAULT_DIRECTORY, maxSizeBytes);
+        }
+        return decompilationCache;
+    }
 }
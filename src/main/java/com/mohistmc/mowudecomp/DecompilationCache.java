@@ -0,0 +1,337 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.decompiler.DecompilerSettings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed on-disk cache of decompiled sources.
+ * <p>
+ * The key is a SHA-256 over the decompiler, its settings and the bytes of
+ * the class and all of its nested classes, so an entry stays valid for
+ * every archive containing the same class. Output that depends on other
+ * classes (e.g. resolved overloads) may be stale if only those change.
+ * Entries are evicted least recently used first once the directory grows
+ * beyond its size limit; reads refresh the file's modification time.
+ */
+public class DecompilationCache {
+
+    public static final File DEFAULT_DIRECTORY = new File(System.getProperty("user.home"), ".mowudecomp" + File.separator + "cache");
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".src.gz";
+
+    private final Path directory;
+    private final long maxSizeBytes;
+    private final AtomicLong size = new AtomicLong(-1);
+    private final Object evictionLock = new Object();
+
+    public DecompilationCache(File directory, long maxSizeBytes) {
+        this.directory = directory.toPath();
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Decompiled text plus the navigation links of a {@link LinkProvider};
+     * the link maps are {@code null} if the output was produced without links.
+     */
+    public record Entry(String text, Map<String, Selection> definitionToSelectionMap,
+                        Map<String, Set<Selection>> referenceToSelectionsMap) {
+
+        public boolean hasLinks() {
+            return definitionToSelectionMap != null && referenceToSelectionsMap != null;
+        }
+
+    }
+
+    /**
+     * @return the cache key, or {@code null} if the class bytes of {@code type} are not available
+     */
+    public static String createKey(Decompiler decompiler, DecompilerSettings settings, TypeDefinition type,
+                                   ClassBytesSource classBytesSource) {
+        List<byte[]> classBytes = new ArrayList<>();
+        if (!collectClassBytes(type, classBytesSource, classBytes, new HashSet<>())) {
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(fingerprint(decompiler, settings).getBytes(StandardCharsets.UTF_8));
+        for (byte[] bytes : classBytes) {
+            digest.update(intToBytes(bytes.length));
+            digest.update(bytes);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static boolean collectClassBytes(TypeDefinition type, ClassBytesSource classBytesSource,
+                                             List<byte[]> classBytes, Set<String> visited) {
+        if (!visited.add(type.getInternalName())) {
+            return true;
+        }
+        byte[] bytes;
+        try {
+            bytes = classBytesSource.getClassBytes(type.getInternalName());
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (bytes == null) {
+            return false;
+        }
+        classBytes.add(bytes);
+        for (TypeDefinition nestedType : type.getDeclaredTypes()) {
+            if (!collectClassBytes(nestedType, classBytesSource, classBytes, visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String fingerprint(Decompiler decompiler, DecompilerSettings settings) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(FORMAT_VERSION).append('|').append(MoWuDecomp.VERSION).append('|').append(decompiler.name());
+        // the other decompilers only read the unicode flag for the output charset, which is not part of the text
+        if (decompiler == Decompiler.PROCYON) {
+            synchronized (settings) {
+                sb.append('|').append(settings.getLanguage().getName())
+                        .append('|').append(settings.getExcludeNestedTypes())
+                        .append('|').append(settings.getFlattenSwitchBlocks())
+                        .append('|').append(settings.getForceExplicitImports())
+                        .append('|').append(settings.getForceExplicitTypeArguments())
+                        .append('|').append(settings.getOutputFileHeaderText())
+                        .append('|').append(settings.getShowSyntheticMembers())
+                        .append('|').append(settings.getAlwaysGenerateExceptionVariableForCatchBlocks())
+                        .append('|').append(settings.getRetainRedundantCasts())
+                        .append('|').append(settings.getIncludeErrorDiagnostics())
+                        .append('|').append(settings.getIncludeLineNumbersInBytecode())
+                        .append('|').append(settings.getRetainPointlessSwitches())
+                        .append('|').append(settings.isUnicodeOutputEnabled())
+                        .append('|').append(settings.getMergeVariables())
+                        .append('|').append(settings.getShowDebugLineNumbers());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the cached entry or {@code null}; unreadable entries are dropped
+     */
+    public Entry get(String key) {
+        Path path = pathOf(key);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(path);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)))) {
+            if (data.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            String text = new String(data.readNBytes(data.readInt()), StandardCharsets.UTF_8);
+            Entry entry;
+            if (data.readBoolean()) {
+                Map<String, Selection> definitions = new HashMap<>();
+                for (int i = data.readInt(); i > 0; i--) {
+                    definitions.put(data.readUTF(), readSelection(data));
+                }
+                Map<String, Set<Selection>> references = new HashMap<>();
+                for (int i = data.readInt(); i > 0; i--) {
+                    String uniqueStr = data.readUTF();
+                    Set<Selection> selections = new HashSet<>();
+                    for (int j = data.readInt(); j > 0; j--) {
+                        selections.add(readSelection(data));
+                    }
+                    references.put(uniqueStr, selections);
+                }
+                entry = new Entry(text, definitions, references);
+            } else {
+                entry = new Entry(text, null, null);
+            }
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            delete(path);
+            return null;
+        }
+    }
+
+    public void put(String key, Entry entry) {
+        Path path = pathOf(key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(path.getParent());
+            tmp = Files.createTempFile(path.getParent(), key, ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)))) {
+                data.writeInt(FORMAT_VERSION);
+                byte[] text = entry.text().getBytes(StandardCharsets.UTF_8);
+                data.writeInt(text.length);
+                data.write(text);
+                data.writeBoolean(entry.hasLinks());
+                if (entry.hasLinks()) {
+                    data.writeInt(entry.definitionToSelectionMap().size());
+                    for (Map.Entry<String, Selection> definition : entry.definitionToSelectionMap().entrySet()) {
+                        data.writeUTF(definition.getKey());
+                        writeSelection(data, definition.getValue());
+                    }
+                    data.writeInt(entry.referenceToSelectionsMap().size());
+                    for (Map.Entry<String, Set<Selection>> reference : entry.referenceToSelectionsMap().entrySet()) {
+                        data.writeUTF(reference.getKey());
+                        data.writeInt(reference.getValue().size());
+                        for (Selection selection : reference.getValue()) {
+                            writeSelection(data, selection);
+                        }
+                    }
+                }
+            }
+            long oldSize = Files.isRegularFile(path) ? Files.size(path) : 0;
+            long newSize = Files.size(tmp);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            if (size.get() >= 0) {
+                size.addAndGet(newSize - oldSize);
+            }
+            evictIfNeeded();
+        } catch (IOException | RuntimeException e) {
+            // the cache is an optimization only
+            System.err.println("[DecompilationCache]: cannot store " + key + ": " + e);
+        } finally {
+            if (tmp != null) {
+                delete(tmp);
+            }
+        }
+    }
+
+    private void evictIfNeeded() throws IOException {
+        synchronized (evictionLock) {
+            if (size.get() < 0) {
+                size.set(scanSize());
+            }
+            if (size.get() <= maxSizeBytes) {
+                return;
+            }
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(directory)) {
+                files = new ArrayList<>(stream.filter(path -> path.toString().endsWith(SUFFIX)).toList());
+            }
+            Map<Path, Long> lastModified = new HashMap<>();
+            for (Path file : files) {
+                lastModified.put(file, lastModifiedOrZero(file));
+            }
+            files.sort(Comparator.comparingLong(lastModified::get));
+            // evict down to 90% so that not every put has to walk the directory again
+            long target = maxSizeBytes / 10 * 9;
+            for (Path file : files) {
+                if (size.get() <= target) {
+                    break;
+                }
+                long fileSize = Files.size(file);
+                if (delete(file)) {
+                    size.addAndGet(-fileSize);
+                }
+            }
+        }
+    }
+
+    private long scanSize() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        try (Stream<Path> stream = Files.walk(directory)) {
+            return stream.filter(path -> path.toString().endsWith(SUFFIX)).mapToLong(path -> {
+                try {
+                    return Files.size(path);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        }
+    }
+
+    public void clear() {
+        synchronized (evictionLock) {
+            if (Files.isDirectory(directory)) {
+                try (Stream<Path> stream = Files.walk(directory)) {
+                    stream.filter(path -> path.toString().endsWith(SUFFIX)).forEach(DecompilationCache::delete);
+                } catch (IOException e) {
+                    System.err.println("[DecompilationCache]: cannot clear " + directory + ": " + e);
+                }
+            }
+            size.set(-1);
+        }
+    }
+
+    public long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    public File getDirectory() {
+        return directory.toFile();
+    }
+
+    private Path pathOf(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    private static long lastModifiedOrZero(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean delete(Path path) {
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Selection readSelection(DataInputStream data) throws IOException {
+        return new Selection(data.readInt(), data.readInt());
+    }
+
+    private static void writeSelection(DataOutputStream data, Selection selection) throws IOException {
+        data.writeInt(selection.from());
+        data.writeInt(selection.to());
+    }
+
+    private static byte[] intToBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.ITypeLoader;
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.assembler.metadata.TypeReference;
+import com.strobel.decompiler.DecompilationOptions;
+import com.strobel.decompiler.DecompilerSettings;
+import com.strobel.decompiler.PlainTextOutput;
+
+import java.io.Writer;
+
+/**
+ * Procyon state owned by a single decompiling thread: its own type loader
+ * chain, metadata system and settings clone. MetadataSystem is not safe for
+ * concurrent use, so parallel workers must never share one of these. Only
+ * the type loader chain may be shared, see {@link DecompilationContextPool}.
+ */
+public class DecompilationContext {
+
+    private final MoWuDecompTypeLoader typeLoader;
+    private final BoundedMetadataSystem metadataSystem;
+    private final DecompilerSettings settings;
+    private final DecompilationOptions decompilationOptions;
+
+    public DecompilationContext(DecompilerSettings settings, ITypeLoader... typeLoaders) {
+        this(settings, BoundedMetadataSystem.DEFAULT_MAX_BYTES, typeLoaders);
+    }
+
+    /**
+     * @param metadataCacheBytes memory budget of the resolved types, see {@link BoundedMetadataSystem}
+     */
+    public DecompilationContext(DecompilerSettings settings, long metadataCacheBytes, ITypeLoader... typeLoaders) {
+        this(settings, metadataCacheBytes, new MoWuDecompTypeLoader());
+        for (ITypeLoader loader : typeLoaders) {
+            typeLoader.addTypeLoader(loader);
+        }
+    }
+
+    /**
+     * @param typeLoader chain shared with other contexts, e.g. those of a model
+     */
+    public DecompilationContext(DecompilerSettings settings, long metadataCacheBytes,
+                                MoWuDecompTypeLoader typeLoader) {
+        this.typeLoader = typeLoader;
+        this.metadataSystem = new BoundedMetadataSystem(typeLoader, metadataCacheBytes);
+        this.settings = ProcyonUtils.cloneSettings(settings);
+        decompilationOptions = new DecompilationOptions();
+        decompilationOptions.setSettings(this.settings);
+        decompilationOptions.setFullDecompilation(true);
+    }
+
+    public TypeDefinition resolveType(String internalName) {
+        TypeReference type = metadataSystem.lookupType(internalName);
+        return type == null ? null : type.resolve();
+    }
+
+    public void decompile(TypeDefinition type, Writer writer) {
+        PlainTextOutput plainTextOutput = new PlainTextOutput(writer);
+        plainTextOutput.setUnicodeOutputEnabled(settings.isUnicodeOutputEnabled());
+        settings.getLanguage().decompileType(type, plainTextOutput, decompilationOptions);
+    }
+
+    public MoWuDecompTypeLoader getTypeLoader() {
+        return typeLoader;
+    }
+
+    public BoundedMetadataSystem getMetadataSystem() {
+        return metadataSystem;
+    }
+
+    public DecompilerSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Takes over the changes of {@code settings}, the settings this context was created with.
+     */
+    public void updateSettings(DecompilerSettings settings) {
+        ProcyonUtils.copySettings(settings, this.settings);
+    }
+
+    public DecompilationOptions getDecompilationOptions() {
+        return decompilationOptions;
+    }
+}
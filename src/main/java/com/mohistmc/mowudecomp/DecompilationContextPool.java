@@ -0,0 +1,187 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.decompiler.DecompilerSettings;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link DecompilationContext}s of a {@link Model}, so that its tabs
+ * decompile in parallel instead of one after the other.
+ * <p>
+ * Every context has its own metadata system, settings clone and options,
+ * over the type loader chain of the model, whose archives serve the same
+ * read-only class bytes to all of them. A context is leased to one thread
+ * at a time. A tab keeps the context its type was resolved in, the
+ * definitions belong to that metadata system, and leases it again for its
+ * links and method bodies. Leases are reentrant, and a thread holds one
+ * context at most, so that threads never wait for each other in a circle.
+ */
+public final class DecompilationContextPool {
+
+    private static final long MIN_METADATA_CACHE_BYTES_PER_CONTEXT = 32L * 1024 * 1024;
+
+    private final DecompilerSettings settings;
+    private final MoWuDecompTypeLoader typeLoader;
+    private final long metadataCacheBytes;
+    // guarded by this
+    private int maxContexts;
+    private long metadataCacheBytesPerContext;
+    private final List<DecompilationContext> contexts = new ArrayList<>();
+    private final Map<DecompilationContext, Lease> leases = new IdentityHashMap<>();
+    private final Map<DecompilationContext, Integer> settingsVersions = new IdentityHashMap<>();
+    private int settingsVersion;
+
+    private static final class Lease {
+
+        private final Thread holder = Thread.currentThread();
+        private int count = 1;
+
+    }
+
+    /**
+     * @param settings           the settings of the main menu, each context works on a clone
+     * @param metadataCacheBytes memory budget of the resolved types of all contexts together
+     */
+    public DecompilationContextPool(DecompilerSettings settings, MoWuDecompTypeLoader typeLoader, int maxContexts,
+                                    long metadataCacheBytes) {
+        this.settings = settings;
+        this.typeLoader = typeLoader;
+        this.metadataCacheBytes = metadataCacheBytes;
+        setSize(maxContexts);
+    }
+
+    /**
+     * Changes how many contexts there may be, e.g. with the number of
+     * background jobs, and splits the memory budget anew. The contexts so
+     * far are dropped like by {@link #clear()}, their budget was split for
+     * the old size; threads waiting for one retry with the new size.
+     */
+    public synchronized void setMaxContexts(int maxContexts) {
+        setSize(maxContexts);
+        clear();
+    }
+
+    /**
+     * Leases the context the current thread already holds, or else an idle
+     * one, waiting until there is one. Pair with {@link #release}.
+     */
+    public synchronized DecompilationContext acquire() {
+        DecompilationContext held = getHeld();
+        if (held != null) {
+            leases.get(held).count++;
+            return held;
+        }
+        while (true) {
+            for (DecompilationContext context : contexts) {
+                if (!leases.containsKey(context)) {
+                    return lease(context);
+                }
+            }
+            if (contexts.size() < maxContexts) {
+                DecompilationContext context = new DecompilationContext(settings, metadataCacheBytesPerContext,
+                        typeLoader);
+                contexts.add(context);
+                settingsVersions.put(context, settingsVersion);
+                return lease(context);
+            }
+            await();
+        }
+    }
+
+    /**
+     * Leases {@code context}, e.g. that of a tab, waiting until it is idle. Pair with {@link #release}.
+     *
+     * @throws IllegalStateException if the current thread holds another context
+     */
+    public synchronized DecompilationContext acquire(DecompilationContext context) {
+        DecompilationContext held = getHeld();
+        if (held == context) {
+            leases.get(context).count++;
+            return context;
+        }
+        if (held != null) {
+            throw new IllegalStateException("Holding another decompilation context");
+        }
+        while (leases.containsKey(context)) {
+            await();
+        }
+        return lease(context);
+    }
+
+    public synchronized void release(DecompilationContext context) {
+        Lease lease = leases.get(context);
+        if (lease == null || lease.holder != Thread.currentThread()) {
+            throw new IllegalStateException("Decompilation context not held");
+        }
+        if (--lease.count > 0) {
+            return;
+        }
+        leases.remove(context);
+        if (!contexts.contains(context)) {
+            // dropped by clear() while leased
+            settingsVersions.remove(context);
+        }
+        notifyAll();
+    }
+
+    /**
+     * The contexts take over the changed settings the next time they are leased.
+     */
+    public synchronized void onSettingsChanged() {
+        settingsVersion++;
+    }
+
+    /**
+     * Drops the idle contexts, and the leased ones once released, e.g. so
+     * that the types of a closed archive do not shadow those of the next.
+     * Contexts kept by tabs stay usable.
+     */
+    public synchronized void clear() {
+        for (DecompilationContext context : contexts) {
+            if (!leases.containsKey(context)) {
+                settingsVersions.remove(context);
+            }
+        }
+        contexts.clear();
+        notifyAll();
+    }
+
+    private void setSize(int maxContexts) {
+        this.maxContexts = Math.max(1, maxContexts);
+        metadataCacheBytesPerContext = Math.max(metadataCacheBytes / this.maxContexts,
+                MIN_METADATA_CACHE_BYTES_PER_CONTEXT);
+    }
+
+    private DecompilationContext getHeld() {
+        Thread currentThread = Thread.currentThread();
+        for (Map.Entry<DecompilationContext, Lease> entry : leases.entrySet()) {
+            if (entry.getValue().holder == currentThread) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private DecompilationContext lease(DecompilationContext context) {
+        leases.put(context, new Lease());
+        Integer version = settingsVersions.get(context);
+        if (version == null || version != settingsVersion) {
+            context.updateSettings(settings);
+            settingsVersions.put(context, settingsVersion);
+        }
+        return context;
+    }
+
+    private void await() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a decompilation context", e);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.mohistmc.mowudecomp;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The background work of the open tabs: decompiling, building links,
+ * filling skeletons, warming up and indexing, run by a bounded number of
+ * workers in the order of their {@link Priority}.
+ * <p>
+ * Every job has an owner, e.g. the tab it is for. A job that is still
+ * waiting is dropped when a job of the same owner and priority is
+ * submitted, so of ten classes clicked in quick succession only the last
+ * one is decompiled, and {@link #cancel} drops the waiting jobs of a tab
+ * that was closed. A running job is never interrupted, Procyon does not
+ * expect that.
+ */
+public final class DecompilationScheduler {
+
+    public enum Priority {
+        /**
+         * The tab the user opened or is looking at.
+         */
+        FOREGROUND,
+        LINKS,
+        /**
+         * Work the user may need soon, e.g. method bodies not in view.
+         */
+        PREFETCH,
+        INDEXING
+    }
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static volatile DecompilationScheduler instance;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private DecompilationScheduler(int maxConcurrentJobs) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        // only core threads are ever started with an unbounded queue
+        executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Decompilation-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static DecompilationScheduler getInstance() {
+        DecompilationScheduler scheduler = instance;
+        if (scheduler == null) {
+            synchronized (DecompilationScheduler.class) {
+                scheduler = instance;
+                if (scheduler == null) {
+                    ConfigSaver configSaver = ConfigSaver.getLoadedInstance();
+                    scheduler = new DecompilationScheduler(
+                            configSaver.getMoWuDecompPreferences().getDecompilationJobCount());
+                    instance = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Sets how many jobs may run at the same time, running jobs above the
+     * new limit complete first.
+     */
+    public synchronized void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        int size = Math.max(1, maxConcurrentJobs);
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Runs {@code task} once the jobs of higher priority and those of the
+     * same priority submitted before it have started, dropping the waiting
+     * job of {@code owner} with the same priority.
+     *
+     * @param owner compared by identity
+     */
+    public void submit(Priority priority, Object owner, Runnable task) {
+        for (Runnable waiting : executor.getQueue()) {
+            if (waiting instanceof Job job && job.owner == owner && job.priority == priority) {
+                executor.remove(job);
+            }
+        }
+        executor.execute(new Job(priority, owner, task, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Drops the waiting jobs of {@code owner}, compared by identity.
+     */
+    public void cancel(Object owner) {
+        for (Runnable waiting : executor.getQueue()) {
+            if (waiting instanceof Job job && job.owner == owner) {
+                executor.remove(job);
+            }
+        }
+    }
+
+    // equals() is identity, ThreadPoolExecutor.remove() relies on that
+    private static final class Job implements Runnable, Comparable<Job> {
+
+        private final Priority priority;
+        private final Object owner;
+        private final Runnable task;
+        private final long sequence;
+
+        private Job(Priority priority, Object owner, Runnable task, long sequence) {
+            this.priority = priority;
+            this.owner = owner;
+            this.task = task;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int result = priority.compareTo(other.priority);
+            // first come first served, so that jobs which resubmit themselves do not starve the others
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            Thread thread = Thread.currentThread();
+            thread.setPriority(priority.compareTo(Priority.LINKS) <= 0 ? Thread.NORM_PRIORITY : Thread.MIN_PRIORITY);
+            try {
+                task.run();
+            } catch (RuntimeException | StackOverflowError e) {
+                System.err.println("[DecompilationScheduler]: " + priority + " job failed: " + e);
+                e.printStackTrace();
+            } finally {
+                thread.setPriority(Thread.NORM_PRIORITY);
+            }
+        }
+    }
+
+}
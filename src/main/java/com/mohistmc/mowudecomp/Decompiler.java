@@ -8,19 +8,25 @@ import java.util.function.Supplier;
  * @date 2023/4/13 23:39:14
  */
 public enum Decompiler {
-    PROCYON("Procyon", ProcyonLinkProvider::new),
-    CFR("CFR", CFRLinkProvider::new),
-    Vineflower("Vineflower", VineflowerLinkProvider::new),
-    KOTLINP("Kotlinp", KotlinpLinkProvider::new);
+    PROCYON("Procyon", ProcyonLinkProvider::new, null),
+    CFR("CFR", CFRLinkProvider::new, CFRArchiveDecompiler::new),
+    Vineflower("Vineflower", VineflowerLinkProvider::new, VineflowerArchiveDecompiler::new),
+    KOTLINP("Kotlinp", KotlinpLinkProvider::new, null);
 
     public static final Decompiler[] VALUES = values();
 
     private final String properName;
     public final Supplier<LinkProvider> linkProviderSupplier;
+    /**
+     * Whole archive mode for Save All, {@code null} if classes are decompiled one by one.
+     */
+    public final Supplier<ArchiveDecompiler> archiveDecompilerSupplier;
 
-    Decompiler(String properName, Supplier<LinkProvider> linkProviderSupplier) {
+    Decompiler(String properName, Supplier<LinkProvider> linkProviderSupplier,
+               Supplier<ArchiveDecompiler> archiveDecompilerSupplier) {
         this.properName = properName;
         this.linkProviderSupplier = linkProviderSupplier;
+        this.archiveDecompilerSupplier = archiveDecompilerSupplier;
     }
 
     public String getProperName() {
@@ -20,7 +20,12 @@ public class FileDialog {
         this.parent = parent;
         configSaver = ConfigSaver.getLoadedInstance();
         luytenPrefs = configSaver.getMoWuDecompPreferences();
+    }
 
+    /**
+     * Creates the file choosers in the background, so that the first dialog opens quickly.
+     */
+    public void preload() {
         new Thread(() -> {
             try {
                 initOpenDialog();
@@ -78,7 +83,7 @@ public class FileDialog {
 
     public synchronized void initOpenDialog() {
         if (fcOpen == null) {
-            fcOpen = createFileChooser("*.jar", "*.zip", "*.class");
+            fcOpen = createFileChooser("*.jar", "*.zip", "*.war", "*.ear", "*.class");
             retrieveOpenDialogDir(fcOpen);
         }
     }
@@ -1,6 +1,5 @@
 package com.mohistmc.mowudecomp;
 
-import com.strobel.assembler.metadata.ITypeLoader;
 import com.strobel.assembler.metadata.JarTypeLoader;
 import com.strobel.assembler.metadata.MetadataSystem;
 import com.strobel.assembler.metadata.TypeDefinition;
@@ -9,7 +8,6 @@ import com.strobel.core.StringUtilities;
 import com.strobel.decompiler.DecompilationOptions;
 import com.strobel.decompiler.DecompilerSettings;
 import com.strobel.decompiler.PlainTextOutput;
-import com.strobel.decompiler.languages.java.JavaFormattingOptions;
 
 import javax.swing.JLabel;
 import javax.swing.JMenuItem;
@@ -20,18 +18,27 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipException;
@@ -44,8 +51,9 @@ public class FileSaver {
 
     private final JProgressBar bar;
     private final JLabel label;
-    private boolean cancel;
-    private boolean extracting;
+    private volatile boolean cancel;
+    private volatile boolean extracting;
+    private volatile JarDecompiler currentDecompiler;
 
     public FileSaver(JProgressBar bar, JLabel label) {
         this.bar = bar;
@@ -117,31 +125,9 @@ public class FileSaver {
         }).start();
     }
 
-    public void saveAllDecompiledCLI(final File inFile, final File outFile) {
-        new Thread(() -> {
-            long time = System.currentTimeMillis();
-            try {
-                setExtracting(true);
-                System.out.println("[SaveAll]: " + inFile.getName() + " -> " + outFile.getName());
-                performSaveOperation(inFile, outFile);
-                if (cancel) {
-                    outFile.delete();
-                    setCancel(false);
-                } else {
-                    System.out.println("Completed: " + getTime(time));
-                }
-            } catch (Exception e) {
-                System.out.println("Cannot save file: " + outFile.getName());
-                e.printStackTrace();
-            } finally {
-                setExtracting(false);
-            }
-        }).start();
-    }
-
     private void performSaveOperation(File inFile, File outFile) throws Exception {
         String inFileName = inFile.getName().toLowerCase();
-        if (inFileName.endsWith(".jar") || inFileName.endsWith(".zip")) {
+        if (ArchiveTreeModel.isArchive(inFileName)) {
             doSaveJarDecompiled(inFile, outFile);
         } else if (inFileName.endsWith(".class")) {
             doSaveClassDecompiled(inFile, outFile);
@@ -151,135 +137,46 @@ public class FileSaver {
     }
 
     private void doSaveJarDecompiled(File inFile, File outFile) throws Exception {
-        try (JarFile jarFile = new JarFile(inFile);
-             FileOutputStream dest = new FileOutputStream(outFile);
-             BufferedOutputStream buffDest = new BufferedOutputStream(dest);
-             ZipOutputStream out = new ZipOutputStream(buffDest)) {
-            if (bar != null) {
-                bar.setMinimum(0);
-                bar.setMaximum(jarFile.size());
-            }
-            byte[] data = new byte[1024];
-            DecompilerSettings settings = cloneSettings();
-            MoWuDecompTypeLoader typeLoader = new MoWuDecompTypeLoader();
-            MetadataSystem metadataSystem = new MetadataSystem(typeLoader);
-            ITypeLoader jarLoader = new JarTypeLoader(jarFile);
-            typeLoader.getTypeLoaders().add(jarLoader);
-
-            DecompilationOptions decompilationOptions = new DecompilationOptions();
-            decompilationOptions.setSettings(settings);
-            decompilationOptions.setFullDecompilation(true);
-
-            List<String> mass;
-            JarEntryFilter jarEntryFilter = new JarEntryFilter(jarFile);
-            MoWuDecompPreferences luytenPrefs = ConfigSaver.getLoadedInstance().getMoWuDecompPreferences();
-            if (luytenPrefs.isFilterOutInnerClassEntries()) {
-                mass = jarEntryFilter.getEntriesWithoutInnerClasses();
-            } else {
-                mass = jarEntryFilter.getAllEntriesFromJar();
+        JarDecompiler jarDecompiler = createJarDecompiler();
+        jarDecompiler.setListener(new JarDecompiler.Listener() {
+            @Override
+            public void archiveStarted(File inFile, int entryCount) {
+                if (bar != null) {
+                    bar.setMinimum(0);
+                    bar.setMaximum(entryCount);
+                }
             }
 
-            Enumeration<JarEntry> ent = jarFile.entries();
-            Set<String> history = new HashSet<>();
-            int tick = 0;
-            while (ent.hasMoreElements() && !cancel) {
+            @Override
+            public void entryStarted(String outputName, int position) {
                 if (bar != null) {
-                    bar.setValue(++tick);
+                    bar.setValue(position);
+                    bar.setVisible(true);
                 }
-                JarEntry entry = ent.nextElement();
-                if (!mass.contains(entry.getName()))
-                    continue;
                 if (label != null) {
-                    label.setText("Extracting: " + entry.getName());
+                    label.setText("Extracting: " + outputName);
                 }
-                if (bar != null) {
-                    bar.setVisible(true);
+                if (outputName.endsWith(".java")) {
+                    System.out.println("[SaveAll]: " + outputName + " -> " + outFile.getPath());
                 }
-                if (entry.getName().endsWith(".class")) {
-                    JarEntry etn = new JarEntry(entry.getName().replace(".class", ".java"));
-                    if (label != null) {
-                        label.setText("Extracting: " + etn.getName());
-                    }
-                    System.out.println("[SaveAll]: " + etn.getName() + " -> " + outFile.getPath());
+            }
 
-                    if (history.add(etn.getName())) {
-                        out.putNextEntry(etn);
-                        try {
-                            boolean isUnicodeEnabled = decompilationOptions.getSettings().isUnicodeOutputEnabled();
-                            String internalName = StringUtilities.removeRight(entry.getName(), ".class");
-                            TypeReference type = metadataSystem.lookupType(internalName);
-                            TypeDefinition resolvedType;
-                            if ((type == null) || ((resolvedType = type.resolve()) == null)) {
-                                throw new Exception("Unable to resolve type.");
-                            }
-                            Writer writer = isUnicodeEnabled ? new OutputStreamWriter(out, StandardCharsets.UTF_8)
-                                    : new OutputStreamWriter(out);
-                            PlainTextOutput plainTextOutput = new PlainTextOutput(writer);
-                            plainTextOutput.setUnicodeOutputEnabled(isUnicodeEnabled);
-                            settings.getLanguage().decompileType(resolvedType, plainTextOutput, decompilationOptions);
-                            writer.flush();
-                        } catch (Exception e) {
-                            if (label != null) {
-                                label.setText("Cannot decompile file: " + entry.getName());
-                            }
-                            MoWuDecomp.showExceptionDialog("Unable to Decompile file!\nSkipping file...", e);
-                        } finally {
-                            out.closeEntry();
-                        }
-                    }
-                } else {
-                    try {
-                        JarEntry etn = new JarEntry(entry.getName());
-                        if (entry.getName().endsWith(".java"))
-                            etn = new JarEntry(entry.getName().replace(".java", ".src.java"));
-                        if (history.add(etn.getName())) {
-                            out.putNextEntry(etn);
-                            try {
-                                InputStream in = jarFile.getInputStream(etn);
-                                if (in != null) {
-                                    try {
-                                        int count;
-                                        while ((count = in.read(data, 0, 1024)) != -1) {
-                                            out.write(data, 0, count);
-                                        }
-                                    } finally {
-                                        in.close();
-                                    }
-                                }
-                            } finally {
-                                out.closeEntry();
-                            }
-                        }
-                    } catch (ZipException ze) {
-                        if (!ze.getMessage().contains("duplicate")) {
-                            throw ze;
-                        }
-                    }
+            @Override
+            public void entryFailed(String entryName, Throwable error) {
+                if (label != null) {
+                    label.setText("Cannot decompile file: " + entryName);
                 }
+                MoWuDecomp.showExceptionDialog("Unable to Decompile file!\nSkipping file...",
+                        error instanceof Exception ? (Exception) error : new Exception(error));
             }
-        }
+        });
+        jarDecompiler.decompileArchive(inFile, outFile);
     }
 
     private void doSaveClassDecompiled(File inFile, File outFile) throws Exception {
-        DecompilerSettings settings = cloneSettings();
-        MoWuDecompTypeLoader typeLoader = new MoWuDecompTypeLoader();
-        MetadataSystem metadataSystem = new MetadataSystem(typeLoader);
-        TypeReference type = metadataSystem.lookupType(inFile.getCanonicalPath());
-
-        DecompilationOptions decompilationOptions = new DecompilationOptions();
-        decompilationOptions.setSettings(settings);
-        decompilationOptions.setFullDecompilation(true);
-
-        boolean isUnicodeEnabled = decompilationOptions.getSettings().isUnicodeOutputEnabled();
-        TypeDefinition resolvedType;
-        if (type == null || ((resolvedType = type.resolve()) == null)) {
-            throw new Exception("Unable to resolve type.");
-        }
-        StringWriter stringwriter = new StringWriter();
-        PlainTextOutput plainTextOutput = new PlainTextOutput(stringwriter);
-        plainTextOutput.setUnicodeOutputEnabled(isUnicodeEnabled);
-        settings.getLanguage().decompileType(resolvedType, plainTextOutput, decompilationOptions);
-        String decompiledSource = stringwriter.toString();
+        JarDecompiler jarDecompiler = createJarDecompiler();
+        boolean isUnicodeEnabled = cloneSettings().isUnicodeOutputEnabled();
+        String decompiledSource = jarDecompiler.decompileClassFile(inFile);
 
         System.out.println("[SaveAll]: " + inFile.getName() + " -> " + outFile.getName());
         try (FileOutputStream fos = new FileOutputStream(outFile);
@@ -291,6 +188,23 @@ public class FileSaver {
         }
     }
 
+    private JarDecompiler createJarDecompiler() {
+        MoWuDecompPreferences luytenPrefs = ConfigSaver.getLoadedInstance().getMoWuDecompPreferences();
+        int threads = luytenPrefs.isParallelDecompilationEnabled() ? luytenPrefs.getDecompilerThreadCount() : 1;
+        // Kotlinp output is no Java source
+        Decompiler decompiler = luytenPrefs.getDecompiler() == Decompiler.KOTLINP ? Decompiler.PROCYON
+                : luytenPrefs.getDecompiler();
+        JarDecompiler jarDecompiler = new JarDecompiler(decompiler, cloneSettings(), threads,
+                luytenPrefs.isFilterOutInnerClassEntries());
+        jarDecompiler.setCache(ConfigSaver.getLoadedInstance().getDecompilationCache());
+        jarDecompiler.setMetadataCacheBytes(luytenPrefs.getTypeCacheBytes());
+        if (cancel) {
+            jarDecompiler.cancel();
+        }
+        currentDecompiler = jarDecompiler;
+        return jarDecompiler;
+    }
+
     private void doSaveUnknownFile(File inFile, File outFile) throws Exception {
         try (FileInputStream in = new FileInputStream(inFile); FileOutputStream out = new FileOutputStream(outFile)) {
             System.out.println("[SaveAll]: " + inFile.getName() + " -> " + outFile.getName());
@@ -304,32 +218,7 @@ public class FileSaver {
     }
 
     private DecompilerSettings cloneSettings() {
-        DecompilerSettings settings = ConfigSaver.getLoadedInstance().getDecompilerSettings();
-        DecompilerSettings newSettings = new DecompilerSettings();
-        if (newSettings.getJavaFormattingOptions() == null) {
-            newSettings.setJavaFormattingOptions(JavaFormattingOptions.createDefault());
-        }
-        // synchronized: against main menu changes
-        synchronized (settings) {
-            newSettings.setExcludeNestedTypes(settings.getExcludeNestedTypes());
-            newSettings.setFlattenSwitchBlocks(settings.getFlattenSwitchBlocks());
-            newSettings.setForceExplicitImports(settings.getForceExplicitImports());
-            newSettings.setForceExplicitTypeArguments(settings.getForceExplicitTypeArguments());
-            newSettings.setOutputFileHeaderText(settings.getOutputFileHeaderText());
-            newSettings.setLanguage(settings.getLanguage());
-            newSettings.setShowSyntheticMembers(settings.getShowSyntheticMembers());
-            newSettings.setAlwaysGenerateExceptionVariableForCatchBlocks(
-                    settings.getAlwaysGenerateExceptionVariableForCatchBlocks());
-            newSettings.setOutputDirectory(settings.getOutputDirectory());
-            newSettings.setRetainRedundantCasts(settings.getRetainRedundantCasts());
-            newSettings.setIncludeErrorDiagnostics(settings.getIncludeErrorDiagnostics());
-            newSettings.setIncludeLineNumbersInBytecode(settings.getIncludeLineNumbersInBytecode());
-            newSettings.setRetainPointlessSwitches(settings.getRetainPointlessSwitches());
-            newSettings.setUnicodeOutputEnabled(settings.isUnicodeOutputEnabled());
-            newSettings.setMergeVariables(settings.getMergeVariables());
-            newSettings.setShowDebugLineNumbers(settings.getShowDebugLineNumbers());
-        }
-        return newSettings;
+        return ProcyonUtils.cloneSettings(ConfigSaver.getLoadedInstance().getDecompilerSettings());
     }
 
     public boolean isCancel() {
@@ -338,6 +227,10 @@ public class FileSaver {
 
     public void setCancel(boolean cancel) {
         this.cancel = cancel;
+        JarDecompiler jarDecompiler = currentDecompiler;
+        if (cancel && jarDecompiler != null) {
+            jarDecompiler.cancel();
+        }
     }
 
     public boolean isExtracting() {
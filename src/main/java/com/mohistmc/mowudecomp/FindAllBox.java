@@ -1,11 +1,6 @@
 package com.mohistmc.mowudecomp;
 
-import com.strobel.assembler.metadata.TypeDefinition;
-import com.strobel.assembler.metadata.TypeReference;
 import com.strobel.core.StringUtilities;
-import com.strobel.decompiler.DecompilationOptions;
-import com.strobel.decompiler.DecompilerSettings;
-import com.strobel.decompiler.PlainTextOutput;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -24,6 +19,7 @@ import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
@@ -32,15 +28,13 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.InputStreamReader;
-import java.io.StringWriter;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * this is the Find All Dialog
@@ -56,6 +50,7 @@ public class FindAllBox extends JDialog {
 
     private static final long serialVersionUID = -4125409760166690462L;
     private static final int MIN_WIDTH = 640;
+    private static final long STATUS_INTERVAL_NANOS = 100_000_000L;
 
     private final JButton findButton;
     private final JTextField textField;
@@ -63,14 +58,15 @@ public class FindAllBox extends JDialog {
     private final JCheckBox regex;
     private final JCheckBox wholew;
     private final JCheckBox classname;
-    private final JList<String> list;
+    private final JList<SearchHit> list;
     private final FindAllLabeledProgressBar labeledProgressBar;
     private boolean searching;
     boolean locked;
 
-    private final DefaultListModel<String> classesList = new DefaultListModel<>();
+    private final DefaultListModel<SearchHit> classesList = new DefaultListModel<>();
 
     private Thread tmp_thread;
+    private volatile FindAllSearch currentSearch;
 
     private final MainWindow mainWindow;
 
@@ -100,39 +96,16 @@ public class FindAllBox extends JDialog {
         list.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent evt) {
                 @SuppressWarnings("unchecked")
-                JList<String> list = (JList<String>) evt.getSource();
+                JList<SearchHit> list = (JList<SearchHit>) evt.getSource();
                 if (evt.getClickCount() == 2) {
                     int index = list.locationToIndex(evt.getPoint());
-                    String entryName = list.getModel().getElementAt(index);
+                    String entryName = list.getModel().getElementAt(index).entryName();
                     String[] array = entryName.split("/");
-                    if (entryName.toLowerCase().endsWith(".class")) {
-                        String internalName = StringUtilities.removeRight(entryName, ".class");
-                        TypeReference type = mainWindow.getSelectedModel().getMetadataSystem().lookupType(internalName);
-                        try {
-                            mainWindow.getSelectedModel().extractClassToTextPane(type, array[array.length - 1],
-                                    entryName,
-                                    null);
-                        } catch (Exception ignored) {
-                            for (Model m : mainWindow.getModels()) {
-                                try {
-                                    m.extractClassToTextPane(type, array[array.length - 1], entryName, null);
-                                } catch (Exception ignored1) {
-                                }
-                            }
-                        }
-
-                    } else {
-                        try {
-                            JarFile jfile = new JarFile(mainWindow.getSelectedModel().getOpenedFile());
-                            mainWindow.getSelectedModel().extractSimpleFileEntryToTextPane(
-                                    jfile.getInputStream(jfile.getEntry(entryName)), array[array.length - 1],
-                                    entryName);
-                            jfile.close();
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-
+                    Model selectedModel = mainWindow.getSelectedModel();
+                    List<Model> models = new ArrayList<>(mainWindow.getModels());
+                    // decompiles like a click in the tree, superseding the click before if that did not start yet
+                    DecompilationScheduler.getInstance().submit(DecompilationScheduler.Priority.FOREGROUND,
+                            selectedModel, () -> openHit(selectedModel, models, entryName, array[array.length - 1]));
                 }
             }
         });
@@ -201,115 +174,49 @@ public class FindAllBox extends JDialog {
         public void actionPerformed(ActionEvent event) {
             tmp_thread = new Thread(() -> {
                 if (findButton.getText().equals("Stop")) {
-                    if (tmp_thread != null)
-                        tmp_thread.interrupt();
-                    setStatus("Stopped.");
+                    FindAllSearch search = currentSearch;
+                    if (search != null)
+                        search.cancel();
+                    SwingUtilities.invokeLater(() -> setStatus("Stopped."));
                     findButton.setText("Find");
                     locked = false;
                 } else {
                     File inFile = mainWindow.getSelectedModel().getOpenedFile();
                     if (inFile == null)
                         return;
+                    SearchQuery query;
+                    try {
+                        query = new SearchQuery(textField.getText(), mcase.isSelected(), wholew.isSelected(),
+                                regex.isSelected());
+                    } catch (PatternSyntaxException e) {
+                        SwingUtilities.invokeLater(() -> setStatus("Invalid regex: " + e.getDescription()));
+                        return;
+                    }
                     findButton.setText("Stop");
                     classesList.clear();
-                    ConfigSaver configSaver = ConfigSaver.getLoadedInstance();
-                    DecompilerSettings settings = configSaver.getDecompilerSettings();
-                    boolean filter = ConfigSaver.getLoadedInstance().getMoWuDecompPreferences()
-                            .isFilterOutInnerClassEntries();
+                    long time = System.currentTimeMillis();
                     try {
-                        JarFile jarFile = new JarFile(inFile);
-                        Enumeration<JarEntry> entLength = jarFile.entries();
-                        initProgressBar(Collections.list(entLength).size());
-                        Enumeration<JarEntry> ent = jarFile.entries();
-                        while (ent.hasMoreElements() && findButton.getText().equals("Stop")) {
-                            JarEntry entry = ent.nextElement();
-                            String name = entry.getName();
-                            setStatus(name);
-                            if (filter && name.contains("$"))
-                                continue;
-                            if (locked || classname.isSelected()) {
-                                locked = true;
-                                if (search(entry.getName()))
-                                    addClassName(entry.getName());
+                        if (locked || classname.isSelected()) {
+                            locked = true;
+                            searchClassNames(inFile, query);
+                        } else {
+                            SourceIndex sourceIndex = mainWindow.getSelectedModel().getSourceIndex();
+                            if (sourceIndex != null && sourceIndex.isComplete()) {
+                                SwingUtilities.invokeLater(() -> setStatus("Searching index..."));
+                                sourceIndex.search(query, () -> !findButton.getText().equals("Stop"),
+                                        hit -> SwingUtilities.invokeLater(() -> addHit(hit)));
                             } else {
-                                if (entry.getName().endsWith(".class")) {
-                                    synchronized (settings) {
-                                        String internalName = StringUtilities.removeRight(entry.getName(), ".class");
-                                        try {
-                                            TypeReference type =
-                                                    mainWindow.getSelectedModel().getMetadataSystem().lookupType(internalName);
-                                            TypeDefinition resolvedType;
-                                            if (type != null && ((resolvedType = type.resolve()) != null)) {
-                                                StringWriter stringwriter = new StringWriter();
-                                                DecompilationOptions decompilationOptions;
-                                                decompilationOptions = new DecompilationOptions();
-                                                decompilationOptions.setSettings(settings);
-                                                decompilationOptions.setFullDecompilation(true);
-                                                PlainTextOutput plainTextOutput = new PlainTextOutput(stringwriter);
-                                                plainTextOutput.setUnicodeOutputEnabled(
-                                                        decompilationOptions.getSettings().isUnicodeOutputEnabled());
-                                                settings.getLanguage().decompileType(resolvedType, plainTextOutput,
-                                                        decompilationOptions);
-                                                if (search(stringwriter.toString()))
-                                                    addClassName(entry.getName());
-                                            }
-                                        } catch (IllegalStateException ise) {
-                                            if (ise.getMessage().contains("Invalid BootstrapMethods attribute entry: "
-                                                    + "2 additional arguments required for method "
-                                                    + "java/lang/invoke/StringConcatFactory.makeConcatWithConstants, "
-                                                    + "but only 1 specified.")) {
-                                                // Known issue of Procyon <= 0.5.35 and fix not yet released, refer to
-                                                // https://web.archive.org/web/20200722211732/https://bitbucket.org/mstrobel/procyon/issues/336/
-                                                // Searching in a WAR or JAR file could pop-up a lot of error dialogs
-                                                // for a lot of class files, we simply say nothing here
-                                                addClassName(entry.getName() + "  (search failed due to known "
-                                                        + "Exception in Procyon <= 0.5.35. Opening file will fail "
-                                                        + "too)");
-                                            } else {
-                                                // all other IllegalStateException cases
-                                                addClassName(entry.getName() + "  (search failed due to Exception. "
-                                                        + "Opening file will fail too)");
-                                                MoWuDecomp.showExceptionDialog("Caught Exception on: " + entry.getName(),
-                                                        ise);
-                                            }
-                                        } catch (Exception e) {
-                                            addClassName(entry.getName() + "  (search failed due to Exception. "
-                                                    + "Opening file will fail too)");
-                                            MoWuDecomp.showExceptionDialog("Caught Exception on: " + entry.getName(), e);
-                                        }
-                                    }
-                                } else {
-
-                                    StringBuilder sb = new StringBuilder();
-                                    double ascii = 0;
-                                    double other = 0;
-                                    try (InputStreamReader inputStreamReader = new InputStreamReader(
-                                            jarFile.getInputStream(entry));
-                                         BufferedReader reader = new BufferedReader(inputStreamReader)) {
-                                        String line;
-                                        while ((line = reader.readLine()) != null) {
-                                            sb.append(line).append("\n");
-                                            // Source: https://stackoverflow.com/a/13533390/5894824
-                                            for (byte b : line.getBytes()) {
-                                                if (b == 0x09 || b == 0x0A || b == 0x0C || b == 0x0D || (b >= 0x20 && b <= 0x7E))
-                                                    ascii++;
-                                                else other++;
-                                            }
-                                        }
-                                    }
-
-                                    if ((other == 0 || ascii / (ascii + other) > 0.5) && search(sb.toString()))
-                                        addClassName(entry.getName());
-                                }
+                                searchSources(inFile, query);
                             }
                         }
                         setSearching(false);
                         if (findButton.getText().equals("Stop")) {
-                            setStatus("Done.");
+                            long elapsed = System.currentTimeMillis() - time;
+                            // after the hits still queued by the workers
+                            SwingUtilities.invokeLater(() -> setStatus("Done: " + classesList.size() + " hit(s) in "
+                                    + elapsed + " ms."));
                             findButton.setText("Find");
-                            locked = false;
                         }
-                        jarFile.close();
                         locked = false;
                     } catch (Exception e) {
                         MoWuDecomp.showExceptionDialog("Exception!", e);
@@ -323,18 +230,130 @@ public class FindAllBox extends JDialog {
 
     }
 
-    private boolean search(String bulk) {
-        String a = textField.getText();
-        String b = bulk;
-        if (regex.isSelected())
-            return Pattern.matches(a, b);
-        if (wholew.isSelected())
-            a = " " + a + " ";
-        if (!mcase.isSelected()) {
-            a = a.toLowerCase();
-            b = b.toLowerCase();
+    private void searchClassNames(File inFile, SearchQuery query) throws IOException {
+        boolean filter = ConfigSaver.getLoadedInstance().getMoWuDecompPreferences().isFilterOutInnerClassEntries();
+        try (SharedArchive archive = SharedArchive.open(inFile)) {
+            ArchiveIndex index = archive.getIndex();
+            int size = index.size();
+            SwingUtilities.invokeLater(() -> initProgressBar(size));
+            StatusUpdates statusUpdates = new StatusUpdates();
+            for (int i = 0; i < size && findButton.getText().equals("Stop"); i++) {
+                String name = index.getName(i);
+                statusUpdates.entryStarted(name);
+                if (filter && index.isInnerClass(i))
+                    continue;
+                if (query.matches(name))
+                    SwingUtilities.invokeLater(() -> addHit(SearchHit.ofEntry(name)));
+            }
+            statusUpdates.flush();
+        }
+    }
+
+    private void searchSources(File inFile, SearchQuery query) throws IOException, InterruptedException {
+        ConfigSaver configSaver = ConfigSaver.getLoadedInstance();
+        MoWuDecompPreferences luytenPrefs = configSaver.getMoWuDecompPreferences();
+        int threads = luytenPrefs.isParallelDecompilationEnabled() ? luytenPrefs.getDecompilerThreadCount() : 1;
+        FindAllSearch search = new FindAllSearch(configSaver.getDecompilerSettings(),
+                configSaver.getDecompilationCache(), threads, luytenPrefs.isFilterOutInnerClassEntries());
+        currentSearch = search;
+        try (SharedArchive archive = SharedArchive.open(inFile)) {
+            // the open handle lets the search reuse the index
+            int size = archive.getIndex().size();
+            SwingUtilities.invokeLater(() -> initProgressBar(size));
+            StatusUpdates statusUpdates = new StatusUpdates();
+            search.search(inFile, query, new FindAllSearch.Listener() {
+                @Override
+                public void entryStarted(String entryName) {
+                    statusUpdates.entryStarted(entryName);
+                }
+
+                @Override
+                public void entryMatched(List<SearchHit> hits) {
+                    SwingUtilities.invokeLater(() -> hits.forEach(FindAllBox.this::addHit));
+                }
+
+                @Override
+                public void entryFailed(String entryName, Throwable error) {
+                    if (error instanceof IllegalStateException && error.getMessage() != null
+                            && error.getMessage().contains("Invalid BootstrapMethods attribute entry: "
+                            + "2 additional arguments required for method "
+                            + "java/lang/invoke/StringConcatFactory.makeConcatWithConstants, "
+                            + "but only 1 specified.")) {
+                        // Known issue of Procyon <= 0.5.35 and fix not yet released, refer to
+                        // https://web.archive.org/web/20200722211732/https://bitbucket.org/mstrobel/procyon/issues/336/
+                        // Searching in a WAR or JAR file could pop-up a lot of error dialogs
+                        // for a lot of class files, we simply say nothing here
+                        SwingUtilities.invokeLater(() -> addHit(new SearchHit(entryName, 0, "(search failed due to known "
+                                + "Exception in Procyon <= 0.5.35. Opening file will fail too)")));
+                    } else {
+                        SwingUtilities.invokeLater(() -> addHit(new SearchHit(entryName, 0, "(search failed due to "
+                                + "Exception. Opening file will fail too)")));
+                        MoWuDecomp.showExceptionDialog("Caught Exception on: " + entryName,
+                                error instanceof Exception ? (Exception) error : new Exception(error));
+                    }
+                }
+            });
+            statusUpdates.flush();
+        } finally {
+            currentSearch = null;
+        }
+    }
+
+    /**
+     * Shows the entry being searched at most every {@link #STATUS_INTERVAL_NANOS},
+     * one event per entry would flood the event queue on large archives.
+     */
+    private final class StatusUpdates {
+
+        private int entries;
+        private String lastEntry;
+        private long lastPosted = System.nanoTime() - STATUS_INTERVAL_NANOS;
+
+        synchronized void entryStarted(String entryName) {
+            entries++;
+            lastEntry = entryName;
+            long now = System.nanoTime();
+            if (now - lastPosted >= STATUS_INTERVAL_NANOS) {
+                lastPosted = now;
+                post();
+            }
+        }
+
+        synchronized void flush() {
+            if (lastEntry != null) {
+                post();
+            }
+        }
+
+        private void post() {
+            String entryName = lastEntry;
+            int count = entries;
+            SwingUtilities.invokeLater(() -> labeledProgressBar.setStatus(entryName, count));
+        }
+    }
+
+    private static void openHit(Model selectedModel, List<Model> models, String entryName, String name) {
+        if (entryName.toLowerCase().endsWith(".class")) {
+            String internalName = StringUtilities.removeRight(entryName, ".class");
+            try {
+                selectedModel.extractClassToTextPane(internalName, name, entryName, null);
+            } catch (Exception ignored) {
+                for (Model m : models) {
+                    try {
+                        m.extractClassToTextPane(internalName, name, entryName, null);
+                    } catch (Exception ignored1) {
+                    }
+                }
+            }
+
+        } else {
+            try (SharedArchive archive = SharedArchive.open(selectedModel.getOpenedFile());
+                 InputStream in = new ByteArrayInputStream(archive.getEntryBytes(entryName))) {
+                selectedModel.extractSimpleFileEntryToTextPane(in, name, entryName);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
-        return b.contains(a);
     }
 
     private void setHideOnEscapeButton() {
@@ -383,8 +402,8 @@ public class FindAllBox extends JDialog {
         labeledProgressBar.setStatus(text);
     }
 
-    public void addClassName(String className) {
-        this.classesList.addElement(className);
+    public void addHit(SearchHit hit) {
+        this.classesList.addElement(hit);
     }
 
     public void initProgressBar(Integer length) {
@@ -16,13 +16,20 @@ public class FindAllLabeledProgressBar implements Serializable {
     }
 
     public void setStatus(String text) {
+        setStatus(text, progressBar.getValue() + 1);
+    }
+
+    /**
+     * @param entries how many entries were searched so far
+     */
+    public void setStatus(String text, int entries) {
         if (text.length() > 25) {
             this.statusLabel.setText("Searching in file: ..." + text.substring(text.length() - 25));
         } else {
             this.statusLabel.setText("Searching in file: " + text);
         }
 
-        progressBar.setValue(progressBar.getValue() + 1);
+        progressBar.setValue(entries);
     }
 
     public void initProgressBar(Integer length) {
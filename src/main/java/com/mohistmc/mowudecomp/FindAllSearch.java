@@ -0,0 +1,151 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.core.StringUtilities;
+import com.strobel.decompiler.DecompilerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the decompiled sources and text resources of an archive in
+ * parallel, for Find All while the {@link SourceIndex} is not ready.
+ * <p>
+ * Every worker decompiles with its own {@link DecompilationContext}, so
+ * the shared settings are never locked and tabs keep decompiling while a
+ * search runs. Entries are searched in no particular order; the hits of
+ * one entry are reported together.
+ */
+public class FindAllSearch {
+
+    /**
+     * Called from the worker threads.
+     */
+    public interface Listener {
+
+        default void entryStarted(String entryName) {
+        }
+
+        void entryMatched(List<SearchHit> hits);
+
+        default void entryFailed(String entryName, Throwable error) {
+        }
+
+    }
+
+    private final DecompilerSettings settings;
+    private final DecompilationCache cache;
+    private final int threads;
+    private final boolean filterOutInnerClassEntries;
+    private volatile boolean cancel;
+
+    /**
+     * @param cache cache to read from and store into, {@code null} disables caching
+     */
+    public FindAllSearch(DecompilerSettings settings, DecompilationCache cache, int threads,
+                         boolean filterOutInnerClassEntries) {
+        this.settings = ProcyonUtils.cloneSettings(settings);
+        this.cache = cache;
+        this.threads = Math.max(1, threads);
+        this.filterOutInnerClassEntries = filterOutInnerClassEntries;
+    }
+
+    public void cancel() {
+        cancel = true;
+    }
+
+    public boolean isCancelled() {
+        return cancel;
+    }
+
+    /**
+     * Blocks until every entry is searched or the search is cancelled.
+     */
+    public void search(File file, SearchQuery query, Listener listener) throws IOException, InterruptedException {
+        try (SharedArchive archive = SharedArchive.open(file)) {
+            ArchiveIndex index = archive.getIndex();
+            ThreadLocal<DecompilationContext> contexts = ThreadLocal.withInitial(
+                    () -> new DecompilationContext(settings, archive.createTypeLoader()));
+            ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "FindAll-Worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                for (int i = 0; i < index.size(); i++) {
+                    int entry = i;
+                    executor.execute(() -> {
+                        if (!cancel) {
+                            searchEntry(archive, contexts.get(), entry, query, listener);
+                        }
+                    });
+                }
+                executor.shutdown();
+                while (!executor.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+                    if (cancel) {
+                        // tasks check the flag, running decompilations are left to finish
+                        executor.shutdownNow();
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private void searchEntry(SharedArchive archive, DecompilationContext context, int entry, SearchQuery query,
+                             Listener listener) {
+        ArchiveIndex index = archive.getIndex();
+        String name = index.getName(entry);
+        listener.entryStarted(name);
+        if (index.isDirectory(entry) || (filterOutInnerClassEntries && index.isInnerClass(entry))) {
+            return;
+        }
+        try {
+            String content;
+            if (index.isClass(entry)) {
+                content = decompile(context, archive, name);
+            } else {
+                byte[] bytes = archive.getEntryBytes(name);
+                content = bytes != null && SourceIndexer.isText(bytes) ? new String(bytes, StandardCharsets.UTF_8) : null;
+            }
+            if (content == null || cancel) {
+                return;
+            }
+            List<SearchHit> hits = new ArrayList<>();
+            query.collectHits(name, content, hits::add);
+            if (!hits.isEmpty()) {
+                listener.entryMatched(hits);
+            }
+        } catch (Exception | StackOverflowError e) {
+            listener.entryFailed(name, e);
+        }
+    }
+
+    private String decompile(DecompilationContext context, SharedArchive archive, String entryName) {
+        TypeDefinition resolvedType = context.resolveType(StringUtilities.removeRight(entryName, ".class"));
+        if (resolvedType == null) {
+            return null;
+        }
+        String cacheKey = cache == null ? null
+                : DecompilationCache.createKey(Decompiler.PROCYON, settings, resolvedType, archive);
+        DecompilationCache.Entry cached = cacheKey == null ? null : cache.get(cacheKey);
+        if (cached != null) {
+            return cached.text();
+        }
+        StringWriter writer = new StringWriter();
+        context.decompile(resolvedType, writer);
+        if (cacheKey != null) {
+            cache.put(cacheKey, new DecompilationCache.Entry(writer.toString(), null, null));
+        }
+        return writer.toString();
+    }
+
+}
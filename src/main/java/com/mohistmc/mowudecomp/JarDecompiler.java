@@ -0,0 +1,442 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.core.StringUtilities;
+import com.strobel.decompiler.DecompilerSettings;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Decompiles whole archives and single class files without touching any UI
+ * or saved preferences. Save All and the command line batch mode both run
+ * on top of it.
+ * <p>
+ * Every worker thread decompiles with its own {@link DecompilationContext};
+ * results are written by the calling thread only, in archive order, so the
+ * output does not depend on the number of threads. Decompilers with an
+ * {@link ArchiveDecompiler} get all classes of an archive in a single run
+ * instead and parallelize internally, if at all.
+ */
+public class JarDecompiler {
+
+    /**
+     * Progress callbacks, always invoked from the thread that called
+     * {@link #decompileArchive(File, File)} or {@link #decompileClassFile(File)}.
+     */
+    public interface Listener {
+
+        default void archiveStarted(File inFile, int entryCount) {
+        }
+
+        /**
+         * @param outputName name of the entry being written, e.g. {@code com/acme/Model.java}
+         * @param position   position of the source entry within the archive (1-based)
+         */
+        default void entryStarted(String outputName, int position) {
+        }
+
+        /**
+         * The entry was still written with whatever the decompiler produced before failing.
+         */
+        default void entryFailed(String entryName, Throwable error) {
+        }
+
+        /**
+         * @param typeStatistics of the type caches of all worker threads together
+         */
+        default void archiveCompleted(File inFile, BoundedMetadataSystem.Statistics typeStatistics) {
+        }
+
+    }
+
+    // below this, workers mostly re-read the types they just evicted
+    private static final long MIN_METADATA_CACHE_BYTES_PER_THREAD = 32L * 1024 * 1024;
+
+    private static final Listener NO_LISTENER = new Listener() {
+    };
+
+    private final Decompiler decompiler;
+    private final DecompilerSettings settings;
+    private final int threads;
+    private final boolean filterOutInnerClassEntries;
+    private Listener listener = NO_LISTENER;
+    private DecompilationCache cache;
+    private long metadataCacheBytes = BoundedMetadataSystem.DEFAULT_MAX_BYTES;
+    private volatile boolean cancel;
+
+    /**
+     * @param settings Procyon settings; also decides the output charset for the other decompilers
+     * @param threads  number of worker threads, 1 decompiles on the calling thread
+     */
+    public JarDecompiler(Decompiler decompiler, DecompilerSettings settings, int threads,
+                         boolean filterOutInnerClassEntries) {
+        this.decompiler = decompiler;
+        this.settings = ProcyonUtils.cloneSettings(settings);
+        this.threads = Math.max(1, threads);
+        this.filterOutInnerClassEntries = filterOutInnerClassEntries;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener == null ? NO_LISTENER : listener;
+    }
+
+    /**
+     * @param cache cache to read from and store into, {@code null} disables caching
+     */
+    public void setCache(DecompilationCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param metadataCacheBytes memory budget of the resolved types, shared by all worker threads
+     *                           but at least 32 MiB per thread
+     */
+    public void setMetadataCacheBytes(long metadataCacheBytes) {
+        this.metadataCacheBytes = metadataCacheBytes;
+    }
+
+    public void cancel() {
+        cancel = true;
+    }
+
+    public boolean isCancelled() {
+        return cancel;
+    }
+
+    /**
+     * Writes a zip with every class of {@code inFile} decompiled to a
+     * {@code .java} entry and every other entry copied as is.
+     */
+    public void decompileArchive(File inFile, File outFile) throws IOException, InterruptedException {
+        ExecutorService executor = null;
+        try (SharedArchive archive = SharedArchive.open(inFile);
+             FileOutputStream dest = new FileOutputStream(outFile);
+             BufferedOutputStream buffDest = new BufferedOutputStream(dest);
+             ZipOutputStream out = new ZipOutputStream(buffDest)) {
+            ArchiveIndex index = archive.getIndex();
+            listener.archiveStarted(inFile, index.size());
+
+            List<DecompilationContext> usedContexts = new CopyOnWriteArrayList<>();
+            if (decompiler.archiveDecompilerSupplier != null) {
+                decompileArchiveBatched(archive, decompiler.archiveDecompilerSupplier.get(), out, usedContexts);
+                listener.archiveCompleted(inFile, getTypeStatistics(usedContexts));
+                return;
+            }
+
+            ClassBytesSource classBytesSource = archive;
+            long metadataCacheBytesPerThread = Math.max(metadataCacheBytes / threads, MIN_METADATA_CACHE_BYTES_PER_THREAD);
+            ThreadLocal<DecompilationContext> contexts = ThreadLocal.withInitial(() -> {
+                DecompilationContext context = new DecompilationContext(settings, metadataCacheBytesPerThread,
+                        archive.createTypeLoader());
+                usedContexts.add(context);
+                return context;
+            });
+            if (threads > 1) {
+                executor = Executors.newFixedThreadPool(threads, runnable -> {
+                    Thread thread = new Thread(runnable, "Decompiler-Worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            Deque<PendingEntry> pending = new ArrayDeque<>();
+            int maxPending = threads * 4;
+
+            Set<String> history = new HashSet<>();
+            for (int i = 0; i < index.size() && !cancel; i++) {
+                if (!isExported(index, i))
+                    continue;
+                String entryName = index.getName(i);
+                int tick = i + 1;
+                if (index.isClass(i)) {
+                    JarEntry etn = new JarEntry(entryName.replace(".class", ".java"));
+                    if (!history.add(etn.getName()))
+                        continue;
+                    String internalName = StringUtilities.removeRight(entryName, ".class");
+                    Callable<DecompiledEntry> task = () -> decompileEntry(contexts.get(), classBytesSource, internalName);
+                    Future<DecompiledEntry> result;
+                    if (executor != null) {
+                        result = executor.submit(task);
+                    } else {
+                        result = CompletableFuture.completedFuture(task.call());
+                    }
+                    pending.add(new PendingEntry(i, etn, result));
+                } else {
+                    pending.add(new PendingEntry(i, null, null));
+                }
+                while (pending.size() >= maxPending && !cancel) {
+                    writePendingEntry(pending.poll(), archive, out, history);
+                }
+            }
+            while (!pending.isEmpty() && !cancel) {
+                writePendingEntry(pending.poll(), archive, out, history);
+            }
+            listener.archiveCompleted(inFile, getTypeStatistics(usedContexts));
+        } catch (IOException | InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Sends every class that is not cached to one {@link ArchiveDecompiler}
+     * run. Resources and cached classes are written first, in archive order,
+     * then the decompiled classes as the decompiler produces them. Classes
+     * the run did not produce are decompiled one by one afterwards.
+     */
+    private void decompileArchiveBatched(SharedArchive archive, ArchiveDecompiler archiveDecompiler,
+                                         ZipOutputStream out, List<DecompilationContext> usedContexts) throws Exception {
+        ArchiveIndex index = archive.getIndex();
+        DecompilationContext context = new DecompilationContext(settings, metadataCacheBytes, archive.createTypeLoader());
+        usedContexts.add(context);
+        Charset charset = settings.isUnicodeOutputEnabled() ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+        List<String> classNames = new ArrayList<>();
+        Map<String, PendingEntry> batch = new LinkedHashMap<>();
+        Map<String, String> cacheKeys = new HashMap<>();
+
+        Set<String> history = new HashSet<>();
+        for (int i = 0; i < index.size() && !cancel; i++) {
+            String entryName = index.getName(i);
+            if (index.isClass(i)) {
+                classNames.add(StringUtilities.removeRight(entryName, ".class"));
+            }
+            if (!isExported(index, i))
+                continue;
+            if (index.isClass(i)) {
+                JarEntry etn = new JarEntry(entryName.replace(".class", ".java"));
+                if (!history.add(etn.getName()))
+                    continue;
+                String internalName = StringUtilities.removeRight(entryName, ".class");
+                if (cache != null) {
+                    TypeDefinition resolvedType = context.resolveType(internalName);
+                    String cacheKey = resolvedType == null ? null
+                            : DecompilationCache.createKey(decompiler, settings, resolvedType, archive);
+                    DecompilationCache.Entry cached = cacheKey == null ? null : cache.get(cacheKey);
+                    if (cached != null) {
+                        writeDecompiledEntry(entryName, etn, i + 1, new DecompiledEntry(cached.text().getBytes(charset), null), out);
+                        continue;
+                    }
+                    if (cacheKey != null) {
+                        cacheKeys.put(internalName, cacheKey);
+                    }
+                }
+                batch.put(internalName, new PendingEntry(i, etn, null));
+            } else {
+                writePendingEntry(new PendingEntry(i, null, null), archive, out, history);
+            }
+        }
+        if (cancel || batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            archiveDecompiler.decompile(archive, classNames, new ArrayList<>(batch.keySet()), threads, () -> cancel,
+                    (internalName, content) -> {
+                        PendingEntry pendingEntry = batch.remove(internalName);
+                        if (pendingEntry == null) {
+                            return;
+                        }
+                        String cacheKey = cacheKeys.get(internalName);
+                        if (cacheKey != null) {
+                            cache.put(cacheKey, new DecompilationCache.Entry(content, null, null));
+                        }
+                        try {
+                            writeDecompiledEntry(index.getName(pendingEntry.index()), pendingEntry.javaEntry(),
+                                    pendingEntry.index() + 1, new DecompiledEntry(content.getBytes(charset), null), out);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (CancellationException e) {
+            return;
+        } catch (Exception | StackOverflowError e) {
+            // classes not produced by the run are decompiled one by one below
+            System.err.println("[JarDecompiler]: " + decompiler.getProperName() + " failed on " + archive.getPath() + ": " + e);
+        }
+
+        for (PendingEntry pendingEntry : batch.values()) {
+            if (cancel) {
+                return;
+            }
+            String entryName = index.getName(pendingEntry.index());
+            String internalName = StringUtilities.removeRight(entryName, ".class");
+            writeDecompiledEntry(entryName, pendingEntry.javaEntry(), pendingEntry.index() + 1,
+                    decompileEntry(context, archive, internalName), out);
+        }
+    }
+
+    private static BoundedMetadataSystem.Statistics getTypeStatistics(List<DecompilationContext> contexts) {
+        BoundedMetadataSystem.Statistics statistics = BoundedMetadataSystem.Statistics.EMPTY;
+        for (DecompilationContext context : contexts) {
+            statistics = statistics.plus(context.getMetadataSystem().getStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * Decompiles a standalone class file; nested types next to it are found
+     * through Procyon's file system lookup.
+     */
+    public String decompileClassFile(File inFile) throws Exception {
+        DecompilationContext context = new DecompilationContext(settings, metadataCacheBytes);
+        TypeDefinition resolvedType = context.resolveType(inFile.getCanonicalPath());
+        if (resolvedType == null) {
+            throw new Exception("Unable to resolve type.");
+        }
+        listener.entryStarted(inFile.getName(), 1);
+        if (decompiler == Decompiler.PROCYON) {
+            StringWriter stringwriter = new StringWriter();
+            context.decompile(resolvedType, stringwriter);
+            return stringwriter.toString();
+        }
+        byte[] bytecode = Files.readAllBytes(inFile.toPath());
+        return generateContent(resolvedType, internalName -> bytecode);
+    }
+
+    private DecompiledEntry decompileEntry(DecompilationContext context, ClassBytesSource classBytesSource,
+                                           String internalName) {
+        Charset charset = settings.isUnicodeOutputEnabled() ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+        StringWriter writer = new StringWriter();
+        try {
+            TypeDefinition resolvedType = context.resolveType(internalName);
+            if (resolvedType == null) {
+                throw new Exception("Unable to resolve type.");
+            }
+            String cacheKey = cache == null ? null
+                    : DecompilationCache.createKey(decompiler, settings, resolvedType, classBytesSource);
+            DecompilationCache.Entry cached = cacheKey == null ? null : cache.get(cacheKey);
+            if (cached != null) {
+                writer.write(cached.text());
+            } else {
+                if (decompiler == Decompiler.PROCYON) {
+                    context.decompile(resolvedType, writer);
+                } else {
+                    writer.write(generateContent(resolvedType, classBytesSource));
+                }
+                if (cacheKey != null) {
+                    cache.put(cacheKey, new DecompilationCache.Entry(writer.toString(), null, null));
+                }
+            }
+            return new DecompiledEntry(writer.toString().getBytes(charset), null);
+        } catch (Exception | StackOverflowError e) {
+            // keep whatever was produced before the failure, like a direct write would
+            return new DecompiledEntry(writer.toString().getBytes(charset), e);
+        }
+    }
+
+    private String generateContent(TypeDefinition type, ClassBytesSource classBytesSource) {
+        LinkProvider linkProvider = decompiler.linkProviderSupplier.get();
+        linkProvider.setType(type, classBytesSource);
+        linkProvider.generateContent();
+        String content = linkProvider.getTextContent();
+        if (content == null) {
+            throw new IllegalStateException(decompiler.getProperName() + " produced no output for " + type.getInternalName());
+        }
+        return content;
+    }
+
+    private boolean isExported(ArchiveIndex index, int i) {
+        return !index.isDirectory(i) && !(filterOutInnerClassEntries && index.isInnerClass(i));
+    }
+
+    private void writePendingEntry(PendingEntry pendingEntry, SharedArchive archive, ZipOutputStream out,
+                                   Set<String> history) throws Exception {
+        ArchiveIndex index = archive.getIndex();
+        int i = pendingEntry.index();
+        String entryName = index.getName(i);
+        if (pendingEntry.result() != null) {
+            DecompiledEntry decompiled;
+            try {
+                decompiled = pendingEntry.result().get();
+            } catch (ExecutionException e) {
+                decompiled = new DecompiledEntry(new byte[0], e.getCause());
+            }
+            writeDecompiledEntry(entryName, pendingEntry.javaEntry(), i + 1, decompiled, out);
+        } else {
+            listener.entryStarted(entryName, i + 1);
+            try {
+                JarEntry etn = new JarEntry(entryName);
+                if (entryName.endsWith(".java"))
+                    etn = new JarEntry(entryName.replace(".java", ".src.java"));
+                if (index.getMethod(i) == ZipEntry.STORED && index.getSize(i) >= 0) {
+                    // copy stored entries as they are, without deflating them on the way
+                    etn.setMethod(ZipEntry.STORED);
+                    etn.setSize(index.getSize(i));
+                    etn.setCompressedSize(index.getSize(i));
+                    etn.setCrc(index.getCrc(i) & 0xFFFFFFFFL);
+                }
+                if (history.add(etn.getName())) {
+                    out.putNextEntry(etn);
+                    try {
+                        archive.transferEntry(entryName, out);
+                    } finally {
+                        out.closeEntry();
+                    }
+                }
+            } catch (ZipException ze) {
+                if (!ze.getMessage().contains("duplicate")) {
+                    throw ze;
+                }
+            }
+        }
+    }
+
+    private void writeDecompiledEntry(String entryName, JarEntry etn, int tick, DecompiledEntry decompiled,
+                                      ZipOutputStream out) throws IOException {
+        listener.entryStarted(etn.getName(), tick);
+        out.putNextEntry(etn);
+        try {
+            out.write(decompiled.content());
+        } finally {
+            out.closeEntry();
+        }
+        if (decompiled.error() != null) {
+            listener.entryFailed(entryName, decompiled.error());
+        }
+    }
+
+    private record DecompiledEntry(byte[] content, Throwable error) {
+    }
+
+    /**
+     * @param index position of the source entry in the {@link ArchiveIndex}
+     */
+    private record PendingEntry(int index, JarEntry javaEntry, Future<DecompiledEntry> result) {
+    }
+
+}
@@ -1,13 +1,13 @@
 package com.mohistmc.mowudecomp;
 
 import com.strobel.assembler.metadata.TypeDefinition;
-import kotlin.io.FilesKt;
-import kotlin.jvm.internal.Intrinsics;
 import org.jetbrains.kotlin.kotlinp.Kotlinp;
-import org.jetbrains.kotlin.kotlinp.KotlinpException;
 import org.jetbrains.kotlin.kotlinp.KotlinpSettings;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.util.Map;
 import java.util.Set;
 
@@ -26,25 +26,32 @@ public class KotlinpLinkProvider implements LinkProvider {
     }
     
     @Override
-    public void setType(TypeDefinition type, Model model) {
+    public void setType(TypeDefinition type, ClassBytesSource classBytesSource) {
         this.type = type;
-        this.bytecode = ProcyonUtils.getContent(type, model);
+        this.bytecode = classBytesSource.getClassBytes(type.getInternalName());
     }
     
+    @Override
+    public void setContent(String textContent, Map<String, Selection> definitionToSelectionMap,
+                           Map<String, Set<Selection>> referenceToSelectionsMap) {
+        this.content = textContent;
+    }
+
     @Override
     public void generateContent() {
         Kotlinp kotlinp = new Kotlinp(new KotlinpSettings(true));
-        File singletonJar = ProcyonUtils.createSingletonTempJar(type.getInternalName() + ".class", bytecode);
-
-        String var10 = FilesKt.getExtension(singletonJar);
-        if (Intrinsics.areEqual(var10, "class")) {
-            content = kotlinp.renderClassFile$kotlinp(kotlinp.readClassFile$kotlinp(singletonJar));
-        } else {
-            if (!Intrinsics.areEqual(var10, "kotlin_module")) {
-                throw new KotlinpException("only .class and .kotlin_module files are supported");
+        // kotlinp only reads class files from disk
+        File classFile = null;
+        try {
+            classFile = File.createTempFile("mowudecomp", ".class");
+            Files.write(classFile.toPath(), bytecode);
+            content = kotlinp.renderClassFile$kotlinp(kotlinp.readClassFile$kotlinp(classFile));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (classFile != null) {
+                classFile.delete();
             }
-
-            content = kotlinp.renderModuleFile$kotlinp(kotlinp.readModuleFile$kotlinp(singletonJar));
         }
     }
     
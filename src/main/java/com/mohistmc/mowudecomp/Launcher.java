@@ -0,0 +1,39 @@
+package com.mohistmc.mowudecomp;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Entry point of the jar and the executable. Decides what a launch is before
+ * {@link MoWuDecomp}, whose verification alone loads Swing and DarkLaf, is
+ * touched: a batch run, a hand-off of files to the running instance, or a
+ * normal start.
+ */
+public final class Launcher {
+
+    // %USERPROFILE%\.mowudecomp of the launch4j jvmOptions, the JVM writes the CDS archive there on exit
+    // but does not create the directory
+    private static final File CDS_ARCHIVE_DIRECTORY = new File(System.getProperty("user.home"), ".mowudecomp");
+
+    private Launcher() {
+    }
+
+    public static void main(String[] args) {
+        StartupTimeline.mark("main");
+        // before the batch run and the hand-off too, the archive is written whatever the launch was
+        if (!CDS_ARCHIVE_DIRECTORY.isDirectory() && !CDS_ARCHIVE_DIRECTORY.mkdirs()) {
+            System.err.println("[Launcher]: cannot create " + CDS_ARCHIVE_DIRECTORY);
+        }
+        if (MoWuDecompCLI.isCliRequest(args)) {
+            System.exit(MoWuDecompCLI.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        // e.g. a file manager launching once per double-clicked file
+        if (args.length > 0 && !args[0].startsWith("-")
+                && SingleInstance.handOff(Arrays.stream(args).map(File::new).toList())) {
+            StartupTimeline.mark("handed off to the running instance");
+            return;
+        }
+        MoWuDecomp.main(args);
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.mohistmc.mowudecomp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The links of a decompiled text, for finding the link under the mouse.
+ * <p>
+ * Links are kept in primitive arrays sorted by their start offset, each
+ * pointing into a table of the distinct link ids, so finding the link at
+ * an offset is a binary search that does not allocate. Whether an id is
+ * navigable and its description are looked up once and kept in the table.
+ * As with the {@code TreeMap<Selection, String>} it replaces, of links
+ * starting at the same offset a reference wins over a definition.
+ */
+public final class LinkIndex {
+
+    public static final LinkIndex EMPTY = build(Map.of(), Map.of());
+
+    private static final byte UNKNOWN = 0;
+    private static final byte NAVIGABLE = 1;
+    private static final byte NOT_NAVIGABLE = 2;
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] ids;
+    private final String[] uniqueStrs;
+    // filled on first use, racing threads compute the same values
+    private final byte[] navigability;
+    private final String[] descriptions;
+
+    private LinkIndex(int[] starts, int[] ends, int[] ids, String[] uniqueStrs) {
+        this.starts = starts;
+        this.ends = ends;
+        this.ids = ids;
+        this.uniqueStrs = uniqueStrs;
+        navigability = new byte[uniqueStrs.length];
+        descriptions = new String[uniqueStrs.length];
+    }
+
+    public static LinkIndex build(Map<String, Selection> definitions, Map<String, Set<Selection>> references) {
+        int count = definitions.size();
+        for (Set<Selection> selections : references.values()) {
+            count += selections.size();
+        }
+        // start offset in the high bits, the order of adding in the low bits to let the last one win
+        long[] keys = new long[count];
+        int[] addedEnds = new int[count];
+        int[] addedIds = new int[count];
+        Map<String, Integer> idByUniqueStr = new HashMap<>();
+        int added = 0;
+        for (Map.Entry<String, Selection> entry : definitions.entrySet()) {
+            int id = idByUniqueStr.computeIfAbsent(entry.getKey(), key -> idByUniqueStr.size());
+            Selection selection = entry.getValue();
+            keys[added] = ((long) selection.from() << 32) | added;
+            addedEnds[added] = selection.to();
+            addedIds[added] = id;
+            added++;
+        }
+        for (Map.Entry<String, Set<Selection>> entry : references.entrySet()) {
+            int id = idByUniqueStr.computeIfAbsent(entry.getKey(), key -> idByUniqueStr.size());
+            for (Selection selection : entry.getValue()) {
+                keys[added] = ((long) selection.from() << 32) | added;
+                addedEnds[added] = selection.to();
+                addedIds[added] = id;
+                added++;
+            }
+        }
+        Arrays.sort(keys);
+
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        int[] ids = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int start = (int) (keys[i] >>> 32);
+            int addedIndex = (int) keys[i];
+            if (size > 0 && starts[size - 1] == start) {
+                size--;
+            }
+            starts[size] = start;
+            ends[size] = addedEnds[addedIndex];
+            ids[size] = addedIds[addedIndex];
+            size++;
+        }
+        String[] uniqueStrs = new String[idByUniqueStr.size()];
+        idByUniqueStr.forEach((uniqueStr, id) -> uniqueStrs[id] = uniqueStr);
+        return new LinkIndex(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size), Arrays.copyOf(ids, size),
+                uniqueStrs);
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * @return the link that covers {@code offset}, or {@code -1}
+     */
+    public int find(int offset) {
+        int low = 0;
+        int high = starts.length - 1;
+        int floor = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= offset) {
+                floor = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return floor >= 0 && ends[floor] > offset ? floor : -1;
+    }
+
+    public int getStart(int link) {
+        return starts[link];
+    }
+
+    public int getEnd(int link) {
+        return ends[link];
+    }
+
+    public String getUniqueStr(int link) {
+        return uniqueStrs[ids[link]];
+    }
+
+    public boolean isNavigable(int link, Predicate<String> isLinkNavigable) {
+        int id = ids[link];
+        byte navigable = navigability[id];
+        if (navigable == UNKNOWN) {
+            navigable = isLinkNavigable.test(uniqueStrs[id]) ? NAVIGABLE : NOT_NAVIGABLE;
+            navigability[id] = navigable;
+        }
+        return navigable == NAVIGABLE;
+    }
+
+    /**
+     * @return the description, or {@code null} if {@code getLinkDescription} found none
+     */
+    public String getDescription(int link, Function<String, String> getLinkDescription) {
+        int id = ids[link];
+        String description = descriptions[id];
+        if (description == null) {
+            description = getLinkDescription.apply(uniqueStrs[id]);
+            // "" remembers that there is none
+            description = description == null || description.isBlank() ? "" : description;
+            descriptions[id] = description;
+        }
+        return description.isEmpty() ? null : description;
+    }
+
+}
@@ -4,11 +4,27 @@ import com.strobel.assembler.metadata.TypeDefinition;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface LinkProvider {
 
     void generateContent();
 
+    /**
+     * Receives the text of {@link #generateContent()} in order while it is
+     * written, on the decompiling thread. No decompiler writes before it
+     * has analysed the whole class: Procyon passes lines of its final
+     * write-out, CFR and Vineflower the class as one chunk, others nothing.
+     */
+    default void setContentListener(Consumer<String> contentListener) {
+    }
+
+    /**
+     * Restores output of an earlier {@link #generateContent()}, e.g. from the {@link DecompilationCache}.
+     */
+    void setContent(String textContent, Map<String, Selection> definitionToSelectionMap,
+                    Map<String, Set<Selection>> referenceToSelectionsMap);
+
     String getTextContent();
 
     void processLinks();
@@ -21,6 +37,6 @@ public interface LinkProvider {
 
     String getLinkDescription(String uniqueStr);
 
-    void setType(TypeDefinition type, Model model);
+    void setType(TypeDefinition type, ClassBytesSource classBytesSource);
 
 }
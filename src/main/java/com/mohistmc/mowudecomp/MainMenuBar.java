@@ -69,6 +69,9 @@ public class MainMenuBar extends JMenuBar {
     private JCheckBoxMenuItem filterOutInnerClassEntries;
     private JCheckBoxMenuItem singleClickOpenEnabled;
     private JCheckBoxMenuItem exitByEscEnabled;
+    private JCheckBoxMenuItem parallelDecompilationEnabled;
+    private JCheckBoxMenuItem decompilationCacheEnabled;
+    private JCheckBoxMenuItem findAllIndexEnabled;
     private final DecompilerSettings settings;
     private final MoWuDecompPreferences luytenPrefs;
 
@@ -368,14 +371,59 @@ public class MainMenuBar extends JMenuBar {
         exitByEscEnabled.setSelected(luytenPrefs.isExitByEscEnabled());
         exitByEscEnabled.addActionListener(e -> luytenPrefs.setExitByEscEnabled(exitByEscEnabled.isSelected()));
         operationMenu.add(exitByEscEnabled);
+
+        parallelDecompilationEnabled = new JCheckBoxMenuItem("并行反编译");
+        parallelDecompilationEnabled.setSelected(luytenPrefs.isParallelDecompilationEnabled());
+        parallelDecompilationEnabled.addActionListener(e -> luytenPrefs.setParallelDecompilationEnabled(parallelDecompilationEnabled.isSelected()));
+        operationMenu.add(parallelDecompilationEnabled);
+
+        JMenu decompilationJobsMenu = new JMenu("同时进行的后台反编译");
+        ButtonGroup decompilationJobsGroup = new ButtonGroup();
+        for (int jobs : new int[]{0, 1, 2, 4, 8}) {
+            JRadioButtonMenuItem menuItem = new JRadioButtonMenuItem(jobs == 0 ? "自动" : String.valueOf(jobs));
+            menuItem.setSelected(jobs == luytenPrefs.getDecompilationJobs());
+            menuItem.addActionListener(e -> {
+                luytenPrefs.setDecompilationJobs(jobs);
+                int jobCount = luytenPrefs.getDecompilationJobCount();
+                DecompilationScheduler.getInstance().setMaxConcurrentJobs(jobCount);
+                for (Model model : mainWindow.getModels()) {
+                    model.setMaxDecompilationContexts(jobCount);
+                }
+            });
+            decompilationJobsGroup.add(menuItem);
+            decompilationJobsMenu.add(menuItem);
+        }
+        operationMenu.add(decompilationJobsMenu);
+
+        decompilationCacheEnabled = new JCheckBoxMenuItem("反编译缓存");
+        decompilationCacheEnabled.setSelected(luytenPrefs.isDecompilationCacheEnabled());
+        decompilationCacheEnabled.addActionListener(e -> luytenPrefs.setDecompilationCacheEnabled(decompilationCacheEnabled.isSelected()));
+        operationMenu.add(decompilationCacheEnabled);
+
+        JMenuItem clearDecompilationCache = new JMenuItem("清除反编译缓存");
+        clearDecompilationCache.addActionListener(e -> new Thread(() -> {
+            DecompilationCache cache = ConfigSaver.getLoadedInstance().getDecompilationCache();
+            if (cache == null) {
+                cache = new DecompilationCache(DecompilationCache.DEFAULT_DIRECTORY, 0);
+            }
+            cache.clear();
+        }).start());
+        operationMenu.add(clearDecompilationCache);
+
+        findAllIndexEnabled = new JCheckBoxMenuItem("后台建立全文索引");
+        findAllIndexEnabled.setSelected(luytenPrefs.isFindAllIndexEnabled());
+        findAllIndexEnabled.addActionListener(e -> luytenPrefs.setFindAllIndexEnabled(findAllIndexEnabled.isSelected()));
+        operationMenu.add(findAllIndexEnabled);
     }
 
     private void buildSettingsMenu(JMenu settingsMenu) {
         settingsMenu.removeAll();
-        ActionListener settingsChanged = e -> new Thread(() -> {
-            populateSettingsFromSettingsMenu();
-            mainWindow.onSettingsChanged();
-        }).start();
+        // a job waiting for its turn reads all the boxes, clicking several in a row reopens the tabs once
+        ActionListener settingsChanged = e -> DecompilationScheduler.getInstance().submit(
+                DecompilationScheduler.Priority.FOREGROUND, settingsMenu, () -> {
+                    populateSettingsFromSettingsMenu();
+                    mainWindow.onSettingsChanged();
+                });
         flattenSwitchBlocks = new JCheckBoxMenuItem("Flatten Switch Blocks");
         flattenSwitchBlocks.setSelected(settings.getFlattenSwitchBlocks());
         flattenSwitchBlocks.addActionListener(settingsChanged);
@@ -540,8 +588,8 @@ public class MainMenuBar extends JMenuBar {
     }
 
     private void populateSettingsFromSettingsMenu() {
-        // synchronized: do not disturb decompiler at work (synchronize every
-        // time before run decompiler)
+        // synchronized: the decompilation contexts copy the settings under
+        // the same lock, see ProcyonUtils.copySettings
         synchronized (settings) {
             settings.setFlattenSwitchBlocks(flattenSwitchBlocks.isSelected());
             settings.setForceExplicitImports(forceExplicitImports.isSelected());
@@ -146,14 +146,17 @@ public class MainWindow extends JFrame {
             this.setExitOnEscWhenEnabled(jarModel);
         }
 
-        if (jarModel != null && (fileFromCommandLine.getName().toLowerCase().endsWith(".jar")
-                || fileFromCommandLine.getName().toLowerCase().endsWith(".zip"))) {
-            jarModel.startWarmUpThread();
-        }
-
         if (RecentFiles.load() > 0) mainMenuBar.updateRecentFiles();
     }
 
+    /**
+     * Starts what the first window does not need, once it is on screen.
+     */
+    public void onShown() {
+        fileDialog.preload();
+        WarmUp.start(configSaver.getDecompilerSettings(), luytenPrefs.getDecompiler());
+    }
+
     private void createDefaultTab() {
         jarsTabbedPane.addTab(DEFAULT_TAB, new Model(this));
     }
@@ -238,8 +241,8 @@ public class MainWindow extends JFrame {
         String fileName = openedFile.getName();
         if (fileName.endsWith(".class")) {
             fileName = fileName.replace(".class", ".java");
-        } else if (fileName.toLowerCase().endsWith(".jar")) {
-            fileName = "decompiled-" + fileName.replaceAll("\\.[jJ][aA][rR]", ".zip");
+        } else if (ArchiveTreeModel.isArchive(fileName) && !fileName.toLowerCase().endsWith(".zip")) {
+            fileName = "decompiled-" + fileName.replaceAll("\\.(?i:jar|war|ear)$", ".zip");
         } else {
             fileName = "saved-" + fileName;
         }
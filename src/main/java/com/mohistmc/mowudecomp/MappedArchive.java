@@ -0,0 +1,519 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.ir.ConstantPool;
+import com.strobel.assembler.metadata.Buffer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only zip/jar reader working on a memory mapping of the archive.
+ * <p>
+ * The central directory is parsed once into flat offset tables. Stored
+ * entries are returned as slices of the mapping, deflated entries are
+ * inflated straight from it, so reading a class costs no system call and
+ * at most one allocation of its uncompressed size. Unlike {@link java.util.jar.JarFile}
+ * streams and Procyon's {@code JarTypeLoader} it is safe for concurrent use.
+ * <p>
+ * Files larger than one mapping are mapped in overlapping segments; the few
+ * entries that do not fit into one segment are read with a positional read.
+ * Mappings are released by the garbage collector after {@link #close()}.
+ */
+public final class MappedArchive implements MoWuDecompTypeLoader.PackageIndexed, ClassBytesSource, Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final long SEGMENT_OVERLAP = 64L << 20;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final FileChannel channel;
+    private final ByteBuffer[] segments;
+
+    private final String[] names;
+    private final long[] localHeaderOffsets;
+    private final long[] compressedSizes;
+    private final long[] sizes;
+    private final int[] crcs;
+    private final short[] methods;
+    private final Map<String, Integer> indexByName;
+    private final Map<String, String> knownMappings = new ConcurrentHashMap<>();
+    private volatile Set<String> packages;
+
+    public MappedArchive(File file) throws IOException {
+        this.name = file.getPath();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        CentralDirectory directory;
+        // closed on every failure, also when the file is no archive this reader can parse
+        try {
+            long length = channel.size();
+            int count = (int) Math.max(1, (length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            segments = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * SEGMENT_SIZE;
+                long size = Math.min(length - start, SEGMENT_SIZE + SEGMENT_OVERLAP);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            directory = readCentralDirectory(name, segments, channel);
+        } catch (IOException | RuntimeException | Error e) {
+            channel.close();
+            throw e;
+        }
+        names = directory.names;
+        localHeaderOffsets = directory.localHeaderOffsets;
+        compressedSizes = directory.compressedSizes;
+        sizes = directory.sizes;
+        crcs = directory.crcs;
+        methods = directory.methods;
+        indexByName = directory.indexByName;
+    }
+
+    /**
+     * Reads an archive held in memory, e.g. a jar nested in another archive.
+     */
+    public MappedArchive(String name, ByteBuffer data) throws IOException {
+        this.name = name;
+        this.channel = null;
+        this.segments = new ByteBuffer[]{data.slice().order(ByteOrder.LITTLE_ENDIAN)};
+        CentralDirectory directory = readCentralDirectory(name, segments, null);
+        names = directory.names;
+        localHeaderOffsets = directory.localHeaderOffsets;
+        compressedSizes = directory.compressedSizes;
+        sizes = directory.sizes;
+        crcs = directory.crcs;
+        methods = directory.methods;
+        indexByName = directory.indexByName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of entries, directories included
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param index position in the central directory
+     */
+    public String getEntryName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @param index position in the central directory
+     */
+    public long getEntrySize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * @param index position in the central directory
+     */
+    public int getEntryCrc(int index) {
+        return crcs[index];
+    }
+
+    /**
+     * @param index position in the central directory
+     * @return the compression method, e.g. {@link java.util.zip.ZipEntry#DEFLATED}
+     */
+    public int getEntryMethod(int index) {
+        return methods[index];
+    }
+
+    public boolean contains(String entryName) {
+        return indexByName.containsKey(entryName);
+    }
+
+    /**
+     * @return the uncompressed size of the entry, or -1 if there is no such entry
+     */
+    public long getEntrySize(String entryName) {
+        Integer index = indexByName.get(entryName);
+        return index == null ? -1 : sizes[index];
+    }
+
+    /**
+     * @return a read-only buffer with the uncompressed content, or {@code null} if there is no such entry
+     */
+    public ByteBuffer getEntry(String entryName) throws IOException {
+        Integer index = indexByName.get(entryName);
+        if (index == null) {
+            return null;
+        }
+        ByteBuffer data = rawData(index);
+        if (methods[index] == STORED) {
+            return data.asReadOnlyBuffer();
+        }
+        byte[] content = new byte[checkedSize(index)];
+        inflate(index, data, content, content.length);
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the uncompressed content, or {@code null} if there is no such entry
+     */
+    public byte[] getEntryBytes(String entryName) throws IOException {
+        Integer index = indexByName.get(entryName);
+        if (index == null) {
+            return null;
+        }
+        byte[] content = new byte[checkedSize(index)];
+        readInto(index, content, content.length);
+        return content;
+    }
+
+    /**
+     * Copies the uncompressed content of an entry without materializing it.
+     *
+     * @return {@code false} if there is no such entry
+     */
+    public boolean transferEntry(String entryName, OutputStream out) throws IOException {
+        Integer index = indexByName.get(entryName);
+        if (index == null) {
+            return false;
+        }
+        ByteBuffer data = rawData(index);
+        byte[] chunk = new byte[(int) Math.min(COPY_BUFFER_SIZE, Math.max(1, sizes[index]))];
+        if (methods[index] == STORED) {
+            while (data.hasRemaining()) {
+                int count = Math.min(chunk.length, data.remaining());
+                data.get(chunk, 0, count);
+                out.write(chunk, 0, count);
+            }
+            return true;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            while (!inflater.finished()) {
+                int count = inflater.inflate(chunk);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated entry " + entryName + " in " + name);
+                }
+                out.write(chunk, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid entry " + entryName + " in " + name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] getClassBytes(String internalName) {
+        try {
+            return getEntryBytes(internalName + ".class");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the packages of all class entries
+     */
+    @Override
+    public Set<String> getPackages() {
+        Set<String> result = packages;
+        if (result == null) {
+            result = new HashSet<>();
+            for (String entryName : names) {
+                if (entryName.endsWith(".class")) {
+                    int slash = entryName.lastIndexOf('/');
+                    result.add(slash < 0 ? "" : entryName.substring(0, slash));
+                }
+            }
+            packages = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean tryLoadType(String internalName, Buffer buffer) {
+        Integer index = indexByName.get(internalName + ".class");
+        if (index == null) {
+            // same fallback as JarTypeLoader: a class stored under a path not matching its name
+            String mappedName = knownMappings.get(internalName);
+            return mappedName != null && !mappedName.equals(internalName) && tryLoadType(mappedName, buffer);
+        }
+        try {
+            int size = checkedSize(index);
+            // a reused buffer may have a larger array than the entry
+            buffer.reset(size);
+            readInto(index, buffer.array(), size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.position(0);
+        String actualName = getInternalNameFromClassFile(buffer);
+        if (actualName != null && !actualName.equals(internalName)) {
+            knownMappings.put(actualName, internalName);
+        }
+        return true;
+    }
+
+    private static String getInternalNameFromClassFile(Buffer b) {
+        try {
+            long magic = b.readInt() & 0xFFFFFFFFL;
+            if (magic != 0xCAFEBABEL) {
+                return null;
+            }
+            b.readUnsignedShort();
+            b.readUnsignedShort();
+            ConstantPool constantPool = ConstantPool.read(b);
+            b.readUnsignedShort();
+            ConstantPool.TypeInfoEntry thisClass = (ConstantPool.TypeInfoEntry) constantPool.getEntry(b.readUnsignedShort());
+            return thisClass.getName();
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            b.position(0);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(segments, null);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void readInto(int index, byte[] content, int length) throws IOException {
+        ByteBuffer data = rawData(index);
+        if (methods[index] == STORED) {
+            data.get(content, 0, length);
+        } else {
+            inflate(index, data, content, length);
+        }
+    }
+
+    private void inflate(int index, ByteBuffer data, byte[] content, int length) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            int offset = 0;
+            while (offset < length) {
+                int count = inflater.inflate(content, offset, length - offset);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated entry " + names[index] + " in " + name);
+                }
+                offset += count;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid entry " + names[index] + " in " + name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private int checkedSize(int index) throws ZipException {
+        if (sizes[index] > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry too large: " + names[index] + " in " + name);
+        }
+        return (int) sizes[index];
+    }
+
+    /**
+     * @return the compressed data of an entry, positioned at 0
+     */
+    private ByteBuffer rawData(int index) throws IOException {
+        if (methods[index] != STORED && methods[index] != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + methods[index] + " of "
+                    + names[index] + " in " + name);
+        }
+        long headerOffset = localHeaderOffsets[index];
+        ByteBuffer header = slice(segments, channel, headerOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header of " + names[index] + " in " + name);
+        }
+        long dataOffset = headerOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        long length = methods[index] == STORED ? sizes[index] : compressedSizes[index];
+        if (length > Integer.MAX_VALUE) {
+            throw new ZipException("Entry too large: " + names[index] + " in " + name);
+        }
+        return slice(segments, channel, dataOffset, (int) length);
+    }
+
+    /**
+     * @return a little-endian buffer over {@code [offset, offset + length)} of the archive
+     */
+    private static ByteBuffer slice(ByteBuffer[] segments, FileChannel channel, long offset, int length)
+            throws IOException {
+        int segment = (int) (offset / SEGMENT_SIZE);
+        long segmentStart = segment * SEGMENT_SIZE;
+        if (segment < segments.length && segments[segment] != null
+                && offset + length <= segmentStart + segments[segment].capacity()) {
+            return segments[segment].slice((int) (offset - segmentStart), length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (channel == null || segment >= segments.length) {
+            throw new ZipException("Entry data out of bounds at offset " + offset);
+        }
+        // straddles two mappings: fall back to a copy
+        ByteBuffer copy = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (copy.hasRemaining()) {
+            if (channel.read(copy, offset + copy.position()) < 0) {
+                throw new ZipException("Unexpected end of archive at offset " + (offset + copy.position()));
+            }
+        }
+        return copy.flip();
+    }
+
+    private static CentralDirectory readCentralDirectory(String name, ByteBuffer[] segments, FileChannel channel)
+            throws IOException {
+        long length = channel != null ? channel.size() : segments[0].capacity();
+        if (length < END_HEADER_SIZE) {
+            throw new ZipException("Not a zip file: " + name);
+        }
+        // the end record is followed by a comment of at most 64 KiB
+        int tailLength = (int) Math.min(length, END_HEADER_SIZE + 0xFFFF);
+        long tailStart = length - tailLength;
+        ByteBuffer tail = slice(segments, channel, tailStart, tailLength);
+        int end = -1;
+        for (int i = tailLength - END_HEADER_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE && i + END_HEADER_SIZE + (tail.getShort(i + 20) & 0xFFFF) <= tailLength) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("Zip END header not found: " + name);
+        }
+        long entryCount = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+        long locatorOffset = tailStart + end - 20;
+        if (locatorOffset >= 0) {
+            ByteBuffer locator = slice(segments, channel, locatorOffset, 20);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                long zip64EndOffset = locator.getLong(8);
+                ByteBuffer zip64End = slice(segments, channel, zip64EndOffset, 56);
+                if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException("Invalid zip64 END header: " + name);
+                }
+                entryCount = zip64End.getLong(32);
+                directorySize = zip64End.getLong(40);
+                directoryOffset = zip64End.getLong(48);
+            }
+        }
+        if (entryCount > Integer.MAX_VALUE - 8 || directorySize > Integer.MAX_VALUE
+                || directoryOffset + directorySize > length) {
+            throw new ZipException("Invalid central directory: " + name);
+        }
+
+        ByteBuffer directory = slice(segments, channel, directoryOffset, (int) directorySize);
+        int count = (int) entryCount;
+        CentralDirectory result = new CentralDirectory(count);
+        int position = 0;
+        byte[] nameBytes = new byte[256];
+        for (int i = 0; i < count; i++) {
+            if (position + 46 > directory.limit() || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry " + i + ": " + name);
+            }
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            int crc = directory.getInt(position + 16);
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+            if (nameBytes.length < nameLength) {
+                nameBytes = new byte[nameLength];
+            }
+            directory.get(position + 46, nameBytes, 0, nameLength);
+            String entryName = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+
+            // zip64 extended information: only the fields saturated in the header are present
+            int extra = position + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int tag = directory.getShort(extra) & 0xFFFF;
+                int dataSize = directory.getShort(extra + 2) & 0xFFFF;
+                if (tag == 0x0001) {
+                    int field = extra + 4;
+                    if (size == 0xFFFFFFFFL && field + 8 <= extra + 4 + dataSize) {
+                        size = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL && field + 8 <= extra + 4 + dataSize) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL && field + 8 <= extra + 4 + dataSize) {
+                        localHeaderOffset = directory.getLong(field);
+                    }
+                    break;
+                }
+                extra += 4 + dataSize;
+            }
+
+            result.names[i] = entryName;
+            result.localHeaderOffsets[i] = localHeaderOffset;
+            result.compressedSizes[i] = compressedSize;
+            result.sizes[i] = size;
+            result.crcs[i] = crc;
+            result.methods[i] = (short) method;
+            // like ZipFile, the last of duplicate names wins
+            result.indexByName.put(entryName, i);
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    private static final class CentralDirectory {
+
+        private final String[] names;
+        private final long[] localHeaderOffsets;
+        private final long[] compressedSizes;
+        private final long[] sizes;
+        private final int[] crcs;
+        private final short[] methods;
+        private final Map<String, Integer> indexByName;
+
+        private CentralDirectory(int count) {
+            names = new String[count];
+            localHeaderOffsets = new long[count];
+            compressedSizes = new long[count];
+            sizes = new long[count];
+            crcs = new int[count];
+            methods = new short[count];
+            indexByName = new HashMap<>(count * 4 / 3 + 1);
+        }
+
+    }
+
+}
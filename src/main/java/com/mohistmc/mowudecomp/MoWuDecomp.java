@@ -20,13 +20,14 @@ import javax.swing.text.DefaultEditorKit;
 import java.awt.Cursor;
 import java.awt.Desktop;
 import java.awt.Font;
+import java.awt.Frame;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.net.ServerSocket;
 import java.net.URI;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -39,22 +40,25 @@ public class MoWuDecomp {
 
     private static final AtomicReference<MainWindow> mainWindowRef = new AtomicReference<>();
     private static final Queue<File> pendingFiles = new ConcurrentLinkedQueue<>();
-    private static ServerSocket lockSocket = null;
 
     public static final String VERSION;
 
+    /**
+     * Runs the warm-up corpus and exits, see {@link #runWarmUpTraining()}.
+     */
+    public static final String WARM_UP_FLAG = "--warm-up";
+
     static {
         String version = MoWuDecomp.class.getPackage().getImplementationVersion();
         VERSION = (version == null ? "DEV" : version);
     }
 
     public static void main(final String[] args) {
-
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (args.length > 0 && WARM_UP_FLAG.equals(args[0])) {
+            runWarmUpTraining();
+            System.exit(0);
         }
+        SingleInstance.listen();
 
         // for TotalCommander External Viewer setting:
         // javaw -jar "c:\Program Files\MoWuDecomp\luyten.jar"
@@ -63,16 +67,58 @@ public class MoWuDecomp {
         final File fileFromCommandLine = getFileFromCommandLine(args);
 
         SwingUtilities.invokeLater(() -> {
-            LafManager.install(new OneDarkTheme());
+            installLookAndFeel();
             if (!mainWindowRef.compareAndSet(null, new MainWindow(fileFromCommandLine))) {
                 // Already set - so add the files to open
                 openFileInInstance(fileFromCommandLine);
             }
+            StartupTimeline.mark("main window built");
             processPendingFiles();
             mainWindowRef.get().setVisible(true);
+            // runs once the window has been laid out and painted
+            SwingUtilities.invokeLater(() -> {
+                StartupTimeline.mark("main window usable");
+                mainWindowRef.get().onShown();
+            });
         });
     }
 
+    private static void installLookAndFeel() {
+        try {
+            LafManager.install(new OneDarkTheme());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            try {
+                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+            } catch (Exception e1) {
+                e1.printStackTrace();
+            }
+        }
+        StartupTimeline.mark("look and feel installed");
+    }
+
+    /**
+     * Training run of the class data sharing archive: loads what a session
+     * loads, i.e. every decompiler and, with a display, the main window,
+     * without showing anything.
+     */
+    private static void runWarmUpTraining() {
+        WarmUp.run(ConfigSaver.getLoadedInstance().getDecompilerSettings(), Decompiler.VALUES);
+        if (GraphicsEnvironment.isHeadless()) {
+            return;
+        }
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                installLookAndFeel();
+                MainWindow mainWindow = new MainWindow(null);
+                mainWindow.pack();
+                mainWindow.dispose();
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     // Private function which processes all pending files - synchronized on the
     // list of pending files
     public static void processPendingFiles() {
@@ -96,6 +142,15 @@ public class MoWuDecomp {
         processPendingFiles();
     }
 
+    public static void bringToFront() {
+        final MainWindow mainWindow = mainWindowRef.get();
+        if (mainWindow != null) {
+            mainWindow.setExtendedState(mainWindow.getExtendedState() & ~Frame.ICONIFIED);
+            mainWindow.toFront();
+            mainWindow.requestFocus();
+        }
+    }
+
     // Function which opens the given file in the instance, if it's running -
     // and if not, it processes the files
     public static void addToPendingFiles(File fileToOpen) {
@@ -1,33 +1,343 @@
 package com.mohistmc.mowudecomp;
 
+import com.strobel.decompiler.DecompilerSettings;
+
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
+/**
+ * Headless batch mode: {@code java -jar MoWuDecomp.jar --cli -o <dir> [options] <input>...}
+ * <p>
+ * Runs on the calling thread until every input is done and never touches
+ * Swing or the saved preferences, so it can be used in CI.
+ */
 public final class MoWuDecompCLI {
 
-    private MoWuDecompCLI() {
-        throw new UnsupportedOperationException();
+    public static final String CLI_FLAG = "--cli";
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_ENTRIES_FAILED = 1;
+    public static final int EXIT_FATAL = 2;
+
+    private static final String USAGE = """
+            Usage: --cli -o <output> [options] <input>...
+              <input>                 .jar/.zip archive, .class file or directory (searched recursively)
+              -o, --output <path>     output directory; a .zip/.jar/.java file if there is a single input
+              -d, --decompiler <name> %s (default: procyon)
+              -t, --threads <n>       worker threads per archive (default: %d)
+              -k, --keep-inner        keep separate entries for inner classes
+              -c, --cache <dir>       reuse and store decompiled classes in a cache directory
+                  --cache-size <mb>   size limit of the cache directory (default: 1024)
+                  --type-cache <mb>   heap for resolved types per archive (default: %d)
+              -u, --unicode           write UTF-8 instead of escaping non-ASCII characters
+              -v, --verbose           print every entry and the type cache statistics
+              -h, --help              show this help
+            Exit status: 0 ok, 1 some entries failed, 2 usage error or an input could not be processed""";
+
+    private Decompiler decompiler = Decompiler.PROCYON;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean filterOutInnerClassEntries = true;
+    private boolean unicode;
+    private boolean verbose;
+    private File output;
+    private File cacheDirectory;
+    private int cacheSizeMb = 1024;
+    private int typeCacheSizeMb = (int) (BoundedMetadataSystem.DEFAULT_MAX_BYTES >> 20);
+    private final List<File> inputs = new ArrayList<>();
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Set<String> usedOutputs = new HashSet<>();
+    private int processedInputs;
+    private int failedInputs;
+    private int decompiledEntries;
+    private int failedEntries;
+
+    private MoWuDecompCLI(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static boolean isCliRequest(String[] args) {
+        return args.length > 0 && CLI_FLAG.equals(args[0]);
+    }
+
+    /**
+     * @param args command line without the leading {@value #CLI_FLAG}
+     * @return the process exit status
+     */
+    public static int run(String[] args) {
+        return run(args, System.out, System.err);
+    }
+
+    /**
+     * Like {@link #run(String[])}, writing the report to {@code out} and every error to {@code err}.
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        MoWuDecompCLI cli = new MoWuDecompCLI(out, err);
+        try {
+            if (!cli.parseArgs(args)) {
+                return EXIT_OK;
+            }
+        } catch (IllegalArgumentException e) {
+            cli.err.println("Error: " + e.getMessage());
+            cli.err.println(cli.usage());
+            return EXIT_FATAL;
+        }
+        return cli.execute();
     }
 
     /**
-     * Execute the CLI version of MoWuDecomp using the given arguments.
-     *
-     * @param input  The argument given by {@code input} in the command line.
-     * @param output The argument given by {@code output} in the command line.
-     * @return {@code true} if the CLI was executed successfully, {@code false} otherwise.
+     * @return {@code false} if only the help was requested
      */
-    public static boolean execute(File input, File output) {
-        if (input != null && output != null) {
-            FileSaver fileSaver = new FileSaver(null, null);
-            fileSaver.saveAllDecompiledCLI(input, output);
-            return true;
-        } else if (input == null && output != null) {
-            System.err.println("Input file not specified!");
-            return true;
-        } else if (input != null) {
-            System.err.println("Output file not specified!");
-            return true;
-        }
-        return false;
+    private boolean parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h", "--help" -> {
+                    out.println(usage());
+                    return false;
+                }
+                case "-o", "--output" -> output = new File(requireValue(args, ++i, arg));
+                case "-d", "--decompiler" -> {
+                    String name = requireValue(args, ++i, arg);
+                    decompiler = Decompiler.getDecompiler(name);
+                    if (decompiler == null) {
+                        throw new IllegalArgumentException("Unknown decompiler: " + name);
+                    }
+                }
+                case "-t", "--threads" -> {
+                    String value = requireValue(args, ++i, arg);
+                    try {
+                        threads = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        threads = 0;
+                    }
+                    if (threads < 1) {
+                        throw new IllegalArgumentException("Invalid thread count: " + value);
+                    }
+                }
+                case "-c", "--cache" -> cacheDirectory = new File(requireValue(args, ++i, arg));
+                case "--cache-size" -> {
+                    String value = requireValue(args, ++i, arg);
+                    try {
+                        cacheSizeMb = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        cacheSizeMb = 0;
+                    }
+                    if (cacheSizeMb < 1) {
+                        throw new IllegalArgumentException("Invalid cache size: " + value);
+                    }
+                }
+                case "--type-cache" -> {
+                    String value = requireValue(args, ++i, arg);
+                    try {
+                        typeCacheSizeMb = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        typeCacheSizeMb = 0;
+                    }
+                    if (typeCacheSizeMb < 1) {
+                        throw new IllegalArgumentException("Invalid type cache size: " + value);
+                    }
+                }
+                case "-k", "--keep-inner" -> filterOutInnerClassEntries = false;
+                case "-u", "--unicode" -> unicode = true;
+                case "-v", "--verbose" -> verbose = true;
+                default -> {
+                    if (arg.startsWith("-") && arg.length() > 1) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(new File(arg));
+                }
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("Input file not specified!");
+        }
+        if (output == null) {
+            throw new IllegalArgumentException("Output file not specified!");
+        }
+        return true;
+    }
+
+    private static String requireValue(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private String usage() {
+        String decompilers = String.join("|", Arrays.stream(Decompiler.VALUES)
+                .map(decompiler -> decompiler.name().toLowerCase(Locale.ROOT)).toList());
+        return USAGE.formatted(decompilers, Runtime.getRuntime().availableProcessors(),
+                BoundedMetadataSystem.DEFAULT_MAX_BYTES >> 20);
+    }
+
+    private int execute() {
+        long time = System.currentTimeMillis();
+        boolean singleFileOutput = inputs.size() == 1 && inputs.get(0).isFile() && !output.isDirectory()
+                && isSingleFileOutputName(output.getName());
+        if (!singleFileOutput && !output.isDirectory() && !output.mkdirs()) {
+            err.println("Cannot create output directory: " + output);
+            return EXIT_FATAL;
+        }
+
+        List<Task> tasks = new ArrayList<>();
+        for (File input : inputs) {
+            if (!input.exists()) {
+                err.println("Input not found: " + input);
+                failedInputs++;
+            } else if (singleFileOutput) {
+                tasks.add(new Task(input, output));
+            } else if (input.isDirectory()) {
+                collectDirectory(input, input, tasks);
+            } else {
+                tasks.add(new Task(input, outputFor(input.getName())));
+            }
+        }
+
+        DecompilerSettings settings = new DecompilerSettings();
+        settings.setUnicodeOutputEnabled(unicode);
+        DecompilationCache cache = cacheDirectory == null ? null
+                : new DecompilationCache(cacheDirectory, cacheSizeMb * 1024L * 1024L);
+        int index = 0;
+        for (Task task : tasks) {
+            index++;
+            out.println("[" + index + "/" + tasks.size() + "] " + task.input() + " -> " + task.output());
+            process(task, settings, cache);
+        }
+
+        out.println("Completed in " + (System.currentTimeMillis() - time) / 1000.0 + "s: "
+                + processedInputs + " input(s), " + decompiledEntries + " class(es) decompiled with "
+                + decompiler.getProperName() + ", " + failedEntries + " of them failed, "
+                + failedInputs + " input(s) could not be processed");
+        if (verbose) {
+            out.println("Shared JDK type cache: " + PlatformTypes.getStatistics());
+        }
+        if (failedInputs > 0) {
+            return EXIT_FATAL;
+        }
+        return failedEntries > 0 ? EXIT_ENTRIES_FAILED : EXIT_OK;
+    }
+
+    private void process(Task task, DecompilerSettings settings, DecompilationCache cache) {
+        JarDecompiler jarDecompiler = new JarDecompiler(decompiler, settings, threads, filterOutInnerClassEntries);
+        jarDecompiler.setCache(cache);
+        jarDecompiler.setMetadataCacheBytes(typeCacheSizeMb * 1024L * 1024L);
+        String inputName = task.input().getName();
+        jarDecompiler.setListener(new JarDecompiler.Listener() {
+            @Override
+            public void entryStarted(String outputName, int position) {
+                if (outputName.endsWith(".java")) {
+                    decompiledEntries++;
+                }
+                if (verbose) {
+                    out.println("  " + outputName);
+                }
+            }
+
+            @Override
+            public void entryFailed(String entryName, Throwable error) {
+                failedEntries++;
+                err.println("  FAILED " + inputName + "!/" + entryName + ": " + error);
+            }
+
+            @Override
+            public void archiveCompleted(File inFile, BoundedMetadataSystem.Statistics typeStatistics) {
+                if (verbose) {
+                    out.println("  Type cache: " + typeStatistics);
+                }
+            }
+        });
+        try {
+            if (isClassFile(inputName)) {
+                String source = jarDecompiler.decompileClassFile(task.input());
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(task.output()),
+                        unicode ? StandardCharsets.UTF_8 : Charset.defaultCharset())) {
+                    writer.write(source);
+                }
+            } else {
+                jarDecompiler.decompileArchive(task.input(), task.output());
+            }
+            processedInputs++;
+        } catch (Exception | StackOverflowError e) {
+            failedInputs++;
+            err.println("  Cannot process " + task.input() + ": " + e);
+            if (isClassFile(inputName)) {
+                task.output().delete();
+            }
+        }
+    }
+
+    private void collectDirectory(File root, File dir, List<Task> tasks) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectDirectory(root, file, tasks);
+            } else if (isArchive(file.getName()) || isClassFile(file.getName())) {
+                String relative = root.toPath().relativize(file.toPath()).toString();
+                tasks.add(new Task(file, outputFor(root.getName() + File.separator + relative)));
+            }
+        }
+    }
+
+    /**
+     * Maps an input (path relative to the output directory) to a not yet used output file.
+     */
+    private File outputFor(String relativeInput) {
+        String base;
+        String extension;
+        if (isClassFile(relativeInput)) {
+            base = relativeInput.substring(0, relativeInput.length() - ".class".length());
+            extension = ".java";
+        } else {
+            int dot = relativeInput.lastIndexOf('.');
+            base = dot > 0 ? relativeInput.substring(0, dot) : relativeInput;
+            extension = "-sources.zip";
+        }
+        String name = base + extension;
+        for (int i = 2; !usedOutputs.add(name); i++) {
+            name = base + "-" + i + extension;
+        }
+        File file = new File(output, name);
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        return file;
+    }
+
+    private static boolean isArchive(String name) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        return lowerName.endsWith(".jar") || lowerName.endsWith(".zip");
+    }
+
+    private static boolean isClassFile(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".class");
+    }
+
+    private static boolean isSingleFileOutputName(String name) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        return isArchive(lowerName) || lowerName.endsWith(".java");
+    }
+
+    private record Task(File input, File output) {
     }
 
 }
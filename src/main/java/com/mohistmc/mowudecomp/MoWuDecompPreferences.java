@@ -22,6 +22,16 @@ public class MoWuDecompPreferences {
     private boolean isFilterOutInnerClassEntries = true;
     private boolean isSingleClickOpenEnabled = true;
     private boolean isExitByEscEnabled = false;
+    private boolean isParallelDecompilationEnabled = true;
+    // 0: one worker per available processor
+    private int decompilerThreads = 0;
+    // jobs of the open tabs running at the same time, 0: half the available processors, at least two
+    private int decompilationJobs = 0;
+    private boolean isDecompilationCacheEnabled = true;
+    private int decompilationCacheSizeMb = 512;
+    // heap for the resolved types of an open archive or an export
+    private int typeCacheSizeMb = 256;
+    private boolean isFindAllIndexEnabled = true;
 
     public String getThemeXml() {
         return themeXml;
@@ -87,6 +97,74 @@ public class MoWuDecompPreferences {
         this.isExitByEscEnabled = isExitByEscEnabled;
     }
 
+    public boolean isParallelDecompilationEnabled() {
+        return isParallelDecompilationEnabled;
+    }
+
+    public void setParallelDecompilationEnabled(boolean isParallelDecompilationEnabled) {
+        this.isParallelDecompilationEnabled = isParallelDecompilationEnabled;
+    }
+
+    public int getDecompilerThreads() {
+        return decompilerThreads;
+    }
+
+    public void setDecompilerThreads(int decompilerThreads) {
+        this.decompilerThreads = decompilerThreads;
+    }
+
+    public int getDecompilerThreadCount() {
+        return decompilerThreads > 0 ? decompilerThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getDecompilationJobs() {
+        return decompilationJobs;
+    }
+
+    public void setDecompilationJobs(int decompilationJobs) {
+        this.decompilationJobs = decompilationJobs;
+    }
+
+    public int getDecompilationJobCount() {
+        return decompilationJobs > 0 ? decompilationJobs : Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    public boolean isDecompilationCacheEnabled() {
+        return isDecompilationCacheEnabled;
+    }
+
+    public void setDecompilationCacheEnabled(boolean isDecompilationCacheEnabled) {
+        this.isDecompilationCacheEnabled = isDecompilationCacheEnabled;
+    }
+
+    public int getDecompilationCacheSizeMb() {
+        return decompilationCacheSizeMb;
+    }
+
+    public void setDecompilationCacheSizeMb(int decompilationCacheSizeMb) {
+        this.decompilationCacheSizeMb = decompilationCacheSizeMb;
+    }
+
+    public int getTypeCacheSizeMb() {
+        return typeCacheSizeMb;
+    }
+
+    public void setTypeCacheSizeMb(int typeCacheSizeMb) {
+        this.typeCacheSizeMb = typeCacheSizeMb;
+    }
+
+    public long getTypeCacheBytes() {
+        return Math.max(1, typeCacheSizeMb) * 1024L * 1024L;
+    }
+
+    public boolean isFindAllIndexEnabled() {
+        return isFindAllIndexEnabled;
+    }
+
+    public void setFindAllIndexEnabled(boolean isFindAllIndexEnabled) {
+        this.isFindAllIndexEnabled = isFindAllIndexEnabled;
+    }
+
     public int getFont_size() {
         return font_size;
     }
@@ -5,23 +5,99 @@ import com.strobel.assembler.metadata.Buffer;
 import com.strobel.assembler.metadata.ITypeLoader;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Type loader chain of a model or decompilation context.
+ * <p>
+ * Loaders that know their packages, i.e. archives, are only asked for
+ * types of those packages, through a hash map from package to loaders,
+ * and before the loaders that don't, like the {@link InputTypeLoader} for
+ * files and the class path. Types no loader has are remembered until the
+ * loaders change, so a miss costs one lookup the next time.
+ * <p>
+ * The chain of a model is shared by its {@link DecompilationContextPool}.
+ * Archives serve read-only class bytes to any number of threads, the other
+ * loaders keep caches of their own and are asked by one thread at a time.
+ */
 public final class MoWuDecompTypeLoader implements ITypeLoader {
-    private final List<ITypeLoader> _typeLoaders;
+
+    /**
+     * A type loader that can list the packages of all types it may load.
+     */
+    public interface PackageIndexed extends ITypeLoader {
+
+        /**
+         * @return internal package names, e.g. {@code com/acme}, the default package as {@code ""}
+         */
+        Collection<String> getPackages();
+
+    }
+
+    private static final int MAX_MISSING_TYPES = 1 << 16;
+
+    private final List<ITypeLoader> _typeLoaders = new ArrayList<>();
+    private final Set<String> _missingTypes = ConcurrentHashMap.newKeySet();
+    private volatile Routing _routing;
 
     public MoWuDecompTypeLoader() {
-        _typeLoaders = new ArrayList<>();
         _typeLoaders.add(new InputTypeLoader());
+        _routing = new Routing(_typeLoaders);
     }
 
-    public List<ITypeLoader> getTypeLoaders() {
-        return _typeLoaders;
+    public synchronized void addTypeLoader(ITypeLoader typeLoader) {
+        _typeLoaders.add(typeLoader);
+        _routing = new Routing(_typeLoaders);
+        _missingTypes.clear();
+    }
+
+    public synchronized void removeTypeLoader(ITypeLoader typeLoader) {
+        if (_typeLoaders.remove(typeLoader)) {
+            _routing = new Routing(_typeLoaders);
+            _missingTypes.clear();
+        }
+    }
+
+    /**
+     * @return {@code true} if an archive contains types of the package of {@code internalName}
+     */
+    public boolean isArchivePackage(String internalName) {
+        return _routing.getOwners(internalName) != null;
     }
 
     @Override
     public boolean tryLoadType(final String internalName, final Buffer buffer) {
-        for (final ITypeLoader typeLoader : _typeLoaders) {
+        if (_missingTypes.contains(internalName)) {
+            return false;
+        }
+        Routing routing = _routing;
+        ITypeLoader[] owners = routing.getOwners(internalName);
+        if (owners != null && tryLoadType(owners, internalName, buffer)) {
+            return true;
+        }
+        if (tryLoadTypeSynchronized(routing.unrouted, internalName, buffer)) {
+            return true;
+        }
+
+        if (_missingTypes.size() >= MAX_MISSING_TYPES) {
+            _missingTypes.clear();
+        }
+        _missingTypes.add(internalName);
+        if (routing != _routing) {
+            // a loader was added meanwhile and may have the type
+            _missingTypes.remove(internalName);
+        }
+        return false;
+    }
+
+    private static boolean tryLoadType(ITypeLoader[] typeLoaders, String internalName, Buffer buffer) {
+        for (final ITypeLoader typeLoader : typeLoaders) {
             if (typeLoader.tryLoadType(internalName, buffer)) {
                 return true;
             }
@@ -31,4 +107,52 @@ public final class MoWuDecompTypeLoader implements ITypeLoader {
 
         return false;
     }
-}
\ No newline at end of file
+
+    private static boolean tryLoadTypeSynchronized(ITypeLoader[] typeLoaders, String internalName, Buffer buffer) {
+        for (final ITypeLoader typeLoader : typeLoaders) {
+            synchronized (typeLoader) {
+                if (typeLoader.tryLoadType(internalName, buffer)) {
+                    return true;
+                }
+            }
+
+            buffer.reset();
+        }
+
+        return false;
+    }
+
+    private static final class Routing {
+
+        private final Map<String, ITypeLoader[]> byPackage = new HashMap<>();
+        private final ITypeLoader[] unrouted;
+
+        private Routing(List<ITypeLoader> typeLoaders) {
+            List<ITypeLoader> unroutedLoaders = new ArrayList<>();
+            for (ITypeLoader typeLoader : typeLoaders) {
+                if (!(typeLoader instanceof PackageIndexed packageIndexed)) {
+                    unroutedLoaders.add(typeLoader);
+                    continue;
+                }
+                for (String packageName : packageIndexed.getPackages()) {
+                    ITypeLoader[] owners = byPackage.get(packageName);
+                    if (owners == null) {
+                        byPackage.put(packageName, new ITypeLoader[]{typeLoader});
+                    } else {
+                        ITypeLoader[] grown = Arrays.copyOf(owners, owners.length + 1);
+                        grown[owners.length] = typeLoader;
+                        byPackage.put(packageName, grown);
+                    }
+                }
+            }
+            unrouted = unroutedLoaders.toArray(new ITypeLoader[0]);
+        }
+
+        private ITypeLoader[] getOwners(String internalName) {
+            int slash = internalName.lastIndexOf('/');
+            return byPackage.get(slash < 0 ? "" : internalName.substring(0, slash));
+        }
+
+    }
+
+}
@@ -2,15 +2,11 @@ package com.mohistmc.mowudecomp;
 
 import com.strobel.assembler.InputTypeLoader;
 import com.strobel.assembler.metadata.ITypeLoader;
-import com.strobel.assembler.metadata.JarTypeLoader;
-import com.strobel.assembler.metadata.MetadataSystem;
 import com.strobel.assembler.metadata.TypeDefinition;
 import com.strobel.assembler.metadata.TypeReference;
 import com.strobel.core.StringUtilities;
 import com.strobel.core.VerifyArgument;
-import com.strobel.decompiler.DecompilationOptions;
 import com.strobel.decompiler.DecompilerSettings;
-import com.strobel.decompiler.PlainTextOutput;
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 import org.fife.ui.rsyntaxtextarea.Theme;
 import org.fife.ui.rtextarea.RTextScrollPane;
@@ -35,7 +31,7 @@ import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeExpansionListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
-import javax.swing.tree.TreeNode;
+import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 import java.awt.GridBagConstraints;
@@ -48,29 +44,25 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.lang.reflect.GenericSignatureFormatError;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.Enumeration;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 /**
  * Jar-level model
  */
-public class Model extends JSplitPane {
+public class Model extends JSplitPane implements ClassBytesSource {
 
     private static final long serialVersionUID = 6896857630400910200L;
 
@@ -78,13 +70,12 @@ public class Model extends JSplitPane {
     private static final long MAX_UNPACKED_FILE_SIZE_BYTES = 10_000_000L;
 
     private final MoWuDecompTypeLoader typeLoader = new MoWuDecompTypeLoader();
-    private final MetadataSystem metadataSystem = new MetadataSystem(typeLoader);
+    private final DecompilationContextPool contexts;
 
     private final JTree tree;
     public JTabbedPane house;
     private File file;
     private final DecompilerSettings settings;
-    private final DecompilationOptions decompilationOptions;
     private Theme theme;
     private final MainWindow mainWindow;
     private final JProgressBar bar;
@@ -93,8 +84,10 @@ public class Model extends JSplitPane {
     private Set<String> treeExpansionState;
     private boolean open = false;
     private State state;
+    private CFRSession cfrSession;
     private final ConfigSaver configSaver;
     private final MoWuDecompPreferences luytenPrefs;
+    private final DecompilationScheduler scheduler;
 
     public Model(MainWindow mainWindow) {
         this.mainWindow = mainWindow;
@@ -104,6 +97,10 @@ public class Model extends JSplitPane {
         configSaver = ConfigSaver.getLoadedInstance();
         settings = configSaver.getDecompilerSettings();
         luytenPrefs = configSaver.getMoWuDecompPreferences();
+        // one context per job that may run at the same time
+        contexts = new DecompilationContextPool(settings, typeLoader, luytenPrefs.getDecompilationJobCount(),
+                luytenPrefs.getTypeCacheBytes());
+        scheduler = DecompilationScheduler.getInstance();
 
         try {
             String themeXml = luytenPrefs.getThemeXml();
@@ -174,10 +171,6 @@ public class Model extends JSplitPane {
         this.setDividerLocation(250 % mainWindow.getWidth());
         this.setLeftComponent(panel2);
         this.setRightComponent(panel);
-
-        decompilationOptions = new DecompilationOptions();
-        decompilationOptions.setSettings(settings);
-        decompilationOptions.setFullDecompilation(true);
     }
 
     public void showLegal(String legalStr) {
@@ -268,12 +261,11 @@ public class Model extends JSplitPane {
             if (trp == null)
                 return;
 
-            Object lastPathComponent = trp.getLastPathComponent();
-            boolean isLeaf = (lastPathComponent instanceof TreeNode && ((TreeNode) lastPathComponent).isLeaf());
-            if (!isLeaf)
+            if (!tree.getModel().isLeaf(trp.getLastPathComponent()))
                 return;
 
-            new Thread(() -> openEntryByTreePath(trp)).start();
+            // supersedes the click before if that did not start yet
+            scheduler.submit(DecompilationScheduler.Priority.FOREGROUND, Model.this, () -> openEntryByTreePath(trp));
         }
     }
 
@@ -283,14 +275,12 @@ public class Model extends JSplitPane {
             final TreePath treePath = event.getPath();
 
             final Object expandedTreePathObject = treePath.getLastPathComponent();
-            if (!(expandedTreePathObject instanceof TreeNode expandedTreeNode)) {
-                return;
-            }
+            final TreeModel treeModel = tree.getModel();
 
-            if (expandedTreeNode.getChildCount() == 1) {
-                final TreeNode descendantTreeNode = expandedTreeNode.getChildAt(0);
+            if (treeModel.getChildCount(expandedTreePathObject) == 1) {
+                final Object descendantTreeNode = treeModel.getChild(expandedTreePathObject, 0);
 
-                if (descendantTreeNode.isLeaf()) {
+                if (treeModel.isLeaf(descendantTreeNode)) {
                     return;
                 }
 
@@ -306,52 +296,56 @@ public class Model extends JSplitPane {
     }
 
     public void openEntryByTreePath(TreePath trp) {
+        if (trp != null && ArchiveTreeModel.isPlaceholder(trp.getLastPathComponent())) {
+            return;
+        }
         String name = "";
         StringBuilder path = new StringBuilder();
         try {
             bar.setVisible(true);
             if (trp.getPathCount() > 1) {
-                for (int i = 1; i < trp.getPathCount(); i++) {
-                    DefaultMutableTreeNode node = (DefaultMutableTreeNode) trp.getPathComponent(i);
-                    TreeNodeUserObject userObject = (TreeNodeUserObject) node.getUserObject();
-                    if (i == trp.getPathCount() - 1) {
-                        name = userObject.getOriginalName();
-                    } else {
-                        path.append(userObject.getOriginalName()).append("/");
-                    }
-                }
-                path.append(name);
+                DefaultMutableTreeNode node = (DefaultMutableTreeNode) trp.getLastPathComponent();
+                name = ((TreeNodeUserObject) node.getUserObject()).getOriginalName();
+                path.append(ArchiveTreeModel.getEntryPath(trp));
 
-                if (file.getName().endsWith(".jar") || file.getName().endsWith(".zip")) {
+                if (ArchiveTreeModel.isArchive(file.getName())) {
                     if (state == null) {
-                        JarFile jfile = new JarFile(file);
-                        ITypeLoader jarLoader = new JarTypeLoader(jfile);
+                        SharedArchive archive = SharedArchive.open(file);
+                        ITypeLoader jarLoader = archive.createTypeLoader();
 
-                        typeLoader.getTypeLoaders().add(jarLoader);
-                        state = new State(file.getCanonicalPath(), file, jfile, jarLoader);
+                        typeLoader.addTypeLoader(jarLoader);
+                        state = new State(file.getCanonicalPath(), file, archive, jarLoader);
                     }
 
-                    JarEntry entry = state.jarFile.getJarEntry(path.toString());
-                    if (entry == null) {
+                    // an entry of a nested archive is read from that archive
+                    String entryPath = path.toString();
+                    int separator = entryPath.lastIndexOf(ArchiveTreeModel.NESTED_SEPARATOR);
+                    NestedArchive nestedArchive = separator < 0 ? null
+                            : state.getNestedArchive(entryPath.substring(0, separator));
+                    ArchiveIndex index = nestedArchive == null ? state.archive.getIndex() : nestedArchive.index();
+                    String entryName = separator < 0 ? entryPath
+                            : entryPath.substring(separator + ArchiveTreeModel.NESTED_SEPARATOR.length());
+                    int entry = index.indexOf(entryName);
+                    if (entry < 0 || index.isDirectory(entry)) {
                         throw new FileEntryNotFoundException();
                     }
-                    if (entry.getSize() > MAX_UNPACKED_FILE_SIZE_BYTES) {
-                        throw new TooLargeFileException(entry.getSize());
+                    if (index.getSize(entry) > MAX_UNPACKED_FILE_SIZE_BYTES) {
+                        throw new TooLargeFileException(index.getSize(entry));
                     }
-                    String entryName = entry.getName();
-                    if (entryName.endsWith(".class")) {
+                    if (index.isClass(entry)) {
                         getLabel().setText("Extracting: " + name);
                         String internalName = StringUtilities.removeRight(entryName, ".class");
                         try {
-                            TypeReference type = metadataSystem.lookupType(internalName);
-                            extractClassToTextPane(type, name, path.toString(), null);
+                            extractClassToTextPane(internalName, name, entryPath, null);
                         } catch (GenericSignatureFormatError e) {
                             e.printStackTrace();
                         }
                     } else {
                         getLabel().setText("Opening: " + name);
-                        try (InputStream in = state.jarFile.getInputStream(entry)) {
-                            extractSimpleFileEntryToTextPane(in, name, path.toString());
+                        byte[] content = nestedArchive == null ? state.archive.getEntryBytes(entryName)
+                                : nestedArchive.archive().getEntryBytes(entryName);
+                        try (InputStream in = new ByteArrayInputStream(content)) {
+                            extractSimpleFileEntryToTextPane(in, name, entryPath);
                         }
                     }
                 }
@@ -364,8 +358,7 @@ public class Model extends JSplitPane {
                 if (name.endsWith(".class")) {
                     getLabel().setText("Extracting: " + name);
                     try {
-                        TypeReference type = metadataSystem.lookupType(path.toString());
-                        extractClassToTextPane(type, name, path.toString(), null);
+                        extractClassToTextPane(path.toString(), name, path.toString(), null);
                     } catch (GenericSignatureFormatError e) {
                         e.printStackTrace();
                     }
@@ -393,7 +386,10 @@ public class Model extends JSplitPane {
         }
     }
 
-    void extractClassToTextPane(TypeReference type, String tabTitle, String path, String navigationLink)
+    /**
+     * @param typeName internal name of the type, or the path of a class file
+     */
+    void extractClassToTextPane(String typeName, String tabTitle, String path, String navigationLink)
             throws Exception {
         if (tabTitle == null || tabTitle.trim().length() < 1 || path == null) {
             throw new FileEntryNotFoundException();
@@ -411,29 +407,46 @@ public class Model extends JSplitPane {
             return;
         }
 
-        // resolve TypeDefinition
-        TypeDefinition resolvedType;
-        if (type == null || ((resolvedType = type.resolve()) == null)) {
-            throw new Exception("Unable to resolve type.");
+        // a tab stays with the context it was opened in
+        DecompilationContext context = sameTitledOpen != null && sameTitledOpen.getContext() != null
+                ? contexts.acquire(sameTitledOpen.getContext()) : contexts.acquire();
+        try {
+            // resolve TypeDefinition
+            TypeReference type = context.getMetadataSystem().lookupType(typeName);
+            TypeDefinition resolvedType;
+            if (type == null || ((resolvedType = type.resolve()) == null)) {
+                throw new Exception("Unable to resolve type.");
+            }
+
+            // open tab, store type information, start decompilation
+            if (sameTitledOpen != null) {
+                sameTitledOpen.path = path;
+                sameTitledOpen.invalidateContent();
+                sameTitledOpen.setDecompilerReferences(contexts);
+                sameTitledOpen.setType(context, resolvedType);
+                sameTitledOpen.setInitialNavigationLink(navigationLink);
+                sameTitledOpen.resetScrollPosition();
+                decompileInTab(sameTitledOpen, navigationLink);
+            } else {
+                OpenFile open = new OpenFile(tabTitle, path, getTheme(), mainWindow, this);
+                open.setDecompilerReferences(contexts);
+                open.setType(context, resolvedType);
+                open.setInitialNavigationLink(navigationLink);
+                hmap.add(open);
+                decompileInTab(open, navigationLink);
+            }
+        } finally {
+            contexts.release(context);
         }
+    }
 
-        // open tab, store type information, start decompilation
-        if (sameTitledOpen != null) {
-            sameTitledOpen.path = path;
-            sameTitledOpen.invalidateContent();
-            sameTitledOpen.setDecompilerReferences(metadataSystem, settings, decompilationOptions);
-            sameTitledOpen.setType(resolvedType);
-            sameTitledOpen.setInitialNavigationLink(navigationLink);
-            sameTitledOpen.resetScrollPosition();
-            sameTitledOpen.decompile();
-            addOrSwitchToTab(sameTitledOpen);
+    private void decompileInTab(OpenFile open, String navigationLink) {
+        if (navigationLink == null) {
+            // nothing to navigate to, show the tab right away and let the text stream in
+            addOrSwitchToTab(open);
+            open.decompile();
         } else {
-            OpenFile open = new OpenFile(tabTitle, path, getTheme(), mainWindow, this);
-            open.setDecompilerReferences(metadataSystem, settings, decompilationOptions);
-            open.setType(resolvedType);
-            open.setInitialNavigationLink(navigationLink);
             open.decompile();
-            hmap.add(open);
             addOrSwitchToTab(open);
         }
     }
@@ -484,13 +497,13 @@ public class Model extends JSplitPane {
         // open tab
         if (sameTitledOpen != null) {
             sameTitledOpen.path = path;
-            sameTitledOpen.setDecompilerReferences(metadataSystem, settings, decompilationOptions);
+            sameTitledOpen.setDecompilerReferences(contexts);
             sameTitledOpen.resetScrollPosition();
             sameTitledOpen.setContent(sb.toString());
             addOrSwitchToTab(sameTitledOpen);
         } else {
             OpenFile open = new OpenFile(tabTitle, path, theme, mainWindow, this);
-            open.setDecompilerReferences(metadataSystem, settings, decompilationOptions);
+            open.setDecompilerReferences(contexts);
             open.setContent(sb.toString());
             hmap.add(open);
             addOrSwitchToTab(open);
@@ -516,7 +529,15 @@ public class Model extends JSplitPane {
 
     }
 
+    /**
+     * @param maxContexts how many classes of this model may be decompiled at the same time
+     */
+    public void setMaxDecompilationContexts(int maxContexts) {
+        contexts.setMaxContexts(maxContexts);
+    }
+
     public void updateOpenClasses() {
+        contexts.onSettingsChanged();
         // invalidate all open classes (update will hapen at tab change)
         for (OpenFile open : hmap) {
             if (open.getType() != null) {
@@ -536,7 +557,7 @@ public class Model extends JSplitPane {
         if (open.getType() == null) {
             return;
         }
-        new Thread(() -> {
+        scheduler.submit(DecompilationScheduler.Priority.FOREGROUND, open, () -> {
             try {
                 bar.setVisible(true);
                 getLabel().setText("Extracting: " + open.name);
@@ -548,7 +569,7 @@ public class Model extends JSplitPane {
             } finally {
                 bar.setVisible(false);
             }
-        }).start();
+        });
     }
 
     private boolean isTabInForeground(OpenFile open) {
@@ -556,26 +577,98 @@ public class Model extends JSplitPane {
         return (selectedIndex >= 0 && selectedIndex == house.indexOfComponent(open.scrollPane));
     }
 
+    record NestedArchive(MappedArchive archive, ArchiveIndex index) {
+    }
+
     final class State implements AutoCloseable {
 
         private final String key;
         private final File file;
-        final JarFile jarFile;
+        final SharedArchive archive;
         final ITypeLoader typeLoader;
+        SourceIndexer indexer;
+        // by path, opened as the tree expands them
+        private final Map<String, NestedArchive> nestedArchives = new LinkedHashMap<>();
+        private boolean closed;
 
-        private State(String key, File file, JarFile jarFile, ITypeLoader typeLoader) {
+        private State(String key, File file, SharedArchive archive, ITypeLoader typeLoader) {
             this.key = VerifyArgument.notNull(key, "key");
             this.file = VerifyArgument.notNull(file, "file");
-            this.jarFile = jarFile;
+            this.archive = archive;
             this.typeLoader = typeLoader;
         }
 
         @Override
         public void close() {
+            if (indexer != null) {
+                indexer.cancel();
+            }
             if (typeLoader != null) {
-                Model.this.typeLoader.getTypeLoaders().remove(typeLoader);
+                Model.this.typeLoader.removeTypeLoader(typeLoader);
+            }
+            synchronized (this) {
+                closed = true;
+                for (NestedArchive nestedArchive : nestedArchives.values()) {
+                    Model.this.typeLoader.removeTypeLoader(nestedArchive.archive());
+                    Closer.tryClose(nestedArchive.archive());
+                }
+                nestedArchives.clear();
             }
-            Closer.tryClose(jarFile);
+            Closer.tryClose(archive);
+        }
+
+        /**
+         * Opens an archive nested in this one without extracting it: a
+         * stored entry is read in place from the mapping of its parent, a
+         * deflated one is inflated into memory, outside the monitor of this
+         * state. Its classes become visible to the type loader of this model.
+         *
+         * @param path e.g. {@code BOOT-INF/lib/a.jar} or {@code a.war!/WEB-INF/lib/b.jar}
+         */
+        NestedArchive getNestedArchive(String path) throws Exception {
+            synchronized (this) {
+                NestedArchive nestedArchive = nestedArchives.get(path);
+                if (nestedArchive != null) {
+                    return nestedArchive;
+                }
+            }
+            int separator = path.lastIndexOf(ArchiveTreeModel.NESTED_SEPARATOR);
+            String entryName = separator < 0 ? path
+                    : path.substring(separator + ArchiveTreeModel.NESTED_SEPARATOR.length());
+            ByteBuffer data = separator < 0 ? archive.getEntryBuffer(entryName)
+                    : getNestedArchive(path.substring(0, separator)).archive().getEntry(entryName);
+            if (data == null) {
+                throw new FileEntryNotFoundException();
+            }
+            MappedArchive mappedArchive = new MappedArchive(key + ArchiveTreeModel.NESTED_SEPARATOR + path, data);
+            NestedArchive opened = new NestedArchive(mappedArchive, ArchiveIndex.of(mappedArchive));
+            synchronized (this) {
+                NestedArchive nestedArchive = nestedArchives.get(path);
+                if (nestedArchive != null || closed) {
+                    // opened by another thread meanwhile, or the archive was closed
+                    Closer.tryClose(mappedArchive);
+                    if (nestedArchive == null) {
+                        throw new FileEntryNotFoundException();
+                    }
+                    return nestedArchive;
+                }
+                nestedArchives.put(path, opened);
+                Model.this.typeLoader.addTypeLoader(mappedArchive);
+                return opened;
+            }
+        }
+
+        /**
+         * @return the bytes of the class from the first opened nested archive that has it, or {@code null}
+         */
+        synchronized byte[] getNestedClassBytes(String internalName) {
+            for (NestedArchive nestedArchive : nestedArchives.values()) {
+                byte[] bytes = nestedArchive.archive().getClassBytes(internalName);
+                if (bytes != null) {
+                    return bytes;
+                }
+            }
+            return null;
         }
 
         public String getKey() {
@@ -586,6 +679,13 @@ public class Model extends JSplitPane {
             return file;
         }
 
+        /**
+         * @return the open archive, {@code null} for a standalone class file
+         */
+        public SharedArchive getArchive() {
+            return archive;
+        }
+
     }
 
     public static class Tab extends JPanel {
@@ -641,37 +741,6 @@ public class Model extends JSplitPane {
         }
     }
 
-    public DefaultMutableTreeNode loadNodesByNames(DefaultMutableTreeNode node, List<String> originalNames) {
-        List<TreeNodeUserObject> args = new ArrayList<>();
-        for (String originalName : originalNames) {
-            args.add(new TreeNodeUserObject(originalName));
-        }
-        return loadNodesByUserObj(node, args);
-    }
-
-    public DefaultMutableTreeNode loadNodesByUserObj(DefaultMutableTreeNode node, List<TreeNodeUserObject> args) {
-        if (args.size() > 0) {
-            TreeNodeUserObject name = args.removeFirst();
-            DefaultMutableTreeNode nod = getChild(node, name);
-            if (nod == null)
-                nod = new DefaultMutableTreeNode(name);
-            node.add(loadNodesByUserObj(nod, args));
-        }
-        return node;
-    }
-
-    @SuppressWarnings("unchecked")
-    public DefaultMutableTreeNode getChild(DefaultMutableTreeNode node, TreeNodeUserObject name) {
-        Enumeration<TreeNode> entry = node.children();
-        while (entry.hasMoreElements()) {
-            DefaultMutableTreeNode nods = (DefaultMutableTreeNode) entry.nextElement();
-            if (((TreeNodeUserObject) nods.getUserObject()).getOriginalName().equals(name.getOriginalName())) {
-                return nods;
-            }
-        }
-        return null;
-    }
-
     public void loadFile(File file) {
         if (open)
             closeFile();
@@ -694,54 +763,44 @@ public class Model extends JSplitPane {
                 if (file == null) {
                     return;
                 }
-                tree.setModel(new DefaultTreeModel(null));
+                setTreeModel(new DefaultTreeModel(null), null);
 
                 if (file.length() > MAX_JAR_FILE_SIZE_BYTES) {
                     throw new TooLargeFileException(file.length());
                 }
-                if (file.getName().endsWith(".zip") || file.getName().endsWith(".jar")) {
-                    JarFile jarFile = new JarFile(file);
-                    getLabel().setText("Loading: " + jarFile.getName());
+                if (ArchiveTreeModel.isArchive(file.getName())) {
+                    if (state == null) {
+                        SharedArchive archive = SharedArchive.open(file);
+                        ITypeLoader jarLoader = archive.createTypeLoader();
+                        typeLoader.addTypeLoader(jarLoader);
+                        state = new State(file.getCanonicalPath(), file, archive, jarLoader);
+                    }
+                    getLabel().setText("Loading: " + state.archive.getPath());
                     bar.setVisible(true);
 
-                    JarEntryFilter jarEntryFilter = new JarEntryFilter(jarFile);
-                    List<String> mass;
-                    if (luytenPrefs.isFilterOutInnerClassEntries()) {
-                        mass = jarEntryFilter.getEntriesWithoutInnerClasses();
-                    } else {
-                        mass = jarEntryFilter.getAllEntriesFromJar();
-                    }
-                    buildTreeFromMass(mass);
+                    boolean filter = luytenPrefs.isFilterOutInnerClassEntries();
+                    List<String> mass = state.archive.getIndex().getFileNames(filter);
+                    State currentState = state;
+                    setTreeModel(new ArchiveTreeModel(getName(file.getName()), mass,
+                            luytenPrefs.isPackageExplorerStyle(),
+                            path -> currentState.getNestedArchive(path).index().getFileNames(filter)), treeExpansionState);
 
-                    if (state == null) {
-                        ITypeLoader jarLoader = new JarTypeLoader(jarFile);
-                        typeLoader.getTypeLoaders().add(jarLoader);
-                        state = new State(file.getCanonicalPath(), file, jarFile, jarLoader);
-                    }
                     open = true;
                     getLabel().setText("Complete");
+                    startIndexing();
                 } else {
                     TreeNodeUserObject topNodeUserObject = new TreeNodeUserObject(getName(file.getName()));
                     DefaultMutableTreeNode top = new DefaultMutableTreeNode(topNodeUserObject);
-                    tree.setModel(new DefaultTreeModel(top));
+                    setTreeModel(new DefaultTreeModel(top), treeExpansionState);
                     settings.setTypeLoader(new InputTypeLoader());
                     open = true;
                     getLabel().setText("Complete");
 
                     // Open it automatically
-                    new Thread(() -> {
+                    scheduler.submit(DecompilationScheduler.Priority.FOREGROUND, Model.this, () -> {
                         TreePath trp = new TreePath(top.getPath());
                         openEntryByTreePath(trp);
-                    }).start();
-                }
-
-                if (treeExpansionState != null) {
-                    try {
-                        TreeUtil treeUtil = new TreeUtil(tree);
-                        treeUtil.restoreExpanstionState(treeExpansionState);
-                    } catch (Exception e) {
-                        MoWuDecomp.showExceptionDialog("Exception!", e);
-                    }
+                    });
                 }
             } catch (TooLargeFileException e) {
                 getLabel().setText("File is too large: " + file.getName() + " - size: " + e.getReadableFileSize());
@@ -757,126 +816,37 @@ public class Model extends JSplitPane {
         }).start();
     }
 
-    private void buildTreeFromMass(List<String> mass) {
-        if (luytenPrefs.isPackageExplorerStyle()) {
-            buildFlatTreeFromMass(mass);
-        } else {
-            buildDirectoryTreeFromMass(mass);
-        }
-    }
-
-    private void buildDirectoryTreeFromMass(List<String> mass) {
-        TreeNodeUserObject topNodeUserObject = new TreeNodeUserObject(getName(file.getName()));
-        DefaultMutableTreeNode top = new DefaultMutableTreeNode(topNodeUserObject);
-        List<String> sort = new ArrayList<>();
-        mass.sort(String.CASE_INSENSITIVE_ORDER);
-        for (String m : mass)
-            if (m.contains("META-INF") && !sort.contains(m))
-                sort.add(m);
-        Set<String> set = new HashSet<>();
-        for (String m : mass) {
-            if (m.contains("/")) {
-                set.add(m.substring(0, m.lastIndexOf("/") + 1));
-            }
-        }
-        List<String> packs = Arrays.asList(set.toArray(new String[]{}));
-        packs.sort(String.CASE_INSENSITIVE_ORDER);
-        packs.sort((o1, o2) -> o2.split("/").length - o1.split("/").length);
-        for (String pack : packs)
-            for (String m : mass)
-                if (!m.contains("META-INF") && m.contains(pack) && !m.replace(pack, "").contains("/"))
-                    sort.add(m);
-        for (String m : mass)
-            if (!m.contains("META-INF") && !m.contains("/") && !sort.contains(m))
-                sort.add(m);
-        for (String pack : sort) {
-            LinkedList<String> list = new LinkedList<>(Arrays.asList(pack.split("/")));
-            loadNodesByNames(top, list);
+    private void startIndexing() throws IOException {
+        if (!luytenPrefs.isFindAllIndexEnabled() || state == null || state.indexer != null) {
+            return;
         }
-        tree.setModel(new DefaultTreeModel(top));
+        SourceIndexer indexer = new SourceIndexer(SharedArchive.open(file), settings,
+                configSaver.getDecompilationCache());
+        state.indexer = indexer;
+        indexer.start();
     }
 
-    private void buildFlatTreeFromMass(List<String> mass) {
-        TreeNodeUserObject topNodeUserObject = new TreeNodeUserObject(getName(file.getName()));
-        DefaultMutableTreeNode top = new DefaultMutableTreeNode(topNodeUserObject);
-
-        TreeMap<String, TreeSet<String>> packages = new TreeMap<>();
-        HashSet<String> classContainingPackageRoots = new HashSet<>();
-
-        // (assertion: mass does not contain null elements)
-        Comparator<String> sortByFileExtensionsComparator = Comparator.comparing(
-                (String o) -> o.replaceAll("[^.]*\\.", "")).thenComparing(o -> o);
-
-        for (String entry : mass) {
-            String packagePath = "";
-            String packageRoot = "";
-            if (entry.contains("/")) {
-                packagePath = entry.replaceAll("/[^/]*$", "");
-                packageRoot = entry.replaceAll("/.*$", "");
-            }
-            String packageEntry = entry.replace(packagePath + "/", "");
-            if (!packages.containsKey(packagePath)) {
-                packages.put(packagePath, new TreeSet<>(sortByFileExtensionsComparator));
-            }
-            packages.get(packagePath).add(packageEntry);
-            if (!entry.startsWith("META-INF") && packageRoot.trim().length() > 0
-                    && entry.matches(".*\\.(class|java|prop|properties)$")) {
-                classContainingPackageRoots.add(packageRoot);
-            }
-        }
-
-        // META-INF comes first -> not flat
-        for (String packagePath : packages.keySet()) {
-            if (packagePath.startsWith("META-INF")) {
-                List<String> packagePathElements = Arrays.asList(packagePath.split("/"));
-                for (String entry : packages.get(packagePath)) {
-                    ArrayList<String> list = new ArrayList<>(packagePathElements);
-                    list.add(entry);
-                    loadNodesByNames(top, list);
-                }
-            }
-        }
-
-        // real packages: path starts with a classContainingPackageRoot -> flat
-        for (String packagePath : packages.keySet()) {
-            String packageRoot = packagePath.replaceAll("/.*$", "");
-            if (classContainingPackageRoots.contains(packageRoot)) {
-                for (String entry : packages.get(packagePath)) {
-                    ArrayList<TreeNodeUserObject> list = new ArrayList<>();
-                    list.add(new TreeNodeUserObject(packagePath, packagePath.replaceAll("/", ".")));
-                    list.add(new TreeNodeUserObject(entry));
-                    loadNodesByUserObj(top, list);
-                }
-            }
-        }
-
-        // the rest, not real packages but directories -> not flat
-        for (String packagePath : packages.keySet()) {
-            String packageRoot = packagePath.replaceAll("/.*$", "");
-            if (!classContainingPackageRoots.contains(packageRoot) && !packagePath.startsWith("META-INF")
-                    && packagePath.length() > 0) {
-                List<String> packagePathElements = Arrays.asList(packagePath.split("/"));
-                for (String entry : packages.get(packagePath)) {
-                    ArrayList<String> list = new ArrayList<>(packagePathElements);
-                    list.add(entry);
-                    loadNodesByNames(top, list);
+    /**
+     * Installs {@code model} on the event dispatch thread, then expands what
+     * was expanded before if {@code expansionState} is given.
+     */
+    private void setTreeModel(TreeModel model, Set<String> expansionState) {
+        SwingUtilities.invokeLater(() -> {
+            tree.setModel(model);
+            if (expansionState != null) {
+                try {
+                    TreeUtil treeUtil = new TreeUtil(tree);
+                    treeUtil.restoreExpanstionState(expansionState);
+                } catch (Exception e) {
+                    MoWuDecomp.showExceptionDialog("Exception!", e);
                 }
             }
-        }
-
-        // the default package -> not flat
-        String packagePath = "";
-        if (packages.containsKey(packagePath)) {
-            for (String entry : packages.get(packagePath)) {
-                ArrayList<String> list = new ArrayList<>();
-                list.add(entry);
-                loadNodesByNames(top, list);
-            }
-        }
-        tree.setModel(new DefaultTreeModel(top));
+        });
     }
 
     public void closeFile() {
+        // a click still waiting would open the archive again
+        scheduler.cancel(this);
         for (OpenFile co : hmap) {
             int pos = house.indexOfComponent(co.scrollPane);
             if (pos >= 0)
@@ -888,9 +858,14 @@ public class Model extends JSplitPane {
             Closer.tryClose(state);
         }
         state = null;
+        // the types of the closed archive must not shadow those of the next one
+        contexts.clear();
+        synchronized (this) {
+            cfrSession = null;
+        }
 
         hmap.clear();
-        tree.setModel(new DefaultTreeModel(null));
+        setTreeModel(new DefaultTreeModel(null), null);
         file = null;
         treeExpansionState = null;
         open = false;
@@ -956,36 +931,8 @@ public class Model extends JSplitPane {
         return currentTextArea;
     }
 
-    public void startWarmUpThread() {
-        new Thread(() -> {
-            try {
-                Thread.sleep(500);
-                String internalName = FindBox.class.getName();
-                TypeReference type = metadataSystem.lookupType(internalName);
-                TypeDefinition resolvedType;
-                if ((type == null) || ((resolvedType = type.resolve()) == null)) {
-                    return;
-                }
-                StringWriter stringwriter = new StringWriter();
-                PlainTextOutput plainTextOutput = new PlainTextOutput(stringwriter);
-                plainTextOutput
-                        .setUnicodeOutputEnabled(decompilationOptions.getSettings().isUnicodeOutputEnabled());
-                settings.getLanguage().decompileType(resolvedType, plainTextOutput, decompilationOptions);
-                String decompiledSource = stringwriter.toString();
-                OpenFile open = new OpenFile(internalName, "*/" + internalName, getTheme(), mainWindow, this);
-                open.setContent(decompiledSource);
-                JTabbedPane pane = new JTabbedPane();
-                pane.setTabLayoutPolicy(JTabbedPane.SCROLL_TAB_LAYOUT);
-                pane.addTab("title", open.scrollPane);
-                pane.setSelectedIndex(pane.indexOfComponent(open.scrollPane));
-            } catch (Exception e) {
-                MoWuDecomp.showExceptionDialog("Exception!", e);
-            }
-        }).start();
-    }
-
     public void navigateTo(final String uniqueStr) {
-        new Thread(() -> {
+        scheduler.submit(DecompilationScheduler.Priority.FOREGROUND, this, () -> {
             if (uniqueStr == null)
                 return;
             String[] linkParts = uniqueStr.split("\\|");
@@ -996,15 +943,20 @@ public class Model extends JSplitPane {
                 bar.setVisible(true);
                 getLabel().setText("Navigating: " + destinationTypeStr.replaceAll("/", "."));
 
-                TypeReference type = metadataSystem.lookupType(destinationTypeStr);
-                if (type == null)
-                    throw new RuntimeException("Cannot lookup type: " + destinationTypeStr);
-                TypeDefinition typeDef = type.resolve();
-                if (typeDef == null)
-                    throw new RuntimeException("Cannot resolve type: " + destinationTypeStr);
-
-                String tabTitle = typeDef.getName() + ".class";
-                extractClassToTextPane(typeDef, tabTitle, destinationTypeStr, uniqueStr);
+                String tabTitle;
+                DecompilationContext context = contexts.acquire();
+                try {
+                    TypeReference type = context.getMetadataSystem().lookupType(destinationTypeStr);
+                    if (type == null)
+                        throw new RuntimeException("Cannot lookup type: " + destinationTypeStr);
+                    TypeDefinition typeDef = type.resolve();
+                    if (typeDef == null)
+                        throw new RuntimeException("Cannot resolve type: " + destinationTypeStr);
+                    tabTitle = typeDef.getName() + ".class";
+                } finally {
+                    contexts.release(context);
+                }
+                extractClassToTextPane(destinationTypeStr, tabTitle, destinationTypeStr, uniqueStr);
 
                 getLabel().setText("Complete");
             } catch (Exception e) {
@@ -1013,7 +965,7 @@ public class Model extends JSplitPane {
             } finally {
                 bar.setVisible(false);
             }
-        }).start();
+        });
     }
 
     public JLabel getLabel() {
@@ -1036,8 +988,54 @@ public class Model extends JSplitPane {
         this.theme = theme;
     }
 
-    public MetadataSystem getMetadataSystem() {
-        return metadataSystem;
+    /**
+     * @return the full-text index of the opened archive, possibly still being
+     * built, or {@code null} if there is none
+     */
+    public SourceIndex getSourceIndex() {
+        State currentState = state;
+        return currentState == null || currentState.indexer == null ? null : currentState.indexer.getIndex();
+    }
+
+    /**
+     * @return the CFR session of the opened file, created on first use
+     */
+    public synchronized CFRSession getCFRSession() {
+        if (cfrSession == null) {
+            cfrSession = new CFRSession(this);
+        }
+        return cfrSession;
+    }
+
+    @Override
+    public byte[] getClassBytes(String internalName) {
+        File openedFile = getOpenedFile();
+        if (openedFile == null) {
+            return null;
+        }
+        try {
+            if (openedFile.getName().endsWith(".class")) {
+                // nested classes of a standalone class file are expected next to it
+                String simpleName = internalName.substring(internalName.lastIndexOf('/') + 1) + ".class";
+                File classFile = new File(openedFile.getParentFile(), simpleName);
+                if (!classFile.isFile()) {
+                    classFile = openedFile;
+                }
+                try (InputStream inputStream = new FileInputStream(classFile)) {
+                    return inputStream.readAllBytes();
+                }
+            }
+            State currentState = state;
+            if (currentState != null && currentState.archive != null) {
+                byte[] bytes = currentState.archive.getClassBytes(internalName);
+                return bytes != null ? bytes : currentState.getNestedClassBytes(internalName);
+            }
+            try (SharedArchive archive = SharedArchive.open(openedFile)) {
+                return archive.getClassBytes(internalName);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public String getFileName() {
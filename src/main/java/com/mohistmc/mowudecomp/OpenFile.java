@@ -1,10 +1,7 @@
 package com.mohistmc.mowudecomp;
 
-import com.strobel.assembler.metadata.MetadataSystem;
 import com.strobel.assembler.metadata.TypeDefinition;
-import com.strobel.decompiler.DecompilationOptions;
 import com.strobel.decompiler.DecompilerSettings;
-import com.strobel.decompiler.PlainTextOutput;
 import com.strobel.decompiler.languages.Languages;
 import org.fife.ui.rsyntaxtextarea.LinkGeneratorResult;
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
@@ -21,23 +18,30 @@ import javax.swing.ScrollPaneConstants;
 import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.HyperlinkEvent;
+import javax.swing.text.BadLocationException;
 import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.Font;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.InputEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.geom.Rectangle2D;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class OpenFile implements SyntaxConstants {
 
@@ -46,18 +50,26 @@ public class OpenFile implements SyntaxConstants {
                     ".phtml", ".xhtm", ".xhtml", ".lua", ".bat", ".pl", ".sh", ".json", ".txt",
                     ".rb", ".make", ".mak", ".py", ".properties", ".prop", ".MF"));
 
+    // chunks of a running decompilation that arrive within this delay are appended together
+    private static final int CONTENT_STREAM_DELAY_MS = 50;
+    // Procyon shows larger classes as a skeleton first and fills in the method bodies
+    private static final int SKELETON_MIN_CLASS_BYTES = 32 * 1024;
+
     public static final HashSet<String> WELL_KNOWN_IMAGE_FILE_EXTENSIONS = new HashSet<>(
             Arrays.asList(".png", ".jpg", ".jpeg", ".gif", ".svg"));
 
     // navigation links
-    private TreeMap<Selection, String> selectionToUniqueStrTreeMap = new TreeMap<>();
-    private final Map<String, Boolean> isNavigableCache = new ConcurrentHashMap<>();
-    private final Map<String, String> readableLinksCache = new ConcurrentHashMap<>();
+    private volatile LinkIndex linkIndex = LinkIndex.EMPTY;
+    // created once, hovering must not allocate
+    private final Predicate<String> isLinkNavigable = this::isLinkNavigable;
+    private final Function<String, String> getLinkDescription = this::getLinkDescription;
 
     private volatile boolean isContentValid = false;
     private volatile boolean isNavigationLinksValid = false;
     private volatile boolean isWaitForLinksCursor = false;
     private volatile Double lastScrollPercent = null;
+    private volatile ContentStream contentStream;
+    private volatile SkeletonFiller skeletonFiller;
 
     private LinkProvider linkProvider;
     private String initialNavigationLink;
@@ -73,9 +85,9 @@ public class OpenFile implements SyntaxConstants {
     private final MoWuDecompPreferences luytenPrefs;
 
     // decompiler and type references (not needed for text files)
-    private MetadataSystem metadataSystem;
-    private DecompilerSettings settings;
-    private DecompilationOptions decompilationOptions;
+    private DecompilationContextPool contexts;
+    // the one the type was resolved in
+    private volatile DecompilationContext context;
     private TypeDefinition type;
     private final Model model;
 
@@ -168,10 +180,20 @@ public class OpenFile implements SyntaxConstants {
 
         scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
         final JScrollBar verticalScrollbar = scrollPane.getVerticalScrollBar();
+        scrollPane.getViewport().addChangeListener(e -> {
+            SkeletonFiller filler = skeletonFiller;
+            if (filler != null)
+                filler.updatePriority();
+        });
+        textArea.addCaretListener(e -> {
+            SkeletonFiller filler = skeletonFiller;
+            if (filler != null)
+                filler.updatePriority();
+        });
         if (verticalScrollbar != null) {
             verticalScrollbar.addAdjustmentListener(e -> {
-                String content = textArea.getText();
-                if (content == null || content.length() == 0)
+                // fires for every streamed batch, do not copy the whole text here
+                if (textArea.getDocument().getLength() == 0)
                     return;
                 int scrollValue = verticalScrollbar.getValue() - verticalScrollbar.getMinimum();
                 int scrollMax = verticalScrollbar.getMaximum() - verticalScrollbar.getMinimum();
@@ -446,53 +468,164 @@ public class OpenFile implements SyntaxConstants {
 
     public void decompile() {
         this.invalidateContent();
-        // synchronized: do not accept changes from menu while running
-        synchronized (settings) {
+        // the settings of the context change only between leases
+        DecompilationContext context = contexts.acquire(this.context);
+        try {
+            DecompilerSettings settings = context.getSettings();
             if (Languages.java().getName().equals(settings.getLanguage().getName()) || luytenPrefs.getDecompiler() != Decompiler.PROCYON) {
-                decompileWithNavigationLinks();
+                decompileWithNavigationLinks(context);
             } else {
-                decompileWithoutLinks();
+                decompileWithoutLinks(context);
             }
+        } finally {
+            contexts.release(context);
         }
+        StartupTimeline.mark("first class decompiled");
     }
 
-    private void decompileWithoutLinks() {
+    private void decompileWithoutLinks(DecompilationContext context) {
         this.invalidateContent();
         isNavigationLinksValid = false;
         textArea.setHyperlinksEnabled(false);
+        Double scrollPercent = lastScrollPercent;
+
+        DecompilationCache cache = configSaver.getDecompilationCache();
+        DecompilerSettings settings = context.getSettings();
+        String cacheKey = cache == null ? null : DecompilationCache.createKey(Decompiler.PROCYON, settings, type, model);
+        DecompilationCache.Entry cached = cacheKey == null ? null : cache.get(cacheKey);
+        if (cached != null) {
+            setContentPreserveLastScrollPosition(null, scrollPercent, cached.text());
+            this.isContentValid = true;
+            return;
+        }
 
+        ContentStream stream = startContentStream();
         StringWriter stringwriter = new StringWriter();
-        PlainTextOutput plainTextOutput = new PlainTextOutput(stringwriter);
-        plainTextOutput.setUnicodeOutputEnabled(decompilationOptions.getSettings().isUnicodeOutputEnabled());
-        settings.getLanguage().decompileType(type, plainTextOutput, decompilationOptions);
-        setContentPreserveLastScrollPosition(stringwriter.toString());
+        StreamingTextOutput plainTextOutput = new StreamingTextOutput(stringwriter, stream);
+        plainTextOutput.setUnicodeOutputEnabled(settings.isUnicodeOutputEnabled());
+        settings.getLanguage().decompileType(type, plainTextOutput, context.getDecompilationOptions());
+        plainTextOutput.publish();
+        if (cacheKey != null) {
+            cache.put(cacheKey, new DecompilationCache.Entry(stringwriter.toString(), null, null));
+        }
+        setContentPreserveLastScrollPosition(stream, scrollPercent, stringwriter.toString());
         this.isContentValid = true;
     }
 
-    private void decompileWithNavigationLinks() {
+    private void decompileWithNavigationLinks(DecompilationContext context) {
         this.invalidateContent();
-        LinkProvider newLinkProvider = luytenPrefs.getDecompiler().linkProviderSupplier.get();
+        Double scrollPercent = lastScrollPercent;
+        Decompiler decompiler = luytenPrefs.getDecompiler();
+        LinkProvider newLinkProvider = decompiler.linkProviderSupplier.get();
         if (newLinkProvider instanceof ProcyonLinkProvider)
-            ((ProcyonLinkProvider) newLinkProvider).setDecompilerReferences(metadataSystem, settings, decompilationOptions);
+            ((ProcyonLinkProvider) newLinkProvider).setDecompilerReferences(context.getMetadataSystem(),
+                    context.getSettings(), context.getDecompilationOptions());
+        if (newLinkProvider instanceof CFRLinkProvider)
+            ((CFRLinkProvider) newLinkProvider).setSession(model.getCFRSession());
         newLinkProvider.setType(type, model);
         linkProvider = newLinkProvider;
 
-        linkProvider.generateContent();
-        setContentPreserveLastScrollPosition(linkProvider.getTextContent());
+        // Procyon navigation needs the link maps, entries written by Save All have only the text
+        DecompilationCache cache = configSaver.getDecompilationCache();
+        String cacheKey = cache == null ? null
+                : DecompilationCache.createKey(decompiler, context.getSettings(), type, model);
+        DecompilationCache.Entry cached = cacheKey == null ? null : cache.get(cacheKey);
+        ContentStream stream = null;
+        if (cached != null && (cached.hasLinks() || decompiler != Decompiler.PROCYON)) {
+            linkProvider.setContent(cached.text(), cached.definitionToSelectionMap(), cached.referenceToSelectionsMap());
+        } else if (linkProvider instanceof ProcyonLinkProvider procyonLinkProvider && isSkeletonFirst()
+                && showSkeleton(context, procyonLinkProvider, scrollPercent)) {
+            return;
+        } else {
+            stream = startContentStream();
+            linkProvider.setContentListener(stream);
+            try {
+                linkProvider.generateContent();
+            } finally {
+                linkProvider.setContentListener(null);
+            }
+            if (cacheKey != null && linkProvider.getTextContent() != null) {
+                cache.put(cacheKey, new DecompilationCache.Entry(linkProvider.getTextContent(),
+                        linkProvider.getDefinitionToSelectionMap(), linkProvider.getReferenceToSelectionsMap()));
+            }
+        }
+        setContentPreserveLastScrollPosition(stream, scrollPercent, linkProvider.getTextContent());
+        this.isContentValid = true;
+        enableLinks(context);
+    }
+
+    private boolean isSkeletonFirst() {
+        try {
+            byte[] classBytes = model.getClassBytes(type.getInternalName());
+            return classBytes != null && classBytes.length >= SKELETON_MIN_CLASS_BYTES;
+        } catch (UncheckedIOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Shows the class with placeholders for its method bodies and decompiles
+     * them in the background. The result is not cached, the next time the
+     * class is decompiled as a whole.
+     *
+     * @return {@code false} if the skeleton could not be built
+     */
+    private boolean showSkeleton(DecompilationContext context, ProcyonLinkProvider procyonLinkProvider,
+                                 Double scrollPercent) {
+        List<ProcyonLinkProvider.Placeholder> placeholders;
+        try {
+            placeholders = procyonLinkProvider.generateSkeleton();
+        } catch (RuntimeException e) {
+            System.err.println("[OpenFile]: decompiling " + type.getInternalName() + " as a whole: " + e);
+            return false;
+        }
+        setContentPreserveLastScrollPosition(null, scrollPercent, procyonLinkProvider.getTextContent());
         this.isContentValid = true;
-        enableLinks();
+        enableLinks(context);
+        if (!placeholders.isEmpty()) {
+            SkeletonFiller filler = new SkeletonFiller(context, procyonLinkProvider, placeholders);
+            skeletonFiller = filler;
+            filler.schedule();
+        }
+        return true;
     }
 
-    private void setContentPreserveLastScrollPosition(final String content) {
-        final Double scrollPercent = lastScrollPercent;
-        if (scrollPercent != null && initialNavigationLink == null) {
-            SwingUtilities.invokeLater(() -> {
+    private ContentStream startContentStream() {
+        ContentStream stream = new ContentStream();
+        contentStream = stream;
+        return stream;
+    }
+
+    /**
+     * Completes the streamed text, or replaces it if there was no stream or
+     * it did not add up to {@code content}, and restores the scroll position
+     * of an earlier decompilation of the same type.
+     */
+    private void setContentPreserveLastScrollPosition(final ContentStream stream, final Double scrollPercent,
+                                                      final String content) {
+        SwingUtilities.invokeLater(() -> {
+            if (stream != null) {
+                stream.stop();
+                if (contentStream != stream) {
+                    // invalidated or decompiled again meanwhile
+                    return;
+                }
+                contentStream = null;
+            }
+            int caretPosition = textArea.getCaretPosition();
+            String streamed = textArea.getText();
+            if (content == null) {
+                textArea.setText("");
+            } else if (content.startsWith(streamed)) {
+                textArea.append(content.substring(streamed.length()));
+            } else {
                 textArea.setText(content);
+            }
+            textArea.setCaretPosition(Math.min(caretPosition, textArea.getDocument().getLength()));
+            if (scrollPercent != null && initialNavigationLink == null) {
                 restoreScrollPosition(scrollPercent);
-            });
-        } else {
-            textArea.setText(content);
-        }
+            }
+        });
     }
 
     private void restoreScrollPosition(final double position) {
@@ -510,19 +643,22 @@ public class OpenFile implements SyntaxConstants {
         });
     }
 
-    private void enableLinks() {
+    /**
+     * @param context the context the links were written in, the link provider looks up their types there
+     */
+    private void enableLinks(DecompilationContext context) {
         if (initialNavigationLink != null) {
-            doEnableLinks();
+            doEnableLinks(context);
         } else {
-            new Thread(() -> {
+            DecompilationScheduler.getInstance().submit(DecompilationScheduler.Priority.LINKS, this, () -> {
                 try {
                     isWaitForLinksCursor = true;
-                    doEnableLinks();
+                    doEnableLinks(context);
                 } finally {
                     isWaitForLinksCursor = false;
                     resetCursor();
                 }
-            }).start();
+            });
         }
     }
 
@@ -530,96 +666,68 @@ public class OpenFile implements SyntaxConstants {
         SwingUtilities.invokeLater(() -> textArea.setCursor(new Cursor(Cursor.DEFAULT_CURSOR)));
     }
 
-    private void doEnableLinks() {
+    private void doEnableLinks(DecompilationContext context) {
         isNavigationLinksValid = false;
-        linkProvider.processLinks();
-        buildSelectionToUniqueStrTreeMap();
-        clearLinksCache();
+        contexts.acquire(context);
+        try {
+            // looks up every link, hovering only reads the results and needs no context
+            linkProvider.processLinks();
+        } finally {
+            contexts.release(context);
+        }
+        buildLinkIndex();
         isNavigationLinksValid = true;
         textArea.setHyperlinksEnabled(true);
         warmUpWithFirstLink();
     }
 
     private void warmUpWithFirstLink() {
-        if (selectionToUniqueStrTreeMap.keySet().size() > 0) {
-            Selection selection = selectionToUniqueStrTreeMap.keySet().iterator().next();
-            getLinkDescriptionForOffset(selection.from());
+        LinkIndex index = linkIndex;
+        if (index.size() > 0) {
+            getLinkDescriptionForOffset(index.getStart(0));
         }
     }
 
-    public void clearLinksCache() {
-        try {
-            isNavigableCache.clear();
-            readableLinksCache.clear();
-        } catch (Exception e) {
-            MoWuDecomp.showExceptionDialog("Exception!", e);
-        }
+    // synchronized: the last call reads the latest maps of a skeleton being filled
+    private synchronized void buildLinkIndex() {
+        linkIndex = LinkIndex.build(linkProvider.getDefinitionToSelectionMap(),
+                linkProvider.getReferenceToSelectionsMap());
     }
 
-    private void buildSelectionToUniqueStrTreeMap() {
-        TreeMap<Selection, String> treeMap = new TreeMap<>();
-        Map<String, Selection> definitionToSelectionMap = linkProvider.getDefinitionToSelectionMap();
-        Map<String, Set<Selection>> referenceToSelectionsMap = linkProvider.getReferenceToSelectionsMap();
-
-        for (String key : definitionToSelectionMap.keySet()) {
-            Selection selection = definitionToSelectionMap.get(key);
-            treeMap.put(selection, key);
+    // the navigable link with a description at offset, or -1
+    private int getLinkForOffset(LinkIndex index, int offset) {
+        if (!isNavigationLinksValid) {
+            return -1;
         }
-        for (String key : referenceToSelectionsMap.keySet()) {
-            for (Selection selection : referenceToSelectionsMap.get(key)) {
-                treeMap.put(selection, key);
-            }
+        int link = index.find(offset);
+        if (link >= 0 && index.isNavigable(link, isLinkNavigable)
+                && index.getDescription(link, getLinkDescription) != null) {
+            return link;
         }
-        selectionToUniqueStrTreeMap = treeMap;
-    }
-
-    private Selection getSelectionForOffset(int offset) {
-        if (isNavigationLinksValid) {
-            Selection offsetSelection = new Selection(offset, offset);
-            Selection floorSelection = selectionToUniqueStrTreeMap.floorKey(offsetSelection);
-            if (floorSelection != null && floorSelection.from() <= offset && floorSelection.to() > offset) {
-                return floorSelection;
-            }
-        }
-        return null;
+        return -1;
     }
 
     private String getUniqueStrForOffset(int offset) {
-        Selection selection = getSelectionForOffset(offset);
-        if (selection != null) {
-            String uniqueStr = selectionToUniqueStrTreeMap.get(selection);
-            if (this.isLinkNavigable(uniqueStr) && this.getLinkDescription(uniqueStr) != null) {
-                return uniqueStr;
-            }
-        }
-        return null;
+        LinkIndex index = linkIndex;
+        int link = getLinkForOffset(index, offset);
+        return link >= 0 ? index.getUniqueStr(link) : null;
     }
 
     private Integer getSelectionFromForOffset(int offset) {
-        Selection selection = getSelectionForOffset(offset);
-        if (selection != null) {
-            return selection.from();
-        }
-        return null;
+        LinkIndex index = linkIndex;
+        int link = isNavigationLinksValid ? index.find(offset) : -1;
+        return link >= 0 ? index.getStart(link) : null;
     }
 
     private String getLinkDescriptionForOffset(int offset) {
-        String uniqueStr = getUniqueStrForOffset(offset);
-        if (uniqueStr != null) {
-            return this.getLinkDescription(uniqueStr);
-        }
-        return null;
+        LinkIndex index = linkIndex;
+        int link = getLinkForOffset(index, offset);
+        return link >= 0 ? index.getDescription(link, getLinkDescription) : null;
     }
 
     private boolean isLinkNavigable(String uniqueStr) {
         try {
-            Boolean isNavigableCached = isNavigableCache.get(uniqueStr);
-            if (isNavigableCached != null)
-                return isNavigableCached;
-
-            boolean isNavigable = linkProvider.isLinkNavigable(uniqueStr);
-            isNavigableCache.put(uniqueStr, isNavigable);
-            return isNavigable;
+            return linkProvider.isLinkNavigable(uniqueStr);
         } catch (Exception e) {
             MoWuDecomp.showExceptionDialog("Exception!", e);
         }
@@ -628,15 +736,7 @@ public class OpenFile implements SyntaxConstants {
 
     private String getLinkDescription(String uniqueStr) {
         try {
-            String descriptionCached = readableLinksCache.get(uniqueStr);
-            if (descriptionCached != null)
-                return descriptionCached;
-
-            String description = linkProvider.getLinkDescription(uniqueStr);
-            if (description != null && description.trim().length() > 0) {
-                readableLinksCache.put(uniqueStr, description);
-                return description;
-            }
+            return linkProvider.getLinkDescription(uniqueStr);
         } catch (Exception e) {
             MoWuDecomp.showExceptionDialog("Exception!", e);
         }
@@ -720,19 +820,39 @@ public class OpenFile implements SyntaxConstants {
         mainWindow.onNavigationRequest(uniqueStr);
     }
 
-    public void setDecompilerReferences(MetadataSystem metadataSystem, DecompilerSettings settings,
-                                        DecompilationOptions decompilationOptions) {
-        this.metadataSystem = metadataSystem;
-        this.settings = settings;
-        this.decompilationOptions = decompilationOptions;
+    public void setDecompilerReferences(DecompilationContextPool contexts) {
+        this.contexts = contexts;
+    }
+
+    public DecompilationContext getContext() {
+        return context;
     }
 
     public TypeDefinition getType() {
         return type;
     }
 
-    public void setType(TypeDefinition type) {
+    /**
+     * @param context the context {@code type} was resolved in
+     */
+    public void setType(DecompilationContext context, TypeDefinition type) {
+        pinType(this.context, this.type, false);
+        this.context = context;
         this.type = type;
+        pinType(context, type, true);
+    }
+
+    // an open tab keeps its type resolved, see BoundedMetadataSystem
+    private void pinType(DecompilationContext context, TypeDefinition type, boolean pin) {
+        if (context == null || type == null) {
+            return;
+        }
+        BoundedMetadataSystem boundedMetadataSystem = context.getMetadataSystem();
+        if (pin) {
+            boundedMetadataSystem.pin(type.getInternalName());
+        } else {
+            boundedMetadataSystem.unpin(type.getInternalName());
+        }
     }
 
     public Model getModel() {
@@ -744,6 +864,12 @@ public class OpenFile implements SyntaxConstants {
     }
 
     public void invalidateContent() {
+        skeletonFiller = null;
+        ContentStream stream = contentStream;
+        if (stream != null) {
+            contentStream = null;
+            stream.stop();
+        }
         try {
             this.setContent("");
         } finally {
@@ -779,10 +905,11 @@ public class OpenFile implements SyntaxConstants {
      * JTabbedPane.remove(component)
      */
     public void close() {
+        DecompilationScheduler.getInstance().cancel(this);
         linkProvider = null;
-        type = null;
+        setType(null, null);
         invalidateContent();
-        clearLinksCache();
+        linkIndex = LinkIndex.EMPTY;
     }
 
     @Override
@@ -807,4 +934,236 @@ public class OpenFile implements SyntaxConstants {
         } else return path.equals(other.path);
     }
 
+    /**
+     * Text of a running decompilation on its way to the text area, see
+     * {@link LinkProvider#setContentListener} for how early it arrives.
+     * Chunks that arrive while a batch waits for its timer are appended
+     * with it, so the document is updated and re-highlighted a few times a
+     * second rather than once per line.
+     */
+    private final class ContentStream implements Consumer<String> {
+
+        private final StringBuilder pending = new StringBuilder();
+        private final Timer timer = new Timer(CONTENT_STREAM_DELAY_MS, e -> flush());
+
+        private ContentStream() {
+            timer.setRepeats(false);
+        }
+
+        @Override
+        public void accept(String chunk) {
+            synchronized (pending) {
+                boolean isIdle = pending.length() == 0;
+                pending.append(chunk);
+                if (isIdle) {
+                    timer.start();
+                }
+            }
+        }
+
+        /**
+         * Appends what arrived so far, unless the tab shows something else by now. EDT only.
+         */
+        private void flush() {
+            String text;
+            synchronized (pending) {
+                text = pending.toString();
+                pending.setLength(0);
+            }
+            if (contentStream != this || text.isEmpty()) {
+                return;
+            }
+            int caretPosition = textArea.getCaretPosition();
+            textArea.append(text);
+            textArea.setCaretPosition(caretPosition);
+        }
+
+        /**
+         * Drops what is still pending, the caller sets the complete text.
+         */
+        private void stop() {
+            synchronized (pending) {
+                timer.stop();
+                pending.setLength(0);
+            }
+        }
+
+    }
+
+    /**
+     * Decompiles the method bodies of a skeleton one by one, those in view or
+     * with the caret in them first, and puts them into the text in batches
+     * like {@link ContentStream}. Stops as soon as the tab shows something
+     * else.
+     */
+    private final class SkeletonFiller implements Runnable {
+
+        private final DecompilationContext context;
+        private final ProcyonLinkProvider linkProvider;
+        private final List<ProcyonLinkProvider.Placeholder> placeholders;
+        // where the placeholders are now, EDT only
+        private final int[] froms;
+        private final int[] tos;
+        private final boolean[] isReplaced;
+        // guarded by this
+        private final boolean[] isTaken;
+        private final Map<Integer, ProcyonLinkProvider.Fragment> pending = new TreeMap<>();
+        private final Timer timer = new Timer(CONTENT_STREAM_DELAY_MS, e -> flush());
+        private volatile int priority;
+        private int replacedCount;
+
+        private SkeletonFiller(DecompilationContext context, ProcyonLinkProvider linkProvider,
+                               List<ProcyonLinkProvider.Placeholder> placeholders) {
+            this.context = context;
+            this.linkProvider = linkProvider;
+            this.placeholders = placeholders;
+            froms = new int[placeholders.size()];
+            tos = new int[placeholders.size()];
+            for (int i = 0; i < placeholders.size(); i++) {
+                froms[i] = placeholders.get(i).from();
+                tos[i] = placeholders.get(i).to();
+            }
+            isReplaced = new boolean[placeholders.size()];
+            isTaken = new boolean[placeholders.size()];
+            timer.setRepeats(false);
+            SwingUtilities.invokeLater(this::updatePriority);
+        }
+
+        /**
+         * Decompiles the next member once the decompilations and links of the tabs are done.
+         */
+        private void schedule() {
+            DecompilationScheduler.getInstance().submit(DecompilationScheduler.Priority.PREFETCH, OpenFile.this, this);
+        }
+
+        @Override
+        public void run() {
+            int index;
+            if (skeletonFiller == this && (index = takeNext()) >= 0) {
+                ProcyonLinkProvider.Fragment fragment;
+                contexts.acquire(context);
+                try {
+                    fragment = linkProvider.decompileMember(placeholders.get(index));
+                } catch (Exception e) {
+                    System.err.println("[OpenFile]: " + placeholders.get(index).method().getFullName() + ": " + e);
+                    fragment = null;
+                } finally {
+                    contexts.release(context);
+                }
+                synchronized (this) {
+                    boolean isIdle = pending.isEmpty();
+                    pending.put(index, fragment);
+                    if (isIdle) {
+                        timer.start();
+                    }
+                }
+                // one member per job, so that a class opened meanwhile does not wait for all of them
+                schedule();
+            }
+        }
+
+        private synchronized int takeNext() {
+            int start = priority;
+            for (int i = 0; i < isTaken.length; i++) {
+                int index = (start + i) % isTaken.length;
+                if (!isTaken[index]) {
+                    isTaken[index] = true;
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Continues with the placeholder under the caret, which the user
+         * clicked to read it, otherwise with the first one in view. EDT only.
+         */
+        private void updatePriority() {
+            int caretPosition = textArea.getCaretPosition();
+            int index = findPlaceholder(caretPosition);
+            if (index < 0 || froms[index] > caretPosition) {
+                Point viewPosition = scrollPane.getViewport().getViewPosition();
+                index = findPlaceholder(textArea.viewToModel2D(viewPosition));
+            }
+            if (index >= 0) {
+                priority = index;
+            }
+        }
+
+        // the first placeholder left that ends after offset
+        private int findPlaceholder(int offset) {
+            for (int i = 0; i < tos.length; i++) {
+                if (!isReplaced[i] && tos[i] > offset) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Replaces the placeholders of the members decompiled so far and keeps
+         * the caret and the first visible line where they were. EDT only.
+         */
+        private void flush() {
+            Map<Integer, ProcyonLinkProvider.Fragment> fragments;
+            synchronized (this) {
+                fragments = new TreeMap<>(pending);
+                pending.clear();
+            }
+            if (skeletonFiller != this || fragments.isEmpty()) {
+                return;
+            }
+            JViewport viewport = scrollPane.getViewport();
+            Point viewPosition = viewport.getViewPosition();
+            int anchor = textArea.viewToModel2D(viewPosition);
+            double anchorOffsetY = viewPosition.y - getY(anchor);
+            int caretPosition = textArea.getCaretPosition();
+            for (Map.Entry<Integer, ProcyonLinkProvider.Fragment> entry : fragments.entrySet()) {
+                int index = entry.getKey();
+                ProcyonLinkProvider.Fragment fragment = entry.getValue();
+                if (fragment == null) {
+                    String text = linkProvider.getTextContent().substring(froms[index], tos[index]);
+                    fragment = new ProcyonLinkProvider.Fragment(
+                            text.replace(ProcyonLinkProvider.PLACEHOLDER_TEXT, "反编译失败"), Map.of(), Map.of());
+                }
+                Selection range = linkProvider.replaceMember(froms[index], tos[index], fragment);
+                textArea.replaceRange(fragment.text(), range.from(), range.to());
+                int delta = fragment.text().length() - (range.to() - range.from());
+                isReplaced[index] = true;
+                replacedCount++;
+                for (int i = index + 1; i < froms.length; i++) {
+                    froms[i] += delta;
+                    tos[i] += delta;
+                }
+                anchor = moveOffset(anchor, range, delta);
+                caretPosition = moveOffset(caretPosition, range, delta);
+            }
+            textArea.setCaretPosition(Math.min(caretPosition, textArea.getDocument().getLength()));
+            viewport.setViewPosition(new Point(viewPosition.x, (int) Math.round(getY(anchor) + anchorOffsetY)));
+            buildLinkIndex();
+            if (replacedCount == froms.length) {
+                skeletonFiller = null;
+            } else {
+                updatePriority();
+            }
+        }
+
+        private double getY(int offset) {
+            try {
+                Rectangle2D bounds = textArea.modelToView2D(offset);
+                return bounds == null ? 0 : bounds.getY();
+            } catch (BadLocationException e) {
+                return 0;
+            }
+        }
+
+        private int moveOffset(int offset, Selection range, int delta) {
+            if (offset >= range.to()) {
+                return offset + delta;
+            }
+            return Math.min(offset, range.from());
+        }
+
+    }
+
 }
@@ -0,0 +1,85 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.Buffer;
+import com.strobel.assembler.metadata.TypeDefinition;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Types of the running JDK, read once per process and shared by the
+ * metadata systems of all models, exports and searches.
+ * <p>
+ * Only types of the packages of the boot and platform modules are served
+ * from here, and only while no open archive contains the same package, so
+ * an opened {@code rt.jar} still shows its own classes. The shared
+ * definitions are only looked at, never decompiled, which keeps them safe
+ * to use from several threads.
+ */
+public final class PlatformTypes {
+
+    private static final long MAX_BYTES = 128L * 1024 * 1024;
+
+    private static final Map<String, Module> MODULES_BY_PACKAGE = new HashMap<>();
+    private static final BoundedMetadataSystem METADATA_SYSTEM =
+            new BoundedMetadataSystem(PlatformTypes::tryLoadType, MAX_BYTES);
+
+    static {
+        ClassLoader platformClassLoader = ClassLoader.getPlatformClassLoader();
+        for (Module module : ModuleLayer.boot().modules()) {
+            ClassLoader classLoader = module.getClassLoader();
+            if (classLoader != null && classLoader != platformClassLoader) {
+                continue;
+            }
+            for (String packageName : module.getPackages()) {
+                MODULES_BY_PACKAGE.put(packageName.replace('.', '/'), module);
+            }
+        }
+    }
+
+    private PlatformTypes() {
+    }
+
+    public static boolean isPlatformType(String internalName) {
+        return getModule(internalName) != null;
+    }
+
+    /**
+     * @return the shared definition, or {@code null} if it is no type of the running JDK
+     */
+    public static TypeDefinition resolve(String internalName) {
+        return isPlatformType(internalName) ? METADATA_SYSTEM.resolveType(internalName, false) : null;
+    }
+
+    public static BoundedMetadataSystem.Statistics getStatistics() {
+        return METADATA_SYSTEM.getStatistics();
+    }
+
+    private static Module getModule(String internalName) {
+        int slash = internalName.lastIndexOf('/');
+        return slash < 0 ? null : MODULES_BY_PACKAGE.get(internalName.substring(0, slash));
+    }
+
+    private static boolean tryLoadType(String internalName, Buffer buffer) {
+        Module module = getModule(internalName);
+        if (module == null) {
+            return false;
+        }
+        try (InputStream in = module.getResourceAsStream(internalName + ".class")) {
+            if (in == null) {
+                return false;
+            }
+            byte[] content = in.readAllBytes();
+            buffer.reset(content.length);
+            System.arraycopy(content, 0, buffer.array(), 0, content.length);
+            buffer.position(0);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -10,19 +10,44 @@ import com.strobel.assembler.metadata.TypeReference;
 import com.strobel.core.StringUtilities;
 import com.strobel.decompiler.DecompilationOptions;
 import com.strobel.decompiler.DecompilerSettings;
-import com.strobel.decompiler.PlainTextOutput;
+import com.strobel.decompiler.languages.java.JavaOutputVisitor;
+import com.strobel.decompiler.languages.java.ast.AstBuilder;
+import com.strobel.decompiler.languages.java.ast.EntityDeclaration;
 
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class ProcyonLinkProvider implements LinkProvider {
 
-    private Map<String, Selection> definitionToSelectionMap = new HashMap<>();
-    private Map<String, Set<Selection>> referenceToSelectionsMap = new HashMap<>();
+    /**
+     * A member of the skeleton that still shows a placeholder body, see {@link #generateSkeleton()}.
+     *
+     * @param from  offset of its declaration, after the indentation
+     * @param to    offset after its closing brace
+     * @param depth indentation of its declaration
+     */
+    public record Placeholder(MethodDefinition method, int from, int to, int depth) {
+    }
+
+    /**
+     * A decompiled member with its links, offsets relative to its first character.
+     */
+    public record Fragment(String text, Map<String, Selection> definitions,
+                           Map<String, Set<Selection>> references) {
+    }
+
+    static final String PLACEHOLDER_TEXT = "正在反编译…";
+
+    private volatile Map<String, Selection> definitionToSelectionMap = new HashMap<>();
+    private volatile Map<String, Set<Selection>> referenceToSelectionsMap = new HashMap<>();
     private boolean isSelectionMapsPopulated = false;
 
     private MetadataSystem metadataSystem;
@@ -31,112 +56,228 @@ public class ProcyonLinkProvider implements LinkProvider {
     private TypeDefinition type;
 
     private String currentTypeQualifiedName;
-    private String textContent = "";
+    private volatile String textContent = "";
+    private Consumer<String> contentListener;
+
+    // "pkg/Outer|pkg.Outer$Inner" or "" by internal name, kept in the metadata system if that is bounded
+    private final Map<String, String> pathAndTypeStrs = new ConcurrentHashMap<>();
+    private BoundedMetadataSystem linkTargetMemo;
+    // filled by processLinks(), so that hovering does not look up types
+    private final Map<String, Boolean> navigableLinks = new ConcurrentHashMap<>();
+    private final Map<String, String> linkDescriptions = new ConcurrentHashMap<>();
 
     @Override
     public void generateContent() {
-        definitionToSelectionMap = new HashMap<>();
-        referenceToSelectionsMap = new HashMap<>();
         currentTypeQualifiedName = type.getPackageName() + "." + type.getName();
         final StringWriter stringwriter = new StringWriter();
-        PlainTextOutput plainTextOutput = new PlainTextOutput(stringwriter) {
-            @Override
-            public void writeDefinition(String text, Object definition, boolean isLocal) {
-                super.writeDefinition(text, definition, isLocal);
-                try {
-                    if (text != null && definition != null) {
-                        String uniqueStr = createUniqueStrForReference(definition);
-                        if (uniqueStr != null) {
-                            // fix link's underline length: _java.util.HashSet_
-                            // -> _HashSet_
-                            text = text.replaceAll("[^.]*\\.", "");
-                            int from = stringwriter.getBuffer().length() - text.length();
-                            int to = stringwriter.getBuffer().length();
-                            definitionToSelectionMap.put(uniqueStr, new Selection(from, to));
-                        }
-                    }
-                } catch (Exception e) {
-                    MoWuDecomp.showExceptionDialog("Exception!", e);
-                }
+        LinkRecordingOutput plainTextOutput = new LinkRecordingOutput(stringwriter, contentListener);
+        plainTextOutput.setUnicodeOutputEnabled(decompilationOptions.getSettings().isUnicodeOutputEnabled());
+        settings.getLanguage().decompileType(type, plainTextOutput, decompilationOptions);
+        plainTextOutput.publish();
+        definitionToSelectionMap = plainTextOutput.definitions;
+        referenceToSelectionsMap = plainTextOutput.references;
+        textContent = stringwriter.toString();
+        isSelectionMapsPopulated = true;
+    }
+
+    /**
+     * Like {@link #generateContent()}, but without decompiling a single method
+     * body: each shows a placeholder until {@link #replaceMember} puts the
+     * result of {@link #decompileMember} in its place.
+     *
+     * @return the members with a placeholder, in document order
+     */
+    public List<Placeholder> generateSkeleton() {
+        currentTypeQualifiedName = type.getPackageName() + "." + type.getName();
+        List<MethodDefinition> methods = new ArrayList<>();
+        AstBuilder builder = ProcyonSkeleton.buildSkeleton(type, settings, methods);
+        StringWriter stringwriter = new StringWriter();
+        LinkRecordingOutput plainTextOutput = new LinkRecordingOutput(stringwriter, null);
+        plainTextOutput.setUnicodeOutputEnabled(settings.isUnicodeOutputEnabled());
+        builder.generateCode(plainTextOutput);
+        if (plainTextOutput.placeholders.size() != methods.size()) {
+            throw new IllegalStateException("Printed " + plainTextOutput.placeholders.size() + " of "
+                    + methods.size() + " placeholders of " + type.getInternalName());
+        }
+        List<Placeholder> placeholders = new ArrayList<>(methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            int[] range = plainTextOutput.placeholders.get(i);
+            placeholders.add(new Placeholder(methods.get(i), range[0], range[1], range[2]));
+        }
+        definitionToSelectionMap = plainTextOutput.definitions;
+        referenceToSelectionsMap = plainTextOutput.references;
+        textContent = stringwriter.toString();
+        isSelectionMapsPopulated = true;
+        return placeholders;
+    }
+
+    /**
+     * Decompiles the member of a placeholder, may run on any thread.
+     */
+    public Fragment decompileMember(Placeholder placeholder) {
+        EntityDeclaration member = ProcyonSkeleton.buildMember(placeholder.method(), settings);
+        if (member == null) {
+            return new Fragment("", Collections.emptyMap(), Collections.emptyMap());
+        }
+        StringWriter stringwriter = new StringWriter();
+        LinkRecordingOutput plainTextOutput = new LinkRecordingOutput(stringwriter, null);
+        plainTextOutput.setUnicodeOutputEnabled(settings.isUnicodeOutputEnabled());
+        for (int i = 0; i < placeholder.depth(); i++) {
+            plainTextOutput.indent();
+        }
+        member.acceptVisitor(new JavaOutputVisitor(plainTextOutput, settings), null);
+        // may define what the skeleton only referred to, e.g. a local class
+        plainTextOutput.definitions.keySet().forEach(navigableLinks::remove);
+        precomputeLinks(plainTextOutput.definitions.keySet(), plainTextOutput.definitions);
+        precomputeLinks(plainTextOutput.references.keySet(), plainTextOutput.definitions);
+        return new Fragment(stringwriter.toString().stripTrailing(), plainTextOutput.definitions,
+                plainTextOutput.references);
+    }
+
+    /**
+     * Replaces {@code [from, to)} of the text with a decompiled member and
+     * moves the links behind it. The maps are replaced, not modified, so
+     * readers on other threads always see a consistent state.
+     * <p>
+     * A member the transformations dropped takes its line and the blank
+     * line after it along.
+     *
+     * @return the range of the text that was replaced
+     */
+    public Selection replaceMember(int from, int to, Fragment fragment) {
+        Selection range = fragment.text().isEmpty() ? getLines(from, to) : new Selection(from, to);
+        replace(range.from(), range.to(), fragment);
+        return range;
+    }
+
+    private Selection getLines(int from, int to) {
+        int lineStart = textContent.lastIndexOf('\n', from - 1) + 1;
+        int lineEnd = skipLine(to);
+        if (lineEnd < textContent.length() && textContent.substring(lineEnd, skipLine(lineEnd)).isBlank()) {
+            lineEnd = skipLine(lineEnd);
+        }
+        return new Selection(lineStart, lineEnd);
+    }
+
+    private int skipLine(int offset) {
+        int lineEnd = textContent.indexOf('\n', offset);
+        return lineEnd < 0 ? textContent.length() : lineEnd + 1;
+    }
+
+    private void replace(int from, int to, Fragment fragment) {
+        int delta = fragment.text().length() - (to - from);
+        Map<String, Selection> definitions = new HashMap<>();
+        definitionToSelectionMap.forEach((uniqueStr, selection) -> {
+            Selection moved = moveSelection(selection, from, to, delta);
+            if (moved != null) {
+                definitions.put(uniqueStr, moved);
             }
+        });
+        fragment.definitions().forEach((uniqueStr, selection) ->
+                definitions.put(uniqueStr, new Selection(selection.from() + from, selection.to() + from)));
 
-            @Override
-            public void writeReference(String text, Object reference, boolean isLocal) {
-                super.writeReference(text, reference, isLocal);
-                try {
-                    if (text != null && reference != null) {
-                        String uniqueStr = createUniqueStrForReference(reference);
-                        if (uniqueStr != null) {
-                            text = text.replaceAll("[^.]*\\.", "");
-                            int from = stringwriter.getBuffer().length() - text.length();
-                            int to = stringwriter.getBuffer().length();
-                            if (reference instanceof FieldReference) {
-                                // fix enum definition links (note: could not fix enum reference links)
-                                if (((FieldReference) reference).isDefinition()) {
-                                    definitionToSelectionMap.put(uniqueStr, new Selection(from, to));
-                                    return;
-                                }
-                            }
-                            if (referenceToSelectionsMap.containsKey(uniqueStr)) {
-                                Set<Selection> selectionsSet = referenceToSelectionsMap.get(uniqueStr);
-                                if (selectionsSet != null) {
-                                    selectionsSet.add(new Selection(from, to));
-                                }
-                            } else {
-                                Set<Selection> selectionsSet = new HashSet<>();
-                                selectionsSet.add(new Selection(from, to));
-                                referenceToSelectionsMap.put(uniqueStr, selectionsSet);
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    MoWuDecomp.showExceptionDialog("Exception!", e);
+        Map<String, Set<Selection>> references = new HashMap<>();
+        referenceToSelectionsMap.forEach((uniqueStr, selections) -> {
+            for (Selection selection : selections) {
+                Selection moved = moveSelection(selection, from, to, delta);
+                if (moved != null) {
+                    references.computeIfAbsent(uniqueStr, key -> new HashSet<>()).add(moved);
                 }
             }
-        };
-        plainTextOutput.setUnicodeOutputEnabled(decompilationOptions.getSettings().isUnicodeOutputEnabled());
-        settings.getLanguage().decompileType(type, plainTextOutput, decompilationOptions);
-        textContent = stringwriter.toString();
+        });
+        fragment.references().forEach((uniqueStr, selections) -> {
+            for (Selection selection : selections) {
+                references.computeIfAbsent(uniqueStr, key -> new HashSet<>())
+                        .add(new Selection(selection.from() + from, selection.to() + from));
+            }
+        });
+
+        textContent = textContent.substring(0, from) + fragment.text() + textContent.substring(to);
+        definitionToSelectionMap = definitions;
+        referenceToSelectionsMap = references;
+    }
+
+    private static Selection moveSelection(Selection selection, int from, int to, int delta) {
+        if (selection.to() <= from) {
+            return selection;
+        } else if (selection.from() >= to) {
+            return new Selection(selection.from() + delta, selection.to() + delta);
+        }
+        // part of the replaced member
+        return null;
+    }
+
+    @Override
+    public void setContentListener(Consumer<String> contentListener) {
+        this.contentListener = contentListener;
+    }
+
+    @Override
+    public void setContent(String textContent, Map<String, Selection> definitionToSelectionMap,
+                           Map<String, Set<Selection>> referenceToSelectionsMap) {
+        this.definitionToSelectionMap = new HashMap<>(definitionToSelectionMap);
+        this.referenceToSelectionsMap = new HashMap<>(referenceToSelectionsMap);
+        currentTypeQualifiedName = type.getPackageName() + "." + type.getName();
+        this.textContent = textContent;
         isSelectionMapsPopulated = true;
     }
 
     private String createUniqueStrForReference(Object reference) {
-        String uniqueStr = null;
         if (reference instanceof TypeReference type) {
             String pathAndTypeStr = getPathAndTypeStr(type);
-            if (pathAndTypeStr != null) {
-                uniqueStr = "type|" + pathAndTypeStr;
-            }
+            return pathAndTypeStr.isEmpty() ? null : "type|" + pathAndTypeStr;
         } else if (reference instanceof MethodReference method) {
             String pathAndTypeStr = getPathAndTypeStr(method.getDeclaringType());
-            if (pathAndTypeStr != null) {
-                uniqueStr = "method|" + pathAndTypeStr + "|" + method.getName() + "|" + method.getErasedSignature();
-            }
+            return pathAndTypeStr.isEmpty() ? null
+                    : "method|" + pathAndTypeStr + "|" + method.getName() + "|" + method.getErasedSignature();
         } else if (reference instanceof FieldReference field) {
             String pathAndTypeStr = getPathAndTypeStr(field.getDeclaringType());
-            if (pathAndTypeStr != null) {
-                uniqueStr = "field|" + pathAndTypeStr + "|" + field.getName();
-            }
+            return pathAndTypeStr.isEmpty() ? null : "field|" + pathAndTypeStr + "|" + field.getName();
         }
-        return uniqueStr;
+        return null;
     }
 
+    /**
+     * @return "pkg/Outer|pkg.Outer$Inner", or "" if the type has no usable name
+     */
     private String getPathAndTypeStr(TypeReference typeRef) {
+        String internalName = typeRef.getInternalName();
+        BoundedMetadataSystem memo = linkTargetMemo;
+        String pathAndTypeStr = memo != null ? memo.getLinkTarget(internalName) : pathAndTypeStrs.get(internalName);
+        if (pathAndTypeStr == null) {
+            pathAndTypeStr = createPathAndTypeStr(typeRef);
+            if (memo != null) {
+                memo.putLinkTarget(internalName, pathAndTypeStr);
+            } else {
+                pathAndTypeStrs.put(internalName, pathAndTypeStr);
+            }
+        }
+        return pathAndTypeStr;
+    }
+
+    private String createPathAndTypeStr(TypeReference typeRef) {
         String name = typeRef.getName();
         String packageStr = typeRef.getPackageName();
         TypeReference mostOuterTypeRef = getMostOuterTypeRef(typeRef);
         String mostOuterTypeName = mostOuterTypeRef.getName();
-        if (name != null && packageStr != null && mostOuterTypeName != null && name.trim().length() > 0
-                && mostOuterTypeName.trim().length() > 0) {
-            String pathStr = packageStr.replaceAll("\\.", "/") + "/" + mostOuterTypeName;
-            String typeStr = packageStr + "." + name.replace(".", "$");
+        if (name != null && packageStr != null && mostOuterTypeName != null && !name.isBlank()
+                && !mostOuterTypeName.isBlank()) {
+            String pathStr = packageStr.replace('.', '/') + "/" + mostOuterTypeName;
+            String typeStr = packageStr + "." + name.replace('.', '$');
             return pathStr + "|" + typeStr;
         }
-        return null;
+        return "";
     }
 
     private TypeReference getMostOuterTypeRef(TypeReference typeRef) {
-        int maxDecraringDepth = typeRef.getFullName().split("([.$])").length;
+        String fullName = typeRef.getFullName();
+        int maxDecraringDepth = 1;
+        for (int i = 0; i < fullName.length(); i++) {
+            char c = fullName.charAt(i);
+            if (c == '.' || c == '$') {
+                maxDecraringDepth++;
+            }
+        }
         for (int i = 0; i < maxDecraringDepth; i++) {
             TypeReference declaringTypeRef = typeRef.getDeclaringType();
             if (declaringTypeRef == null) {
@@ -158,14 +299,17 @@ public class ProcyonLinkProvider implements LinkProvider {
         String packageName = typeRef.getPackageName();
         if (packageName == null)
             return typeRef;
-        String[] nameParts = name.split("\\$");
-        StringBuilder newName = new StringBuilder();
-        String sep = "";
-        for (int i = 0; i < nameParts.length - 1; i++) {
-            newName.append(sep).append(nameParts[i]);
-            sep = "$";
-            String newInternalName = packageName.replaceAll("\\.", "/") + "/" + newName;
-            TypeReference newTypeRef = metadataSystem.lookupType(newInternalName);
+        String packagePath = packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/";
+        // the prefixes before each $, as if split at $, which drops trailing ones; an empty prefix names no type
+        int last = name.length() - 1;
+        while (last >= 0 && name.charAt(last) == '$') {
+            last--;
+        }
+        for (int end = name.indexOf('$'); end >= 0 && end < last; end = name.indexOf('$', end + 1)) {
+            if (end == 0) {
+                continue;
+            }
+            TypeReference newTypeRef = metadataSystem.lookupType(packagePath + name.substring(0, end));
             if (newTypeRef != null) {
                 TypeDefinition newTypeDef = newTypeRef.resolve();
                 if (newTypeDef != null) {
@@ -181,8 +325,30 @@ public class ProcyonLinkProvider implements LinkProvider {
         return textContent;
     }
 
+    /**
+     * Looks up whether the links are navigable and their descriptions, so
+     * that hovering over them only reads maps.
+     */
     @Override
     public void processLinks() {
+        Map<String, Selection> definitions = definitionToSelectionMap;
+        precomputeLinks(definitions.keySet(), definitions);
+        precomputeLinks(referenceToSelectionsMap.keySet(), definitions);
+    }
+
+    private void precomputeLinks(Set<String> uniqueStrs, Map<String, Selection> definitions) {
+        for (String uniqueStr : uniqueStrs) {
+            if (navigableLinks.containsKey(uniqueStr)) {
+                continue;
+            }
+            boolean isNavigable = definitions.containsKey(uniqueStr)
+                    || definitionToSelectionMap.containsKey(uniqueStr) || lookUpLinkNavigable(uniqueStr);
+            if (isNavigable) {
+                String description = lookUpLinkDescription(uniqueStr);
+                linkDescriptions.put(uniqueStr, description != null ? description : "");
+            }
+            navigableLinks.put(uniqueStr, isNavigable);
+        }
     }
 
     @Override
@@ -201,13 +367,18 @@ public class ProcyonLinkProvider implements LinkProvider {
             return true;
         if (uniqueStr == null)
             return false;
+        Boolean isNavigable = navigableLinks.get(uniqueStr);
+        return isNavigable != null ? isNavigable : lookUpLinkNavigable(uniqueStr);
+    }
+
+    private boolean lookUpLinkNavigable(String uniqueStr) {
         String[] linkParts = uniqueStr.split("\\|");
         if (linkParts.length < 3)
             return false;
         String typeStr = linkParts[2];
         if (typeStr.trim().length() <= 0)
             return false;
-        TypeReference typeRef = metadataSystem.lookupType(typeStr.replaceAll("\\.", "/"));
+        TypeReference typeRef = metadataSystem.lookupType(typeStr.replace('.', '/'));
         if (typeRef == null)
             return false;
         TypeDefinition typeDef = typeRef.resolve();
@@ -286,15 +457,23 @@ public class ProcyonLinkProvider implements LinkProvider {
 
     @Override
     public String getLinkDescription(String uniqueStr) {
+        if (uniqueStr == null)
+            return null;
+        String description = linkDescriptions.get(uniqueStr);
+        if (description != null) {
+            return description.isEmpty() ? null : description;
+        }
+        return lookUpLinkDescription(uniqueStr);
+    }
+
+    private String lookUpLinkDescription(String uniqueStr) {
         String readableLink = null;
         try {
-            if (uniqueStr == null)
-                return null;
             String[] linkParts = uniqueStr.split("\\|");
             if (linkParts.length < 3)
                 return null;
             String typeStr = linkParts[2];
-            TypeReference typeRef = metadataSystem.lookupType(typeStr.replaceAll("\\.", "/"));
+            TypeReference typeRef = metadataSystem.lookupType(typeStr.replace('.', '/'));
             if (typeRef == null)
                 return null;
             TypeDefinition typeDef = typeRef.resolve();
@@ -302,7 +481,7 @@ public class ProcyonLinkProvider implements LinkProvider {
                 return null;
 
             String declaredSuffix = "";
-            String mostOuterTypeStr = linkParts[1].replaceAll("/", ".");
+            String mostOuterTypeStr = linkParts[1].replace('/', '.');
             boolean isOwnFile = mostOuterTypeStr.equals(currentTypeQualifiedName);
             if (!isOwnFile) {
                 declaredSuffix = " - Declared: " + mostOuterTypeStr;
@@ -359,12 +538,32 @@ public class ProcyonLinkProvider implements LinkProvider {
         return readableLink;
     }
 
-    private String erasePackageInfoFromDesc(String desc) {
-        // Use {0,1024} instead of * as it can't be used together with a lookbehind.
-        // If errors occur, increase this limit.
-        String limiters = "()<>\\[\\]?\\s,";
-        desc = desc.replaceAll("(?<=[^" + limiters + "]{0,1024})([^" + limiters + "]*)\\.", "");
-        return desc;
+    /**
+     * Drops the package and outer types of each name: {@code java.util.List<java.lang.String>} becomes
+     * {@code List<String>}.
+     */
+    private static String erasePackageInfoFromDesc(String desc) {
+        StringBuilder erased = new StringBuilder(desc.length());
+        int nameStart = 0;
+        for (int i = 0; i < desc.length(); i++) {
+            char c = desc.charAt(i);
+            if (c == '.') {
+                erased.setLength(nameStart);
+            } else {
+                erased.append(c);
+                if (isNameLimiter(c)) {
+                    nameStart = erased.length();
+                }
+            }
+        }
+        return erased.toString();
+    }
+
+    private static boolean isNameLimiter(char c) {
+        return switch (c) {
+            case '(', ')', '<', '>', '[', ']', '?', ',', ' ', '\t', '\n', '\u000B', '\f', '\r' -> true;
+            default -> false;
+        };
     }
 
     public void setDecompilerReferences(MetadataSystem metadataSystem, DecompilerSettings settings,
@@ -372,10 +571,153 @@ public class ProcyonLinkProvider implements LinkProvider {
         this.metadataSystem = metadataSystem;
         this.settings = settings;
         this.decompilationOptions = decompilationOptions;
+        linkTargetMemo = metadataSystem instanceof BoundedMetadataSystem boundedMetadataSystem
+                ? boundedMetadataSystem : null;
     }
 
     @Override
-    public void setType(TypeDefinition type, Model model) {
+    public void setType(TypeDefinition type, ClassBytesSource classBytesSource) {
         this.type = type;
     }
+
+    /**
+     * Records the links of the written text. In a skeleton, it also moves
+     * the placeholder comment into its body and remembers where the member
+     * is.
+     */
+    private class LinkRecordingOutput extends StreamingTextOutput {
+
+        private static final String LINE_COMMENT_START = "//";
+
+        private final StringWriter stringwriter;
+        private final Map<String, Selection> definitions = new HashMap<>();
+        private final Map<String, Set<Selection>> references = new HashMap<>();
+        // from, to and depth of each placeholder member
+        private final List<int[]> placeholders = new ArrayList<>();
+        private boolean isLineCommentStartPending;
+        private boolean isPlaceholderLineSkipped;
+
+        LinkRecordingOutput(StringWriter stringwriter, Consumer<String> contentListener) {
+            super(stringwriter, contentListener);
+            this.stringwriter = stringwriter;
+        }
+
+        @Override
+        public void writeDefinition(String text, Object definition, boolean isLocal) {
+            super.writeDefinition(text, definition, isLocal);
+            try {
+                if (text != null && definition != null) {
+                    String uniqueStr = createUniqueStrForReference(definition);
+                    if (uniqueStr != null) {
+                        // fix link's underline length: _java.util.HashSet_
+                        // -> _HashSet_
+                        text = text.substring(text.lastIndexOf('.') + 1);
+                        int from = stringwriter.getBuffer().length() - text.length();
+                        int to = stringwriter.getBuffer().length();
+                        definitions.put(uniqueStr, new Selection(from, to));
+                    }
+                }
+            } catch (Exception e) {
+                MoWuDecomp.showExceptionDialog("Exception!", e);
+            }
+        }
+
+        @Override
+        public void writeReference(String text, Object reference, boolean isLocal) {
+            super.writeReference(text, reference, isLocal);
+            try {
+                if (text != null && reference != null) {
+                    String uniqueStr = createUniqueStrForReference(reference);
+                    if (uniqueStr != null) {
+                        text = text.substring(text.lastIndexOf('.') + 1);
+                        int from = stringwriter.getBuffer().length() - text.length();
+                        int to = stringwriter.getBuffer().length();
+                        if (reference instanceof FieldReference) {
+                            // fix enum definition links (note: could not fix enum reference links)
+                            if (((FieldReference) reference).isDefinition()) {
+                                definitions.put(uniqueStr, new Selection(from, to));
+                                return;
+                            }
+                        }
+                        references.computeIfAbsent(uniqueStr, key -> new HashSet<>()).add(new Selection(from, to));
+                    }
+                }
+            } catch (Exception e) {
+                MoWuDecomp.showExceptionDialog("Exception!", e);
+            }
+        }
+
+        @Override
+        public void writeComment(String value) {
+            // Procyon writes the "//" of a line comment separately, hold it back until the content is known
+            if (LINE_COMMENT_START.equals(value)) {
+                isLineCommentStartPending = true;
+                return;
+            }
+            boolean isLineComment = isLineCommentStartPending;
+            isLineCommentStartPending = false;
+            if (!isLineComment || !ProcyonSkeleton.PLACEHOLDER_MARKER.equals(value)) {
+                if (isLineComment) {
+                    super.writeComment(LINE_COMMENT_START);
+                }
+                super.writeComment(value);
+                return;
+            }
+            // the comment follows the empty body, put the placeholder text between its braces
+            StringBuffer buffer = stringwriter.getBuffer();
+            int close = buffer.lastIndexOf("}");
+            int open = buffer.lastIndexOf("{", close);
+            int closeLineStart = buffer.lastIndexOf("\n", close) + 1;
+            String indent = buffer.substring(closeLineStart, close);
+            String placeholderLine = indent + getIndentToken() + "// " + PLACEHOLDER_TEXT + "\n";
+            buffer.insert(closeLineStart, placeholderLine);
+
+            int from = findMemberStart(buffer, open);
+            int to = close + placeholderLine.length() + 1;
+            int depth = (from - (buffer.lastIndexOf("\n", from) + 1)) / Math.max(1, getIndentToken().length());
+            placeholders.add(new int[]{from, to, depth});
+            isPlaceholderLineSkipped = true;
+        }
+
+        @Override
+        public void writeLine() {
+            if (isPlaceholderLineSkipped) {
+                // the line break of the comment
+                isPlaceholderLineSkipped = false;
+                return;
+            }
+            super.writeLine();
+        }
+
+        /**
+         * @return the first character of the signature with the opening brace, or of its annotations
+         */
+        private static int findMemberStart(StringBuffer buffer, int open) {
+            int lineStart = buffer.lastIndexOf("\n", open) + 1;
+            if (buffer.substring(lineStart, open).isBlank() && lineStart > 0) {
+                // brace on a line of its own
+                lineStart = buffer.lastIndexOf("\n", lineStart - 2) + 1;
+            }
+            int start = skipIndentation(buffer, lineStart);
+            while (lineStart > 0) {
+                int previousLineStart = buffer.lastIndexOf("\n", lineStart - 2) + 1;
+                int previousStart = skipIndentation(buffer, previousLineStart);
+                if (previousStart >= buffer.length() || buffer.charAt(previousStart) != '@') {
+                    break;
+                }
+                lineStart = previousLineStart;
+                start = previousStart;
+            }
+            return start;
+        }
+
+        private static int skipIndentation(StringBuffer buffer, int index) {
+            while (index < buffer.length() && (buffer.charAt(index) == ' ' || buffer.charAt(index) == '\t')) {
+                index++;
+            }
+            return index;
+        }
+
+    }
+
 }
@@ -0,0 +1,273 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.Flags;
+import com.strobel.assembler.metadata.MethodDefinition;
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.assembler.metadata.TypeReference;
+import com.strobel.decompiler.DecompilerContext;
+import com.strobel.decompiler.DecompilerSettings;
+import com.strobel.decompiler.languages.java.ast.AstBuilder;
+import com.strobel.decompiler.languages.java.ast.BlockStatement;
+import com.strobel.decompiler.languages.java.ast.ClassType;
+import com.strobel.decompiler.languages.java.ast.Comment;
+import com.strobel.decompiler.languages.java.ast.CompilationUnit;
+import com.strobel.decompiler.languages.java.ast.ConstructorDeclaration;
+import com.strobel.decompiler.languages.java.ast.EntityDeclaration;
+import com.strobel.decompiler.languages.java.ast.Keys;
+import com.strobel.decompiler.languages.java.ast.MethodDeclaration;
+import com.strobel.decompiler.languages.java.ast.Roles;
+import com.strobel.decompiler.languages.java.ast.TypeDeclaration;
+import com.strobel.decompiler.languages.java.ast.transforms.DeclareLocalClassesTransform;
+import com.strobel.decompiler.languages.java.ast.transforms.IAstTransform;
+import com.strobel.decompiler.languages.java.ast.transforms.TransformationPipeline;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Procyon ASTs for showing a class before its method bodies are decompiled.
+ * <p>
+ * The skeleton is the class with its declarations, fields and member
+ * signatures, built without decompiling a single method body. Every member
+ * with code gets an empty body whose only content is the
+ * {@link #PLACEHOLDER_MARKER} comment; those bodies are decompiled one
+ * member at a time later, each in a declaration of its type that contains
+ * nothing else.
+ * <p>
+ * Procyon's {@link DeclareLocalClassesTransform} is left out of the
+ * skeleton pass: it moves a local class to where it is first used in the
+ * body, and fails on a body that was never decompiled. A local class shows
+ * as a bare declaration in the placeholder body of its method until the
+ * member is decompiled, which places it properly.
+ */
+public final class ProcyonSkeleton {
+
+    /**
+     * Comment of a placeholder body, Procyon prints it after the closing brace.
+     */
+    public static final String PLACEHOLDER_MARKER = "MoWuDecomp:placeholder";
+
+    // private in Procyon, createMethod() would turn a constructor into a method named <init>
+    private static final MethodHandle CREATE_CONSTRUCTOR;
+
+    static {
+        try {
+            Method createConstructor = AstBuilder.class.getDeclaredMethod("createConstructor", MethodDefinition.class);
+            createConstructor.setAccessible(true);
+            CREATE_CONSTRUCTOR = MethodHandles.lookup().unreflect(createConstructor);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ProcyonSkeleton() {
+    }
+
+    /**
+     * @param placeholders receives the members with a placeholder body, in the order they are printed
+     * @return the transformed skeleton, ready for {@link AstBuilder#generateCode}
+     */
+    public static AstBuilder buildSkeleton(TypeDefinition type, DecompilerSettings settings,
+                                           List<MethodDefinition> placeholders) {
+        DecompilerContext context = new DecompilerContext();
+        context.setCurrentType(type);
+        context.setSettings(settings);
+        AstBuilder builder = new AstBuilder(context);
+        builder.setDecompileMethodBodies(isDecompiledAsWhole(type));
+        builder.addType(type);
+        // local classes are declared in the bodies, which are still empty
+        for (IAstTransform transform : TransformationPipeline.createPipeline(context)) {
+            if (!(transform instanceof DeclareLocalClassesTransform)) {
+                transform.run(builder.getCompilationUnit());
+            }
+        }
+        // no transformation is left, this only inserts the parentheses and marks them as run
+        builder.runTransformations(transform -> true);
+        for (TypeDeclaration typeDeclaration : builder.getCompilationUnit().getTypes()) {
+            addPlaceholders(builder, settings, typeDeclaration, placeholders);
+        }
+        return builder;
+    }
+
+    /**
+     * Decompiles one member with its body.
+     *
+     * @return the transformed declaration, or {@code null} if the transformations
+     * dropped it, e.g. an implicit default constructor
+     */
+    public static EntityDeclaration buildMember(MethodDefinition method, DecompilerSettings settings) {
+        TypeDefinition declaringType = method.getDeclaringType().resolve();
+        DecompilerContext context = new DecompilerContext();
+        context.setCurrentType(declaringType);
+        context.setSettings(settings);
+        AstBuilder builder = new AstBuilder(context);
+
+        TypeDeclaration typeDeclaration = createTypeDeclaration(declaringType);
+        typeDeclaration.addChild(createMember(builder, method), Roles.TYPE_MEMBER);
+        if (declaringType.isInnerClass() && !declaringType.isStatic() && !method.isConstructor()) {
+            // Procyon learns the outer instance field from the assignments in the constructors
+            for (MethodDefinition constructor : declaringType.getDeclaredMethods()) {
+                if (constructor.isConstructor() && hasCode(constructor)) {
+                    typeDeclaration.addChild(createMember(builder, constructor), Roles.TYPE_MEMBER);
+                }
+            }
+        }
+        // inner classes refer to their outer instances through the enclosing declarations
+        TypeDeclaration outermostDeclaration = typeDeclaration;
+        for (TypeReference outerType = declaringType.getDeclaringType(); outerType != null;
+             outerType = outerType.getDeclaringType()) {
+            TypeDefinition resolvedOuterType = outerType.resolve();
+            if (resolvedOuterType == null) {
+                break;
+            }
+            TypeDeclaration outerDeclaration = createTypeDeclaration(resolvedOuterType);
+            // Procyon inlines calls of the synthetic accessors of enclosing types from their declarations
+            for (MethodDefinition outerMethod : resolvedOuterType.getDeclaredMethods()) {
+                if (outerMethod.isSynthetic() && !outerMethod.isBridgeMethod() && outerMethod.isPackagePrivate()) {
+                    outerDeclaration.addChild(createMember(builder, outerMethod), Roles.TYPE_MEMBER);
+                }
+            }
+            outerDeclaration.addChild(outermostDeclaration, Roles.TYPE_MEMBER);
+            outermostDeclaration = outerDeclaration;
+        }
+        builder.getCompilationUnit().addChild(outermostDeclaration, CompilationUnit.TYPE_ROLE);
+        builder.runTransformations();
+
+        for (EntityDeclaration member : typeDeclaration.getMembers()) {
+            if (method.equals(member.getUserData(Keys.METHOD_DEFINITION))) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    private static void addPlaceholders(AstBuilder builder, DecompilerSettings settings,
+                                        TypeDeclaration typeDeclaration, List<MethodDefinition> placeholders) {
+        restoreTypeInitializer(builder, typeDeclaration);
+        for (EntityDeclaration member : new ArrayList<>(typeDeclaration.getMembers())) {
+            if (member instanceof TypeDeclaration nestedType) {
+                TypeDefinition nestedTypeDefinition = nestedType.getUserData(Keys.TYPE_DEFINITION);
+                if (nestedTypeDefinition != null && isDecompiledAsWhole(nestedTypeDefinition)) {
+                    nestedType.replaceWith(buildType(nestedTypeDefinition, settings));
+                } else {
+                    addPlaceholders(builder, settings, nestedType, placeholders);
+                }
+                continue;
+            }
+            MethodDefinition method = member.getUserData(Keys.METHOD_DEFINITION);
+            if (method == null || !hasCode(method)) {
+                continue;
+            }
+            if (member instanceof MethodDeclaration methodDeclaration && methodDeclaration.getBody().isNull()) {
+                methodDeclaration.setBody(createPlaceholderBody());
+                placeholders.add(method);
+            } else if (member instanceof ConstructorDeclaration constructorDeclaration
+                    && constructorDeclaration.getBody().isNull()) {
+                constructorDeclaration.setBody(createPlaceholderBody());
+                placeholders.add(method);
+            }
+        }
+    }
+
+    private static TypeDeclaration buildType(TypeDefinition type, DecompilerSettings settings) {
+        DecompilerContext context = new DecompilerContext();
+        context.setCurrentType(type);
+        context.setSettings(settings);
+        AstBuilder builder = new AstBuilder(context);
+        builder.addType(type);
+        builder.runTransformations();
+        TypeDeclaration typeDeclaration = builder.getCompilationUnit().getTypes().firstOrNullObject();
+        typeDeclaration.remove();
+        return typeDeclaration;
+    }
+
+    /**
+     * The transformations drop a static initializer without body, put it back before the nested types.
+     */
+    private static void restoreTypeInitializer(AstBuilder builder, TypeDeclaration typeDeclaration) {
+        TypeDefinition type = typeDeclaration.getUserData(Keys.TYPE_DEFINITION);
+        if (type == null) {
+            return;
+        }
+        MethodDefinition typeInitializer = null;
+        for (MethodDefinition method : type.getDeclaredMethods()) {
+            if (method.isTypeInitializer() && hasCode(method)) {
+                typeInitializer = method;
+                break;
+            }
+        }
+        if (typeInitializer == null) {
+            return;
+        }
+        EntityDeclaration firstNestedType = null;
+        for (EntityDeclaration member : typeDeclaration.getMembers()) {
+            if (typeInitializer.equals(member.getUserData(Keys.METHOD_DEFINITION))) {
+                return;
+            }
+            if (firstNestedType == null && member instanceof TypeDeclaration) {
+                firstNestedType = member;
+            }
+        }
+        EntityDeclaration member = builder.createMethod(typeInitializer);
+        if (firstNestedType != null) {
+            typeDeclaration.insertChildBefore(firstNestedType, member, Roles.TYPE_MEMBER);
+        } else {
+            typeDeclaration.addChild(member, Roles.TYPE_MEMBER);
+        }
+    }
+
+    // Procyon recognizes records and enum constants from the bodies, such types are small anyway
+    private static boolean isDecompiledAsWhole(TypeDefinition type) {
+        return type.isRecord() || type.isEnum();
+    }
+
+    // hasBody() is only true once the body was read
+    private static boolean hasCode(MethodDefinition method) {
+        return !method.isAbstract() && (method.getFlags() & Flags.NATIVE) == 0;
+    }
+
+    private static BlockStatement createPlaceholderBody() {
+        BlockStatement body = new BlockStatement();
+        body.addChild(new Comment(PLACEHOLDER_MARKER), Roles.COMMENT);
+        return body;
+    }
+
+    private static EntityDeclaration createMember(AstBuilder builder, MethodDefinition method) {
+        if (!method.isConstructor()) {
+            return builder.createMethod(method);
+        }
+        try {
+            return (EntityDeclaration) CREATE_CONSTRUCTOR.invoke(builder, method);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static TypeDeclaration createTypeDeclaration(TypeDefinition type) {
+        TypeDeclaration typeDeclaration = new TypeDeclaration();
+        typeDeclaration.setName(type.getSimpleName());
+        typeDeclaration.setClassType(getClassType(type));
+        typeDeclaration.putUserData(Keys.TYPE_DEFINITION, type);
+        typeDeclaration.putUserData(Keys.MEMBER_REFERENCE, type);
+        return typeDeclaration;
+    }
+
+    private static ClassType getClassType(TypeDefinition type) {
+        if (type.isAnnotation()) {
+            return ClassType.ANNOTATION;
+        } else if (type.isInterface()) {
+            return ClassType.INTERFACE;
+        } else if (type.isEnum()) {
+            return ClassType.ENUM;
+        } else if (type.isRecord()) {
+            return ClassType.RECORD;
+        }
+        return ClassType.CLASS;
+    }
+
+}
@@ -1,14 +1,7 @@
 package com.mohistmc.mowudecomp;
 
-import com.strobel.assembler.metadata.TypeDefinition;
-
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
+import com.strobel.decompiler.DecompilerSettings;
+import com.strobel.decompiler.languages.java.JavaFormattingOptions;
 
 /**
  * @author Mgazul by MohistMC
@@ -16,48 +9,39 @@ import java.util.jar.JarOutputStream;
  */
 public class ProcyonUtils {
 
-    public static byte[] getContent(TypeDefinition type, Model model) {
-        var file = model.getOpenedFile();
-        if (file.getName().endsWith(".class")) {
-            try (var inputStream = new FileInputStream(file)) {
-                var content = new byte[(int) file.length()];
-                inputStream.read(content);
-                return content;
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } else {
-            try (var jarFile = new JarFile(file)) {
-                var entry = jarFile.getJarEntry(type.getInternalName() + ".class");
-                if (entry != null) {
-                    try (var inputStream = jarFile.getInputStream(entry)) {
-                        var content = new byte[(int) entry.getSize()];
-                        inputStream.read(content);
-                        return content;
-                    }
-                } else {
-                    return null;
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+    public static DecompilerSettings cloneSettings(DecompilerSettings settings) {
+        DecompilerSettings newSettings = new DecompilerSettings();
+        if (newSettings.getJavaFormattingOptions() == null) {
+            newSettings.setJavaFormattingOptions(JavaFormattingOptions.createDefault());
         }
+        copySettings(settings, newSettings);
+        return newSettings;
     }
 
-    public static File createSingletonTempJar(String entryName, byte[] content) {
-        try {
-            var file = File.createTempFile("luyten", ".jar");
-            file.deleteOnExit();
-            try (var jos = new JarOutputStream(new FileOutputStream(file))) {
-                var je = new JarEntry(entryName);
-                je.setSize(content.length);
-                jos.putNextEntry(je);
-                jos.write(content);
-                jos.closeEntry();
-            }
-            return file;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * Copies what {@link #cloneSettings} copies, e.g. into the clone of a
+     * context after a change from the main menu.
+     */
+    public static void copySettings(DecompilerSettings settings, DecompilerSettings newSettings) {
+        // synchronized: against main menu changes
+        synchronized (settings) {
+            newSettings.setExcludeNestedTypes(settings.getExcludeNestedTypes());
+            newSettings.setFlattenSwitchBlocks(settings.getFlattenSwitchBlocks());
+            newSettings.setForceExplicitImports(settings.getForceExplicitImports());
+            newSettings.setForceExplicitTypeArguments(settings.getForceExplicitTypeArguments());
+            newSettings.setOutputFileHeaderText(settings.getOutputFileHeaderText());
+            newSettings.setLanguage(settings.getLanguage());
+            newSettings.setShowSyntheticMembers(settings.getShowSyntheticMembers());
+            newSettings.setAlwaysGenerateExceptionVariableForCatchBlocks(
+                    settings.getAlwaysGenerateExceptionVariableForCatchBlocks());
+            newSettings.setOutputDirectory(settings.getOutputDirectory());
+            newSettings.setRetainRedundantCasts(settings.getRetainRedundantCasts());
+            newSettings.setIncludeErrorDiagnostics(settings.getIncludeErrorDiagnostics());
+            newSettings.setIncludeLineNumbersInBytecode(settings.getIncludeLineNumbersInBytecode());
+            newSettings.setRetainPointlessSwitches(settings.getRetainPointlessSwitches());
+            newSettings.setUnicodeOutputEnabled(settings.isUnicodeOutputEnabled());
+            newSettings.setMergeVariables(settings.getMergeVariables());
+            newSettings.setShowDebugLineNumbers(settings.getShowDebugLineNumbers());
         }
     }
 }
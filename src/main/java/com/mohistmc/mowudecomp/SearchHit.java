@@ -0,0 +1,23 @@
+package com.mohistmc.mowudecomp;
+
+/**
+ * One Find All result: a matching line of an entry, or the entry itself
+ * when {@code line} is 0 (class name matches, failures).
+ *
+ * @param note text of the matching line, or a remark about the entry
+ */
+public record SearchHit(String entryName, int line, String note) {
+
+    public static SearchHit ofEntry(String entryName) {
+        return new SearchHit(entryName, 0, null);
+    }
+
+    @Override
+    public String toString() {
+        if (line > 0) {
+            return entryName + ":" + line + ":  " + note.strip();
+        }
+        return note == null ? entryName : entryName + "  " + note;
+    }
+
+}
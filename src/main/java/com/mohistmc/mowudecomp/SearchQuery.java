@@ -0,0 +1,202 @@
+package com.mohistmc.mowudecomp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * A Find All query, matched line by line.
+ * <p>
+ * Besides matching, it knows the literal fragments every match must
+ * contain, which {@link SourceIndex} turns into trigrams to skip entries
+ * that cannot match.
+ */
+public final class SearchQuery {
+
+    private final String text;
+    private final boolean matchCase;
+    private final boolean wholeWords;
+    private final Pattern pattern;
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if {@code regex} is set and {@code text} is no valid pattern
+     */
+    public SearchQuery(String text, boolean matchCase, boolean wholeWords, boolean regex) {
+        this.text = text;
+        this.matchCase = matchCase;
+        this.wholeWords = wholeWords;
+        this.pattern = regex ? Pattern.compile(text, matchCase ? 0 : Pattern.CASE_INSENSITIVE) : null;
+    }
+
+    public boolean isEmpty() {
+        return text.isEmpty();
+    }
+
+    public boolean matches(String line) {
+        if (pattern != null) {
+            return pattern.matcher(line).find();
+        }
+        int length = text.length();
+        for (int i = 0; i + length <= line.length(); i++) {
+            if (line.regionMatches(!matchCase, i, text, 0, length) && (!wholeWords || isWordAt(line, i, length))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWordAt(String line, int start, int length) {
+        int end = start + length;
+        return (start == 0 || !Character.isJavaIdentifierPart(line.charAt(start - 1)))
+                && (end == line.length() || !Character.isJavaIdentifierPart(line.charAt(end)));
+    }
+
+    /**
+     * Passes every matching line of {@code content} to {@code consumer}.
+     *
+     * @return {@code true} if there was at least one
+     */
+    public boolean collectHits(String entryName, String content, Consumer<SearchHit> consumer) {
+        boolean found = false;
+        int lineNumber = 1;
+        int start = 0;
+        while (start <= content.length()) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) {
+                end = content.length();
+            }
+            String line = content.substring(start, end > start && content.charAt(end - 1) == '\r' ? end - 1 : end);
+            if (matches(line)) {
+                consumer.accept(new SearchHit(entryName, lineNumber, line));
+                found = true;
+            }
+            lineNumber++;
+            start = end + 1;
+        }
+        return found;
+    }
+
+    /**
+     * @return fragments that occur in every match, without case; empty if nothing is known
+     */
+    List<String> getRequiredLiterals() {
+        List<String> literals = new ArrayList<>();
+        if (pattern == null) {
+            literals.add(text);
+        } else if (!text.contains("|")) {
+            collectRegexLiterals(text, literals);
+        }
+        return literals;
+    }
+
+    /**
+     * Conservative scan of a regex without alternations: only plain
+     * characters outside of groups and classes count, and a character
+     * followed by {@code ?}, {@code *} or {@code {} is optional.
+     */
+    private static void collectRegexLiterals(String regex, List<String> literals) {
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                char next = regex.charAt(++i);
+                if (depth == 0 && !Character.isLetterOrDigit(next)) {
+                    run.append(next);
+                    continue;
+                }
+                if (next == 'Q') {
+                    int end = regex.indexOf("\\E", i);
+                    String quoted = regex.substring(i + 1, end < 0 ? regex.length() : end);
+                    if (depth == 0) {
+                        run.append(quoted);
+                    }
+                    i = end < 0 ? regex.length() : end + 1;
+                    continue;
+                }
+                endRun(run, literals);
+                i = skipEscapeArgument(regex, i, next);
+            } else if (c == '[') {
+                endRun(run, literals);
+                // skip the class, a leading ] or ^] is literal
+                int j = i + 1;
+                if (j < regex.length() && regex.charAt(j) == '^') j++;
+                if (j < regex.length() && regex.charAt(j) == ']') j++;
+                while (j < regex.length() && regex.charAt(j) != ']') {
+                    if (regex.charAt(j) == '\\') j++;
+                    j++;
+                }
+                i = j;
+            } else if (c == '(') {
+                endRun(run, literals);
+                depth++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+            } else if (c == '?' || c == '*' || c == '{') {
+                if (depth == 0 && !run.isEmpty()) {
+                    run.setLength(run.length() - 1);
+                }
+                endRun(run, literals);
+                if (c == '{') {
+                    int end = regex.indexOf('}', i);
+                    i = end < 0 ? regex.length() : end;
+                }
+            } else if (c == '+'|| c == '.' || c == '^' || c == '$') {
+                endRun(run, literals);
+            } else if (depth == 0) {
+                run.append(c);
+            }
+        }
+        endRun(run, literals);
+    }
+
+    /**
+     * @param i index of the letter or digit after the backslash
+     * @return index of the last character of the escape, e.g. of the
+     * {@code 1} in {@code \x41}, so that its argument is not taken for text
+     */
+    private static int skipEscapeArgument(String regex, int i, char escape) {
+        return switch (escape) {
+            case 'x' -> i + 1 < regex.length() && regex.charAt(i + 1) == '{'
+                    ? skipBraces(regex, i + 1, '}') : skipDigits(regex, i, 16, 2);
+            case 'u' -> skipDigits(regex, i, 16, 4);
+            case '0' -> skipDigits(regex, i, 8, 3);
+            case 'c' -> Math.min(i + 1, regex.length() - 1);
+            case 'k' -> skipBraces(regex, i + 1, '>');
+            case 'p', 'P' -> i + 1 < regex.length() && regex.charAt(i + 1) != '{' ? i + 1
+                    : skipBraces(regex, i + 1, '}');
+            case 'N', 'b' -> skipBraces(regex, i + 1, '}');
+            // a back reference may have more digits
+            case '1', '2', '3', '4', '5', '6', '7', '8', '9' -> skipDigits(regex, i, 10, Integer.MAX_VALUE);
+            default -> i;
+        };
+    }
+
+    /**
+     * @param open index of the character expected to open the argument, e.g. {@code {}
+     */
+    private static int skipBraces(String regex, int open, char close) {
+        if (open >= regex.length() || regex.charAt(open) != (close == '>' ? '<' : '{')) {
+            return open - 1;
+        }
+        int end = regex.indexOf(close, open);
+        return end < 0 ? regex.length() - 1 : end;
+    }
+
+    private static int skipDigits(String regex, int i, int radix, int maxDigits) {
+        for (int digits = 0; digits < maxDigits && i + 1 < regex.length()
+                && Character.digit(regex.charAt(i + 1), radix) >= 0; digits++) {
+            i++;
+        }
+        return i;
+    }
+
+    private static void endRun(StringBuilder run, List<String> literals) {
+        if (!run.isEmpty()) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.ITypeLoader;
+import com.strobel.assembler.metadata.JarTypeLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Reference-counted archive handle, shared by everything that reads the
+ * same archive (tree, tabs, Find All, Save All) so that its central
+ * directory is parsed once while any of them keeps it open.
+ * <p>
+ * Get one with {@link #open(File)} and {@link #close()} it when done; the
+ * underlying file is closed together with the last handle.
+ * <p>
+ * Entries, types and the {@link ArchiveIndex} are read through a
+ * {@link MappedArchive} of the file, which is the only parser of its
+ * central directory. Only archives the mapped reader cannot parse are
+ * opened as a {@link JarFile} instead.
+ */
+public final class SharedArchive implements ClassBytesSource, AutoCloseable {
+
+    private static final Map<String, Shared> OPEN_ARCHIVES = new HashMap<>();
+
+    private final Shared shared;
+    private boolean closed;
+
+    private SharedArchive(Shared shared) {
+        this.shared = shared;
+    }
+
+    public static SharedArchive open(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        synchronized (OPEN_ARCHIVES) {
+            Shared shared = OPEN_ARCHIVES.get(key);
+            if (shared == null) {
+                MappedArchive mappedArchive = openMapped(file);
+                shared = new Shared(key, mappedArchive == null ? new JarFile(file) : null, mappedArchive);
+                OPEN_ARCHIVES.put(key, shared);
+            }
+            shared.references++;
+            return new SharedArchive(shared);
+        }
+    }
+
+    public String getPath() {
+        return shared.key;
+    }
+
+    /**
+     * @return the entries of the archive, enumerated on first use
+     */
+    public ArchiveIndex getIndex() {
+        synchronized (shared) {
+            if (shared.index == null) {
+                shared.index = shared.mappedArchive != null
+                        ? ArchiveIndex.of(shared.mappedArchive) : ArchiveIndex.of(shared.jarFile);
+            }
+            return shared.index;
+        }
+    }
+
+    /**
+     * @return a type loader over this archive; the returned loader is safe to
+     * share between threads unless the archive could not be mapped
+     */
+    public ITypeLoader createTypeLoader() {
+        return shared.mappedArchive != null ? shared.mappedArchive : new JarTypeLoader(shared.jarFile);
+    }
+
+    /**
+     * Copies the content of an entry to {@code out}.
+     *
+     * @return {@code false} if there is no such entry
+     */
+    public boolean transferEntry(String entryName, OutputStream out) throws IOException {
+        if (shared.mappedArchive != null) {
+            return shared.mappedArchive.transferEntry(entryName, out);
+        }
+        JarEntry entry = shared.jarFile.getJarEntry(entryName);
+        if (entry == null) {
+            return false;
+        }
+        try (InputStream inputStream = shared.jarFile.getInputStream(entry)) {
+            inputStream.transferTo(out);
+        }
+        return true;
+    }
+
+    /**
+     * @return the content of the entry, or {@code null} if there is no such entry
+     */
+    public byte[] getEntryBytes(String entryName) throws IOException {
+        if (shared.mappedArchive != null) {
+            return shared.mappedArchive.getEntryBytes(entryName);
+        }
+        JarEntry entry = shared.jarFile.getJarEntry(entryName);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream inputStream = shared.jarFile.getInputStream(entry)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    /**
+     * @return the content of the entry, a read-only view of the mapping for
+     * stored entries, or {@code null} if there is no such entry
+     */
+    public ByteBuffer getEntryBuffer(String entryName) throws IOException {
+        if (shared.mappedArchive != null) {
+            return shared.mappedArchive.getEntry(entryName);
+        }
+        byte[] content = getEntryBytes(entryName);
+        return content == null ? null : ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] getClassBytes(String internalName) {
+        try {
+            return getEntryBytes(internalName + ".class");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (OPEN_ARCHIVES) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (--shared.references == 0) {
+                OPEN_ARCHIVES.remove(shared.key);
+                Closer.tryClose(shared.jarFile, shared.mappedArchive);
+            }
+        }
+    }
+
+    private static MappedArchive openMapped(File file) {
+        try {
+            return new MappedArchive(file);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[SharedArchive]: cannot map " + file + ", reading it with JarFile: " + e);
+            return null;
+        }
+    }
+
+    private static final class Shared {
+
+        private final String key;
+        // only if the archive could not be mapped
+        private final JarFile jarFile;
+        private final MappedArchive mappedArchive;
+        private ArchiveIndex index;
+        private int references;
+
+        private Shared(String key, JarFile jarFile, MappedArchive mappedArchive) {
+            this.key = key;
+            this.jarFile = jarFile;
+            this.mappedArchive = mappedArchive;
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.mohistmc.mowudecomp;
+
+import javax.swing.SwingUtilities;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Hands the files of a launch over to an already running instance.
+ * <p>
+ * The running instance listens on a loopback port that it writes, with a
+ * random token, to {@code ~/.mowudecomp/instance}. A launch with files
+ * connects there, sends the token and the file paths, one per line, and
+ * exits once the instance acknowledged them, before any UI class is
+ * loaded. If no instance answers it starts normally and listens itself.
+ */
+public final class SingleInstance {
+
+    private static final Path INSTANCE_FILE = Path.of(System.getProperty("user.home"), ".mowudecomp", "instance");
+    private static final int CONNECT_TIMEOUT_MS = 300;
+    private static final int READ_TIMEOUT_MS = 2000;
+    private static final String ACK = "OK";
+
+    private SingleInstance() {
+    }
+
+    /**
+     * @return {@code true} if a running instance took over the files
+     */
+    public static boolean handOff(List<File> files) {
+        if (files.isEmpty() || !Files.isRegularFile(INSTANCE_FILE)) {
+            return false;
+        }
+        try {
+            List<String> instance = Files.readAllLines(INSTANCE_FILE, StandardCharsets.UTF_8);
+            if (instance.size() < 2) {
+                return false;
+            }
+            int port = Integer.parseInt(instance.get(0).trim());
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                out.write(instance.get(1).trim() + "\n");
+                for (File file : files) {
+                    out.write(file.getAbsolutePath() + "\n");
+                }
+                out.write("\n");
+                out.flush();
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                return ACK.equals(in.readLine());
+            }
+        } catch (IOException | RuntimeException e) {
+            // stale file of an instance that is gone, start normally
+            return false;
+        }
+    }
+
+    /**
+     * Accepts hand-offs from later launches until this process exits.
+     */
+    public static void listen() {
+        try {
+            ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            byte[] tokenBytes = new byte[16];
+            new SecureRandom().nextBytes(tokenBytes);
+            String token = HexFormat.of().formatHex(tokenBytes);
+
+            Files.createDirectories(INSTANCE_FILE.getParent());
+            Path temp = Files.createTempFile(INSTANCE_FILE.getParent(), "instance", ".tmp");
+            Files.writeString(temp, serverSocket.getLocalPort() + "\n" + token + "\n", StandardCharsets.UTF_8);
+            Files.move(temp, INSTANCE_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteInstanceFile(token)));
+
+            Thread thread = new Thread(() -> accept(serverSocket, token), "Single-Instance");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[SingleInstance]: later launches will start their own instance: " + e);
+        }
+    }
+
+    private static void accept(ServerSocket serverSocket, String token) {
+        while (true) {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                if (!token.equals(in.readLine())) {
+                    continue;
+                }
+                String path;
+                while ((path = in.readLine()) != null && !path.isEmpty()) {
+                    File file = new File(path);
+                    SwingUtilities.invokeLater(() -> MoWuDecomp.openFileInInstance(file));
+                }
+                SwingUtilities.invokeLater(MoWuDecomp::bringToFront);
+                Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                out.write(ACK + "\n");
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("[SingleInstance]: hand-off failed: " + e);
+            }
+        }
+    }
+
+    private static void deleteInstanceFile(String token) {
+        try {
+            // a later instance may have taken over the file
+            List<String> instance = Files.readAllLines(INSTANCE_FILE, StandardCharsets.UTF_8);
+            if (instance.size() >= 2 && token.equals(instance.get(1).trim())) {
+                Files.deleteIfExists(INSTANCE_FILE);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+package com.mohistmc.mowudecomp;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * In-memory full-text index of the decompiled sources and text resources
+ * of one archive, filled by a {@link SourceIndexer}.
+ * <p>
+ * Texts are kept deflated. A trigram index (case-folded) maps every three
+ * character sequence to the entries containing it, so a query only has to
+ * inflate and scan the entries that contain all trigrams of its literals.
+ */
+public class SourceIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<String> entryNames = new ArrayList<>();
+    private final List<byte[]> texts = new ArrayList<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final List<SearchHit> failures = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private volatile int totalEntries;
+    private volatile int processedEntries;
+    private volatile boolean complete;
+
+    public void add(String entryName, String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(trigram(text, i));
+        }
+        lock.writeLock().lock();
+        try {
+            int document = entryNames.size();
+            entryNames.add(entryName);
+            texts.add(deflate(utf8));
+            for (Long trigram : trigrams) {
+                postings.computeIfAbsent(trigram, key -> new Postings()).add(document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addFailure(String entryName) {
+        lock.writeLock().lock();
+        try {
+            failures.add(new SearchHit(entryName, 0, "(search failed due to Exception. Opening file will fail too)"));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void setProgress(int processedEntries, int totalEntries) {
+        this.processedEntries = processedEntries;
+        this.totalEntries = totalEntries;
+    }
+
+    void setComplete() {
+        complete = true;
+    }
+
+    /**
+     * Releases the compressor once no more entries are added.
+     */
+    void close() {
+        lock.writeLock().lock();
+        try {
+            deflater.end();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} once every entry of the archive is indexed
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int getProcessedEntries() {
+        return processedEntries;
+    }
+
+    public int getTotalEntries() {
+        return totalEntries;
+    }
+
+    /**
+     * Passes every matching line to {@code consumer}, entry by entry in
+     * archive order, followed by the entries that could not be indexed.
+     */
+    public void search(SearchQuery query, BooleanSupplier cancelled, Consumer<SearchHit> consumer) {
+        int[] candidates;
+        List<SearchHit> failedEntries;
+        lock.readLock().lock();
+        try {
+            candidates = findCandidates(query);
+            failedEntries = new ArrayList<>(failures);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Inflater inflater = new Inflater();
+        try {
+            for (int document : candidates) {
+                if (cancelled.getAsBoolean()) {
+                    return;
+                }
+                String entryName;
+                byte[] text;
+                lock.readLock().lock();
+                try {
+                    entryName = entryNames.get(document);
+                    text = texts.get(document);
+                } finally {
+                    lock.readLock().unlock();
+                }
+                query.collectHits(entryName, inflate(inflater, text), consumer);
+            }
+        } finally {
+            inflater.end();
+        }
+        failedEntries.forEach(consumer);
+    }
+
+    private int[] findCandidates(SearchQuery query) {
+        List<Postings> required = new ArrayList<>();
+        for (String literal : query.getRequiredLiterals()) {
+            for (int i = 0; i + 3 <= literal.length(); i++) {
+                Postings list = postings.get(trigram(literal, i));
+                if (list == null) {
+                    return new int[0];
+                }
+                required.add(list);
+            }
+        }
+        if (required.isEmpty()) {
+            int[] all = new int[entryNames.size()];
+            Arrays.setAll(all, i -> i);
+            return all;
+        }
+        required.sort((a, b) -> Integer.compare(a.count, b.count));
+        int[] result = required.get(0).toArray();
+        for (int i = 1; i < required.size() && result.length > 0; i++) {
+            result = intersect(result, required.get(i).toArray());
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static long trigram(String text, int i) {
+        return ((long) fold(text.charAt(i)) << 32) | ((long) fold(text.charAt(i + 1)) << 16) | fold(text.charAt(i + 2));
+    }
+
+    /**
+     * Same folding as {@link String#regionMatches(boolean, int, String, int, int)} with ignoreCase.
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private byte[] deflate(byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 16);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    private static String inflate(Inflater inflater, byte[] data) {
+        inflater.reset();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Ascending document ids, delta and varint encoded.
+     */
+    private static final class Postings {
+
+        private byte[] data = new byte[4];
+        private int length;
+        private int count;
+        private int last;
+
+        void add(int document) {
+            int delta = document - last;
+            last = document;
+            count++;
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+        }
+
+        int[] toArray() {
+            int[] documents = new int[count];
+            int document = 0;
+            for (int i = 0, pos = 0; i < count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                document += delta;
+                documents[i] = document;
+            }
+            return documents;
+        }
+
+    }
+
+}
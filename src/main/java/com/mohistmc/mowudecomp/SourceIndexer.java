@@ -0,0 +1,148 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.core.StringUtilities;
+import com.strobel.decompiler.DecompilerSettings;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Background job filling a {@link SourceIndex} with every top level
+ * class of an archive, decompiled with Procyon, and every text resource.
+ * Nested classes are part of their top level class's source.
+ * <p>
+ * Runs with the lowest priority of the {@link DecompilationScheduler} in
+ * slices of {@link #SLICE_NANOS}, each submitting the next one, so that a
+ * class the user opens waits for one slice at most.
+ */
+public class SourceIndexer implements Runnable {
+
+    private static final long SLICE_NANOS = 200_000_000L;
+
+    private final SharedArchive archive;
+    private final DecompilerSettings settings;
+    private final DecompilationCache cache;
+    private final SourceIndex index = new SourceIndex();
+    private volatile boolean cancel;
+    // handed from slice to slice through the scheduler
+    private DecompilationContext context;
+    private int next;
+
+    /**
+     * @param archive handle owned by the indexer, closed when it is done
+     */
+    public SourceIndexer(SharedArchive archive, DecompilerSettings settings, DecompilationCache cache) {
+        this.archive = archive;
+        this.settings = ProcyonUtils.cloneSettings(settings);
+        this.cache = cache;
+    }
+
+    public SourceIndex getIndex() {
+        return index;
+    }
+
+    public void start() {
+        DecompilationScheduler.getInstance().submit(DecompilationScheduler.Priority.INDEXING, this, this);
+    }
+
+    public void cancel() {
+        cancel = true;
+    }
+
+    @Override
+    public void run() {
+        boolean isDone = true;
+        try {
+            if (context == null) {
+                context = new DecompilationContext(settings, archive.createTypeLoader());
+            }
+            ArchiveIndex entries = archive.getIndex();
+            long sliceEnd = System.nanoTime() + SLICE_NANOS;
+            for (int i = next; i < entries.size(); i++) {
+                if (cancel) {
+                    return;
+                }
+                if (System.nanoTime() - sliceEnd > 0) {
+                    next = i;
+                    isDone = false;
+                    start();
+                    return;
+                }
+                index.setProgress(i, entries.size());
+                String name = entries.getName(i);
+                if (entries.isDirectory(i)) {
+                    continue;
+                }
+                if (entries.isClass(i)) {
+                    // nested classes are decompiled with their outer class
+                    if (!entries.isInnerClass(i)) {
+                        indexClass(context, name);
+                    }
+                } else {
+                    indexResource(name);
+                }
+            }
+            index.setProgress(entries.size(), entries.size());
+            index.setComplete();
+        } catch (Exception e) {
+            System.err.println("[SourceIndexer]: indexing " + archive.getPath() + " failed: " + e);
+        } finally {
+            if (isDone) {
+                index.close();
+                archive.close();
+            }
+        }
+    }
+
+    private void indexClass(DecompilationContext context, String entryName) {
+        String internalName = StringUtilities.removeRight(entryName, ".class");
+        try {
+            TypeDefinition resolvedType = context.resolveType(internalName);
+            if (resolvedType == null) {
+                index.addFailure(entryName);
+                return;
+            }
+            String cacheKey = cache == null ? null
+                    : DecompilationCache.createKey(Decompiler.PROCYON, settings, resolvedType, archive);
+            DecompilationCache.Entry cached = cacheKey == null ? null : cache.get(cacheKey);
+            String source;
+            if (cached != null) {
+                source = cached.text();
+            } else {
+                StringWriter writer = new StringWriter();
+                context.decompile(resolvedType, writer);
+                source = writer.toString();
+                if (cacheKey != null) {
+                    cache.put(cacheKey, new DecompilationCache.Entry(source, null, null));
+                }
+            }
+            index.add(entryName, source);
+        } catch (Exception | StackOverflowError e) {
+            index.addFailure(entryName);
+        }
+    }
+
+    private void indexResource(String entryName) throws IOException {
+        byte[] bytes = archive.getEntryBytes(entryName);
+        if (bytes != null && isText(bytes)) {
+            index.add(entryName, new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Mostly printable ASCII, like the check Find All always used.
+     */
+    static boolean isText(byte[] bytes) {
+        double ascii = 0;
+        double other = 0;
+        for (byte b : bytes) {
+            if (b == 0x09 || b == 0x0A || b == 0x0C || b == 0x0D || (b >= 0x20 && b <= 0x7E))
+                ascii++;
+            else other++;
+        }
+        return other == 0 || ascii / (ascii + other) > 0.5;
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.mohistmc.mowudecomp;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Milestones of a launch, from the start of the JVM to the first window the
+ * user can work with and the first decompiled class.
+ * <p>
+ * Printed only if started with {@code -Dmowudecomp.startupTimeline=true},
+ * e.g. to compare launches with and without the class data sharing archive.
+ */
+public final class StartupTimeline {
+
+    private static final boolean ENABLED = Boolean.getBoolean("mowudecomp.startupTimeline");
+    private static final Set<String> MARKED = ConcurrentHashMap.newKeySet();
+
+    private StartupTimeline() {
+    }
+
+    /**
+     * Prints the first occurrence of {@code milestone} with the milliseconds since the JVM started.
+     */
+    public static void mark(String milestone) {
+        if (!ENABLED || !MARKED.add(milestone)) {
+            return;
+        }
+        long startMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.printf("[Startup]: %6d ms %s%n", System.currentTimeMillis() - startMillis, milestone);
+    }
+
+}
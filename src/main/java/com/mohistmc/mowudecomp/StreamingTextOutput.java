@@ -0,0 +1,57 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.decompiler.PlainTextOutput;
+
+import java.io.StringWriter;
+import java.util.function.Consumer;
+
+/**
+ * {@link PlainTextOutput} that hands each completed line to a listener
+ * while Procyon is still writing the rest of the type.
+ * <p>
+ * Procyon only starts writing once the whole AST of the type is built and
+ * transformed, which is most of the time a type takes, so this does not
+ * bring the first line forward. It only spreads the writing phase over a
+ * few updates of the text area, large types are helped by the skeleton
+ * view instead.
+ */
+public class StreamingTextOutput extends PlainTextOutput {
+
+    private final StringWriter writer;
+    private final Consumer<String> contentListener;
+    private int published;
+
+    /**
+     * @param contentListener receives the text in order, may be {@code null}
+     */
+    public StreamingTextOutput(StringWriter writer, Consumer<String> contentListener) {
+        super(writer);
+        this.writer = writer;
+        this.contentListener = contentListener;
+    }
+
+    @Override
+    public void writeLine() {
+        super.writeLine();
+        publish();
+    }
+
+    @Override
+    public void writeLine(String s) {
+        super.writeLine(s);
+        publish();
+    }
+
+    /**
+     * Hands over everything written since the last line, call once the type is complete.
+     */
+    public void publish() {
+        StringBuffer buffer = writer.getBuffer();
+        if (contentListener != null && buffer.length() > published) {
+            String text = buffer.substring(published);
+            published = buffer.length();
+            contentListener.accept(text);
+        }
+    }
+
+}
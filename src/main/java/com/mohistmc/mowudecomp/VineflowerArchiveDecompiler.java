@@ -0,0 +1,181 @@
+package com.mohistmc.mowudecomp;
+
+import org.jetbrains.java.decompiler.main.Fernflower;
+import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
+import org.jetbrains.java.decompiler.main.extern.IContextSource;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.jetbrains.java.decompiler.main.extern.IResultSaver;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.jar.Manifest;
+
+/**
+ * Runs one {@link Fernflower} context over all targets. The targets and
+ * their nested classes are added as the source, the other classes of the
+ * archive as a library, all served from memory.
+ */
+public class VineflowerArchiveDecompiler implements ArchiveDecompiler {
+
+    @Override
+    public void decompile(ClassBytesSource classBytesSource, Collection<String> classNames, Collection<String> targets,
+                          int threads, BooleanSupplier cancelled, BiConsumer<String, String> sink) {
+        Set<String> targetSet = new HashSet<>(targets);
+        List<String> sourceClasses = new ArrayList<>();
+        List<String> libraryClasses = new ArrayList<>();
+        for (String className : classNames) {
+            if (targetSet.contains(className) || targetSet.contains(topLevelName(className))) {
+                sourceClasses.add(className);
+            } else {
+                libraryClasses.add(className);
+            }
+        }
+
+        var fernflower = new Fernflower(new NoResultSaver(), Map.of(IFernflowerPreferences.THREADS, String.valueOf(threads)),
+                new PrintStreamLogger(System.out));
+        try {
+            fernflower.addSource(new ArchiveContextSource("source", classBytesSource, sourceClasses, (internalName, content) -> {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException();
+                }
+                sink.accept(internalName, content);
+            }));
+            if (!libraryClasses.isEmpty()) {
+                fernflower.addLibrary(new ArchiveContextSource("library", classBytesSource, libraryClasses, null));
+            }
+            fernflower.decompileContext();
+        } finally {
+            fernflower.clearContext();
+        }
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    private static String topLevelName(String internalName) {
+        int slash = internalName.lastIndexOf('/');
+        int dollar = internalName.indexOf('$', slash + 1);
+        return dollar > 0 ? internalName.substring(0, dollar) : internalName;
+    }
+
+    private static class ArchiveContextSource implements IContextSource {
+
+        private final String name;
+        private final ClassBytesSource classBytesSource;
+        private final List<String> classNames;
+        private final BiConsumer<String, String> sink;
+
+        public ArchiveContextSource(String name, ClassBytesSource classBytesSource, List<String> classNames,
+                                    BiConsumer<String, String> sink) {
+            this.name = name;
+            this.classBytesSource = classBytesSource;
+            this.classNames = classNames;
+            this.sink = sink;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Entries getEntries() {
+            return new Entries(classNames.stream().map(Entry::atBase).toList(), List.of(), List.of());
+        }
+
+        @Override
+        public byte[] getClassBytes(String className) {
+            return classBytesSource.getClassBytes(className);
+        }
+
+        @Override
+        public InputStream getInputStream(String resource) {
+            if (!resource.endsWith(CLASS_SUFFIX)) {
+                return null;
+            }
+            byte[] bytecode = getClassBytes(resource.substring(0, resource.length() - CLASS_SUFFIX.length()));
+            return bytecode == null ? null : new ByteArrayInputStream(bytecode);
+        }
+
+        @Override
+        public IOutputSink createOutputSink(IResultSaver saver) {
+            if (sink == null) {
+                return null;
+            }
+            return new IOutputSink() {
+                @Override
+                public void begin() {
+                }
+
+                @Override
+                public void acceptClass(String qualifiedName, String fileName, String content, int[] mapping) {
+                    if (content != null) {
+                        sink.accept(qualifiedName, content);
+                    }
+                }
+
+                @Override
+                public void acceptDirectory(String directory) {
+                }
+
+                @Override
+                public void acceptOther(String path) {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Results arrive through {@link ArchiveContextSource#createOutputSink(IResultSaver)}.
+     */
+    private static class NoResultSaver implements IResultSaver {
+
+        @Override
+        public void saveFolder(String path) {
+        }
+
+        @Override
+        public void copyFile(String source, String path, String entryName) {
+        }
+
+        @Override
+        public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
+        }
+
+        @Override
+        public void createArchive(String path, String archiveName, Manifest manifest) {
+        }
+
+        @Override
+        public void saveDirEntry(String path, String archiveName, String entryName) {
+        }
+
+        @Override
+        public void copyEntry(String source, String path, String archiveName, String entry) {
+        }
+
+        @Override
+        public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content) {
+        }
+
+        @Override
+        public void closeArchive(String path, String archiveName) {
+        }
+
+    }
+
+}
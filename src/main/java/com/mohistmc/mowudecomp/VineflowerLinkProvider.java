@@ -7,12 +7,15 @@ import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
 import org.jetbrains.java.decompiler.main.extern.IContextSource;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.jar.Manifest;
 
 /**
@@ -23,9 +26,14 @@ public class VineflowerLinkProvider implements LinkProvider, IContextSource, IRe
 
     private TypeDefinition type;
 
-    private byte[] bytecode;
+    /**
+     * The class and its nested classes by internal name; served to Vineflower
+     * from memory so that nested classes are decompiled in place.
+     */
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
 
     private String content;
+    private Consumer<String> contentListener;
 
     @Override
     public String getTextContent() {
@@ -33,28 +41,111 @@ public class VineflowerLinkProvider implements LinkProvider, IContextSource, IRe
     }
 
     @Override
-    public void setType(TypeDefinition type, Model model) {
+    public void setType(TypeDefinition type, ClassBytesSource classBytesSource) {
         this.type = type;
-        bytecode = ProcyonUtils.getContent(type, model);
+        classes.clear();
+        byte[] bytecode = classBytesSource.getClassBytes(type.getInternalName());
+        if (bytecode == null) {
+            throw new IllegalStateException("Class bytes not found: " + type.getInternalName());
+        }
+        classes.put(type.getInternalName(), bytecode);
+        addNestedClasses(type, classBytesSource);
+    }
+
+    private void addNestedClasses(TypeDefinition type, ClassBytesSource classBytesSource) {
+        for (TypeDefinition nestedType : type.getDeclaredTypes()) {
+            String internalName = nestedType.getInternalName();
+            if (classes.containsKey(internalName)) {
+                continue;
+            }
+            byte[] bytecode = classBytesSource.getClassBytes(internalName);
+            if (bytecode != null) {
+                classes.put(internalName, bytecode);
+                addNestedClasses(nestedType, classBytesSource);
+            }
+        }
+    }
+
+    @Override
+    public void setContentListener(Consumer<String> contentListener) {
+        this.contentListener = contentListener;
+    }
+
+    @Override
+    public void setContent(String textContent, Map<String, Selection> definitionToSelectionMap,
+                           Map<String, Set<Selection>> referenceToSelectionsMap) {
+        this.content = textContent;
     }
 
     @Override
     public void generateContent() {
+        content = null;
         var fernflower = new Fernflower(this, Collections.emptyMap(), new PrintStreamLogger(System.out));
-        File singletonJar = null;
         try {
-            singletonJar = ProcyonUtils.createSingletonTempJar(type.getInternalName() + ".class", bytecode);
-            fernflower.addSource(singletonJar);
+            fernflower.addSource(this);
             fernflower.decompileContext();
         } catch (Exception e) {
-            MoWuDecomp.showExceptionDialog("Exception!", e);
+            throw new RuntimeException(e);
         } finally {
             fernflower.clearContext();
-            if (singletonJar != null)
-                singletonJar.delete();
         }
     }
 
+    @Override
+    public String getName() {
+        return type.getInternalName();
+    }
+
+    @Override
+    public Entries getEntries() {
+        return new Entries(classes.keySet().stream().map(Entry::atBase).toList(), List.of(), List.of());
+    }
+
+    @Override
+    public byte[] getClassBytes(String className) {
+        return classes.get(className);
+    }
+
+    @Override
+    public InputStream getInputStream(String resource) throws IOException {
+        if (!resource.endsWith(CLASS_SUFFIX)) {
+            return null;
+        }
+        byte[] bytecode = classes.get(resource.substring(0, resource.length() - CLASS_SUFFIX.length()));
+        return bytecode == null ? null : new ByteArrayInputStream(bytecode);
+    }
+
+    @Override
+    public IOutputSink createOutputSink(IResultSaver saver) {
+        return new IOutputSink() {
+            @Override
+            public void begin() {
+            }
+
+            @Override
+            public void acceptClass(String qualifiedName, String fileName, String content, int[] mapping) {
+                if (content != null && (VineflowerLinkProvider.this.content == null || qualifiedName.equals(type.getInternalName()))) {
+                    VineflowerLinkProvider.this.content = content;
+                    if (contentListener != null && qualifiedName.equals(type.getInternalName())) {
+                        contentListener.accept(content);
+                    }
+                }
+            }
+
+            @Override
+            public void acceptDirectory(String directory) {
+            }
+
+            @Override
+            public void acceptOther(String path) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     @Override
     public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
         this.content = content;
@@ -120,20 +211,5 @@ public class VineflowerLinkProvider implements LinkProvider, IContextSource, IRe
     public void closeArchive(String path, String archiveName) {
 
     }
-
-    @Override
-    public String getName() {
-        return null;
-    }
-
-    @Override
-    public Entries getEntries() {
-        return null;
-    }
-
-    @Override
-    public InputStream getInputStream(String resource) throws IOException {
-        return null;
-    }
     //</editor-fold>
 }
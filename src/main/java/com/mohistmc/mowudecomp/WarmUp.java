@@ -0,0 +1,78 @@
+package com.mohistmc.mowudecomp;
+
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.decompiler.DecompilerSettings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Decompiles a few classes of this application, so that the JIT has
+ * compiled the hot paths of a decompiler before the user opens a class,
+ * and the class data sharing training run loads the classes of all of
+ * them.
+ * <p>
+ * The corpus covers the constructs real archives are made of: string
+ * switches and text blocks, records and try-with-resources, loops over
+ * primitive arrays, and a Swing class with nested and anonymous listeners.
+ * Together they take a few seconds on a cold JVM.
+ */
+public final class WarmUp {
+
+    private static final String[] CORPUS = {
+            "com/mohistmc/mowudecomp/MoWuDecompCLI",
+            "com/mohistmc/mowudecomp/DecompilationCache",
+            "com/mohistmc/mowudecomp/ArchiveIndex",
+            "com/mohistmc/mowudecomp/FindBox",
+    };
+
+    private static final ClassBytesSource CLASS_PATH = internalName -> {
+        try (InputStream in = WarmUp.class.getClassLoader().getResourceAsStream(internalName + ".class")) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    };
+
+    private WarmUp() {
+    }
+
+    /**
+     * Warms up {@code decompiler} as a prefetch job, after the tabs opened meanwhile.
+     */
+    public static void start(DecompilerSettings settings, Decompiler decompiler) {
+        DecompilationScheduler.getInstance().submit(DecompilationScheduler.Priority.PREFETCH, WarmUp.class,
+                () -> run(settings, decompiler));
+    }
+
+    public static void run(DecompilerSettings settings, Decompiler... decompilers) {
+        DecompilationContext context = new DecompilationContext(settings);
+        for (Decompiler decompiler : decompilers) {
+            CFRSession cfrSession = decompiler == Decompiler.CFR ? new CFRSession(CLASS_PATH) : null;
+            for (String internalName : CORPUS) {
+                try {
+                    TypeDefinition type = context.resolveType(internalName);
+                    if (type == null) {
+                        continue;
+                    }
+                    LinkProvider linkProvider = decompiler.linkProviderSupplier.get();
+                    if (linkProvider instanceof ProcyonLinkProvider procyonLinkProvider) {
+                        procyonLinkProvider.setDecompilerReferences(context.getMetadataSystem(),
+                                context.getSettings(), context.getDecompilationOptions());
+                    }
+                    if (linkProvider instanceof CFRLinkProvider cfrLinkProvider) {
+                        cfrLinkProvider.setSession(cfrSession);
+                    }
+                    linkProvider.setType(type, CLASS_PATH);
+                    linkProvider.generateContent();
+                    linkProvider.processLinks();
+                } catch (Exception e) {
+                    System.err.println("[WarmUp]: " + decompiler.getProperName() + " failed on " + internalName + ": " + e);
+                }
+            }
+        }
+        StartupTimeline.mark("decompilers warmed up");
+    }
+
+}